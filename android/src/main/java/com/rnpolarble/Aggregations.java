@@ -0,0 +1,183 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.PolarBleApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregation queries registered from JS, kept per device stream. Each stream gets a
+ * {@link Tap} its packets are unpacked into next to the event pipeline; queries are
+ * registered from any thread and evaluated on the conversion thread.
+ */
+final class Aggregations {
+  interface Listener {
+    void onWindow(WritableMap result);
+  }
+
+  /**
+   * Feeds the samples of one stream to its queries. The query list is an immutable array
+   * swapped on change, so the per sample loop takes no lock and allocates nothing.
+   */
+  static final class Tap implements SampleWriter {
+    private static final WindowAggregator[] NO_QUERIES = new WindowAggregator[0];
+
+    final String deviceId;
+    final PolarBleApi.PolarDeviceDataType dataType;
+    private final PayloadFactory factory;
+    private final Listener listener;
+    private final int[] values;
+    private volatile WindowAggregator[] queries = NO_QUERIES;
+    /** Set when the stream runs for its queries only, so no sample events are built. */
+    volatile boolean samplesSuppressed = false;
+    private long packetNanos = 0;
+
+    Tap(String deviceId, PolarBleApi.PolarDeviceDataType dataType, int channelCount,
+        PayloadFactory factory, Listener listener) {
+      this.deviceId = deviceId;
+      this.dataType = dataType;
+      this.values = new int[channelCount];
+      this.factory = factory;
+      this.listener = listener;
+    }
+
+    boolean isEmpty() {
+      return queries.length == 0;
+    }
+
+    /** Time used for samples without a sensor time stamp, like PPI. */
+    void setPacketTime(long nanos) {
+      packetNanos = nanos;
+    }
+
+    @Override
+    public void add(long timeStamp, int value) {
+      values[0] = value;
+      evaluate(timeStamp);
+    }
+
+    @Override
+    public void add(long timeStamp, int x, int y, int z) {
+      values[0] = x;
+      values[1] = y;
+      values[2] = z;
+      evaluate(timeStamp);
+    }
+
+    @Override
+    public void add(long timeStamp, int[] channelValues) {
+      System.arraycopy(channelValues, 0, values, 0, values.length);
+      evaluate(timeStamp);
+    }
+
+    private void evaluate(long timeStamp) {
+      long time = timeStamp != 0 ? timeStamp : packetNanos;
+      for (WindowAggregator query : queries) {
+        WritableMap result = query.add(time, values, factory);
+        if (result != null) {
+          listener.onWindow(result);
+        }
+      }
+    }
+
+    private synchronized void add(WindowAggregator query) {
+      WindowAggregator[] current = queries;
+      WindowAggregator[] next = new WindowAggregator[current.length + 1];
+      System.arraycopy(current, 0, next, 0, current.length);
+      next[current.length] = query;
+      queries = next;
+    }
+
+    private synchronized boolean remove(WindowAggregator query) {
+      List<WindowAggregator> next = new ArrayList<>(queries.length);
+      for (WindowAggregator existing : queries) {
+        if (existing != query) {
+          next.add(existing);
+        }
+      }
+      queries = next.toArray(NO_QUERIES);
+      return queries.length == 0;
+    }
+  }
+
+  private final PayloadFactory factory;
+  private final Listener listener;
+  private final Map<String, Tap> taps = new ConcurrentHashMap<>();
+  private final Map<String, WindowAggregator> queries = new ConcurrentHashMap<>();
+  private final Map<String, String> queryTaps = new ConcurrentHashMap<>();
+  private int nextQueryId = 1;
+
+  Aggregations(PayloadFactory factory, Listener listener) {
+    this.factory = factory;
+    this.listener = listener;
+  }
+
+  /** The tap of a stream, created on first use by either the stream or a query. */
+  synchronized Tap tap(String deviceId, PolarBleApi.PolarDeviceDataType dataType, int channelCount) {
+    String key = key(deviceId, dataType);
+    Tap tap = taps.get(key);
+    if (tap == null) {
+      tap = new Tap(deviceId, dataType, channelCount, factory, listener);
+      taps.put(key, tap);
+    }
+    return tap;
+  }
+
+  /** Lets sample events of a stream through again once JS starts it itself. */
+  void releaseSamples(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Tap tap = taps.get(key(deviceId, dataType));
+    if (tap != null) {
+      tap.samplesSuppressed = false;
+    }
+  }
+
+  /**
+   * Keeps a stream running for its queries without sample events. Returns false when the
+   * stream has no queries and can be stopped.
+   */
+  boolean suppressSamples(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Tap tap = taps.get(key(deviceId, dataType));
+    if (tap == null || tap.isEmpty()) {
+      return false;
+    }
+    tap.samplesSuppressed = true;
+    return true;
+  }
+
+  /** True while a stream has queries, so it is restarted when its device reconnects. */
+  boolean hasQueries(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Tap tap = taps.get(key(deviceId, dataType));
+    return tap != null && !tap.isEmpty();
+  }
+
+  synchronized String nextQueryId() {
+    return "aggregation-" + nextQueryId++;
+  }
+
+  void add(PolarBleApi.PolarDeviceDataType dataType, int channelCount, WindowAggregator query) {
+    queries.put(query.queryId, query);
+    queryTaps.put(query.queryId, key(query.deviceId, dataType));
+    tap(query.deviceId, dataType, channelCount).add(query);
+  }
+
+  /** Removes a query, returning the tap it was on when that has no queries left. */
+  @Nullable
+  Tap remove(String queryId) {
+    WindowAggregator query = queries.remove(queryId);
+    String key = queryTaps.remove(queryId);
+    Tap tap = key != null ? taps.get(key) : null;
+    if (query == null || tap == null) {
+      return null;
+    }
+    return tap.remove(query) ? tap : null;
+  }
+
+  private static String key(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    return deviceId + "/" + dataType.name();
+  }
+}
@@ -0,0 +1,273 @@
+package com.rnpolarble;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sits in front of the JS bridge sink and holds what would have been sent to JS while the app
+ * is in the background, where the JS thread is throttled or suspended.
+ *
+ * <p>Stream samples are handed over as {@link SampleBatch}es before any payload is built and
+ * kept as {@link DeltaCodec} blocks; other events are kept as they are. Both are bounded, the
+ * oldest samples and events are dropped first and counted, samples by age across all streams
+ * so a fast stream cannot keep the bound to itself. On resume the held events are
+ * sent, then the samples of each stream as a few large BACKGROUND_CATCH_UP events, then a
+ * BACKGROUND_SUMMARY. RULE_TRIGGER events are rare alerts and always go out right away.
+ */
+final class BackgroundBuffer implements EventSink {
+  static final String[] HR_CHANNELS = {"hr", "rr"};
+
+  private static final int CATCH_UP_BATCH_SAMPLES = 4096;
+
+  private static final class Stream {
+    final String id;
+    final PolarEvent event;
+    final String[] channelNames;
+    final StreamOptions.PayloadFormat format;
+    final ArrayDeque<byte[]> blocks = new ArrayDeque<>();
+    long samples = 0;
+    long droppedSamples = 0;
+    long bytes = 0;
+
+    Stream(String id, PolarEvent event, String[] channelNames, StreamOptions.PayloadFormat format) {
+      this.id = id;
+      this.event = event;
+      this.channelNames = channelNames;
+      this.format = format;
+    }
+  }
+
+  private final EventSink target;
+  private final PayloadFactory factory;
+  private final SamplePayloads payloads;
+  private boolean enabled = true;
+  private long maxBytes;
+  private int maxEvents;
+
+  private boolean paused = false;
+  private long pausedAtMs = 0;
+  private final Map<String, Stream> streams = new LinkedHashMap<>();
+  private long bytes = 0;
+  /** The stream of each held block, oldest first, for dropping blocks by age. */
+  private final ArrayDeque<Stream> blockOrder = new ArrayDeque<>();
+  /** Held events as { name, params }. */
+  private final ArrayDeque<Object[]> events = new ArrayDeque<>();
+  private final Map<String, Integer> droppedEvents = new HashMap<>();
+  private ByteBuffer scratch = ByteBuffer.allocate(4096);
+  private final SampleBatcher hrRows = new SampleBatcher(HR_CHANNELS.length, 0);
+  private final int[] hrValues = new int[HR_CHANNELS.length];
+
+  BackgroundBuffer(EventSink target, PayloadFactory factory, long maxBytes, int maxEvents) {
+    this.target = target;
+    this.factory = factory;
+    this.payloads = new SamplePayloads(factory);
+    this.maxBytes = maxBytes;
+    this.maxEvents = maxEvents;
+  }
+
+  synchronized void configure(boolean enabled, long maxBytes, int maxEvents) {
+    this.enabled = enabled;
+    this.maxBytes = maxBytes;
+    this.maxEvents = maxEvents;
+  }
+
+  synchronized boolean isPaused() {
+    return paused;
+  }
+
+  synchronized void pause() {
+    if (enabled && !paused) {
+      paused = true;
+      pausedAtMs = SystemClock.elapsedRealtime();
+    }
+  }
+
+  /** Sends everything held to the bridge and passes events on directly again. */
+  synchronized void resume() {
+    if (!paused) {
+      return;
+    }
+    paused = false;
+    while (!events.isEmpty()) {
+      Object[] event = events.poll();
+      target.onEvent((String) event[0], event[1]);
+    }
+    WritableArray summaries = factory.createArray();
+    for (Stream stream : streams.values()) {
+      catchUp(stream);
+      summaries.pushMap(summary(stream));
+    }
+    WritableMap summary = factory.createMap();
+    summary.putDouble("pausedMs", SystemClock.elapsedRealtime() - pausedAtMs);
+    summary.putArray("streams", summaries);
+    WritableMap dropped = factory.createMap();
+    for (Map.Entry<String, Integer> entry : droppedEvents.entrySet()) {
+      dropped.putInt(entry.getKey(), entry.getValue());
+    }
+    summary.putMap("droppedEvents", dropped);
+    target.onEvent(PolarEvent.BACKGROUND_SUMMARY.name(), summary);
+    streams.clear();
+    blockOrder.clear();
+    droppedEvents.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Keeps the samples of a stream while paused. Returns false when not paused and the batch
+   * has to be emitted as usual.
+   */
+  synchronized boolean holdSamples(String id, PolarEvent event, String[] channelNames,
+                                   StreamOptions.PayloadFormat format, SampleBatch batch) {
+    if (!paused) {
+      return false;
+    }
+    if (batch.size == 0) {
+      return true;
+    }
+    String key = id + "/" + event.name();
+    Stream stream = streams.get(key);
+    if (stream == null) {
+      stream = new Stream(id, event, channelNames, format);
+      streams.put(key, stream);
+    }
+    int capacity = DeltaCodec.maxEncodedSize(batch.size, batch.channelCount());
+    if (scratch.capacity() < capacity) {
+      scratch = ByteBuffer.allocate(Math.max(capacity, scratch.capacity() * 2));
+    }
+    scratch.clear();
+    DeltaCodec.encode(batch, scratch);
+    byte[] block = Arrays.copyOf(scratch.array(), scratch.position());
+    stream.blocks.add(block);
+    blockOrder.add(stream);
+    stream.samples += batch.size;
+    stream.bytes += block.length;
+    bytes += block.length;
+    while (bytes > maxBytes && blockOrder.size() > 1) {
+      // Blocks are queued in order per stream too, so the oldest is the first of its stream.
+      Stream owner = blockOrder.poll();
+      byte[] oldest = owner.blocks.poll();
+      int size = blockSize(oldest);
+      owner.samples -= size;
+      owner.droppedSamples += size;
+      owner.bytes -= oldest.length;
+      bytes -= oldest.length;
+    }
+    return true;
+  }
+
+  /** HR samples as one row per RR interval, or a row with rr 0 when there are none. */
+  boolean holdHr(String id, PolarHrData polarHrData, long timeStamp) {
+    if (!isPaused()) {
+      return false;
+    }
+    List<PolarHrData.PolarHrSample> samples = polarHrData.getSamples();
+    synchronized (this) {
+      hrRows.clear();
+      for (int s = 0, sampleCount = samples.size(); s < sampleCount; s++) {
+        PolarHrData.PolarHrSample sample = samples.get(s);
+        hrValues[0] = sample.getHr();
+        List<Integer> rrs = sample.getRrsMs();
+        int rrCount = rrs.size();
+        if (rrCount == 0) {
+          hrValues[1] = 0;
+          hrRows.add(timeStamp, hrValues);
+        }
+        for (int i = 0; i < rrCount; i++) {
+          hrValues[1] = rrs.get(i);
+          hrRows.add(timeStamp, hrValues);
+        }
+      }
+      return holdSamples(id, PolarEvent.HR_DATA, HR_CHANNELS, StreamOptions.PayloadFormat.SAMPLES, hrRows.view());
+    }
+  }
+
+  @Override
+  public synchronized void onEvent(String eventName, @Nullable Object params) {
+    if (!paused || PolarEvent.RULE_TRIGGER.name().equals(eventName)) {
+      target.onEvent(eventName, params);
+      return;
+    }
+    if (isStreamEvent(eventName)) {
+      // Handed over through holdSamples, the payload only exists for other sinks.
+      return;
+    }
+    if (isSnapshotEvent(eventName, params)) {
+      events.removeIf(event -> eventName.equals(event[0]));
+    }
+    events.add(new Object[] {eventName, params});
+    while (events.size() > Math.max(0, maxEvents)) {
+      String dropped = (String) events.poll()[0];
+      Integer count = droppedEvents.get(dropped);
+      droppedEvents.put(dropped, count != null ? count + 1 : 1);
+    }
+  }
+
+  @Override
+  public boolean consumesParams() {
+    return true;
+  }
+
+  private void catchUp(Stream stream) {
+    SampleBatcher batcher = new SampleBatcher(stream.channelNames.length, CATCH_UP_BATCH_SAMPLES);
+    while (!stream.blocks.isEmpty()) {
+      SampleBatch block = DeltaCodec.decode(ByteBuffer.wrap(stream.blocks.poll()));
+      for (int i = 0; i < block.size; i++) {
+        batcher.add(block.timeStamps[i], block.channels, i);
+      }
+      if (batcher.size() >= CATCH_UP_BATCH_SAMPLES || stream.blocks.isEmpty()) {
+        WritableMap params = payloads.toPayload(stream.id, stream.channelNames, batcher.drain(), stream.format);
+        params.putString("event", stream.event.name());
+        target.onEvent(PolarEvent.BACKGROUND_CATCH_UP.name(), params);
+      }
+    }
+  }
+
+  private WritableMap summary(Stream stream) {
+    WritableMap params = factory.createMap();
+    params.putString("id", stream.id);
+    params.putString("event", stream.event.name());
+    params.putDouble("samples", stream.samples);
+    params.putDouble("droppedSamples", stream.droppedSamples);
+    params.putDouble("bytes", stream.bytes);
+    return params;
+  }
+
+  private static int blockSize(byte[] block) {
+    ByteBuffer buffer = ByteBuffer.wrap(block);
+    buffer.position(8);
+    return DeltaCodec.getVarint(buffer);
+  }
+
+  private static boolean isStreamEvent(String eventName) {
+    return PolarEvent.HR_DATA.name().equals(eventName)
+            || PolarEvent.ECG_DATA.name().equals(eventName)
+            || PolarEvent.ACC_DATA.name().equals(eventName)
+            || PolarEvent.PPG_DATA.name().equals(eventName)
+            || PolarEvent.PPI_DATA.name().equals(eventName);
+  }
+
+  /**
+   * Events that replace the previous ones of the same name, only the newest is worth sending.
+   * A delta DEVICE_LIST only lists what changed since the one before, so those are all kept.
+   */
+  private static boolean isSnapshotEvent(String eventName, @Nullable Object params) {
+    if (PolarEvent.DEVICE_LIST.name().equals(eventName)) {
+      return !(params instanceof ReadableMap) || !ReadableMaps.getBoolean((ReadableMap) params, "delta", false);
+    }
+    return PolarEvent.STREAM_STATS.name().equals(eventName);
+  }
+}
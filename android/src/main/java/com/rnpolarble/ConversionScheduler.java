@@ -0,0 +1,66 @@
+package com.rnpolarble;
+
+import android.os.Process;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Single background thread that converts SDK data into JS payloads and emits them,
+ * keeping that work off the main thread. Time spent in each task is accumulated so
+ * the main thread time saved can be read from JS.
+ */
+final class ConversionScheduler {
+  private static final String THREAD_NAME = "RnPolarBle-conversion";
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(() -> {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+      runnable.run();
+    }, THREAD_NAME);
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Scheduler scheduler = Schedulers.from(this::execute);
+
+  private final AtomicLong submittedTasks = new AtomicLong();
+  private final AtomicLong completedTasks = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+
+  Scheduler scheduler() {
+    return scheduler;
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  private void execute(Runnable task) {
+    submittedTasks.incrementAndGet();
+    executor.execute(() -> {
+      long start = System.nanoTime();
+      try {
+        task.run();
+      } finally {
+        busyNanos.addAndGet(System.nanoTime() - start);
+        completedTasks.incrementAndGet();
+      }
+    });
+  }
+
+  WritableMap toJsDictionary() {
+    long completed = completedTasks.get();
+    WritableMap stats = Arguments.createMap();
+    stats.putDouble("tasks", completed);
+    stats.putDouble("pendingTasks", submittedTasks.get() - completed);
+    stats.putDouble("busyMs", busyNanos.get() / 1_000_000.0);
+    return stats;
+  }
+}
@@ -0,0 +1,153 @@
+package com.rnpolarble;
+
+/**
+ * Lowers the sample rate of a stream by an integer factor. Samples go through a windowed
+ * sinc low-pass filter first so content above the new Nyquist rate does not alias, and the
+ * filter is only evaluated for the samples that are kept.
+ */
+final class Decimator implements SampleWriter {
+  private static final int TAPS_PER_FACTOR = 8;
+  /** Cutoff as a fraction of the output Nyquist rate, leaving room for the transition band. */
+  private static final double CUTOFF_RATIO = 0.8;
+
+  private final int channelCount;
+  private final int outputRate;
+  private SampleWriter output;
+
+  private int inputRate = 0;
+  private int factor = 1;
+  private double[] coefficients;
+  private long[] timeStamps;
+  private int[][] history;
+  private final int[] values;
+  private int position = 0;
+  private long received = 0;
+  private long lastInputTimeStamp = 0;
+
+  Decimator(int channelCount, int outputRate) {
+    this.channelCount = channelCount;
+    this.outputRate = outputRate;
+    this.values = new int[channelCount];
+  }
+
+  long lastInputTimeStamp() {
+    return lastInputTimeStamp;
+  }
+
+  void setOutput(SampleWriter output) {
+    this.output = output;
+  }
+
+  /**
+   * The rate samples actually leave at. The factor is a whole number, so this is the input rate
+   * divided by it, e.g. 43.3 Hz for 50 Hz asked of a 130 Hz stream. 0 until the input rate is known.
+   */
+  double effectiveRate() {
+    return (double) inputRate / factor;
+  }
+
+  /** Sets the rate the device streams at, called once the stream settings are known. */
+  void setInputRate(int inputRate) {
+    this.inputRate = inputRate;
+    if (outputRate <= 0 || inputRate <= outputRate) {
+      factor = 1;
+      return;
+    }
+    factor = Math.max(1, Math.round((float) inputRate / outputRate));
+    int taps = TAPS_PER_FACTOR * factor + 1;
+    coefficients = lowPass(taps, CUTOFF_RATIO * 0.5 / factor);
+    timeStamps = new long[taps];
+    history = new int[channelCount][taps];
+    position = 0;
+    received = 0;
+  }
+
+  @Override
+  public void add(long timeStamp, int value) {
+    lastInputTimeStamp = timeStamp;
+    if (factor == 1) {
+      output.add(timeStamp, value);
+      return;
+    }
+    values[0] = value;
+    push(timeStamp);
+  }
+
+  @Override
+  public void add(long timeStamp, int x, int y, int z) {
+    lastInputTimeStamp = timeStamp;
+    if (factor == 1) {
+      output.add(timeStamp, x, y, z);
+      return;
+    }
+    values[0] = x;
+    values[1] = y;
+    values[2] = z;
+    push(timeStamp);
+  }
+
+  @Override
+  public void add(long timeStamp, int[] channelValues) {
+    lastInputTimeStamp = timeStamp;
+    if (factor == 1) {
+      output.add(timeStamp, channelValues);
+      return;
+    }
+    System.arraycopy(channelValues, 0, values, 0, channelCount);
+    push(timeStamp);
+  }
+
+  private void push(long timeStamp) {
+    int taps = coefficients.length;
+    timeStamps[position] = timeStamp;
+    for (int c = 0; c < channelCount; c++) {
+      history[c][position] = values[c];
+    }
+    position = (position + 1) % taps;
+    received++;
+    if (received < taps || received % factor != 0) {
+      return;
+    }
+    for (int c = 0; c < channelCount; c++) {
+      values[c] = filter(history[c]);
+    }
+    // The filter is symmetric, so its output lines up with the middle sample of the window.
+    long centerTimeStamp = timeStamps[(position + taps / 2) % taps];
+    if (channelCount == 1) {
+      output.add(centerTimeStamp, values[0]);
+    } else if (channelCount == 3) {
+      output.add(centerTimeStamp, values[0], values[1], values[2]);
+    } else {
+      output.add(centerTimeStamp, values);
+    }
+  }
+
+  private int filter(int[] channel) {
+    int taps = coefficients.length;
+    double sum = 0;
+    int index = position;
+    for (int k = 0; k < taps; k++) {
+      sum += coefficients[k] * channel[index];
+      index = index + 1 == taps ? 0 : index + 1;
+    }
+    return (int) Math.round(sum);
+  }
+
+  /** Hamming windowed sinc with the cutoff given in cycles per input sample and unity DC gain. */
+  private static double[] lowPass(int taps, double cutoff) {
+    double[] h = new double[taps];
+    int middle = taps / 2;
+    double sum = 0;
+    for (int n = 0; n < taps; n++) {
+      int offset = n - middle;
+      double sinc = offset == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * offset) / (Math.PI * offset);
+      double window = 0.54 - 0.46 * Math.cos(2 * Math.PI * n / (taps - 1));
+      h[n] = sinc * window;
+      sum += h[n];
+    }
+    for (int n = 0; n < taps; n++) {
+      h[n] /= sum;
+    }
+    return h;
+  }
+}
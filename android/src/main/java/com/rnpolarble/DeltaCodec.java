@@ -0,0 +1,182 @@
+package com.rnpolarble;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless compression of sample blocks for storage. Each channel is stored as the zigzag
+ * varint of the difference to the previous sample, so slowly changing signals like ECG in
+ * microvolts or ACC in mG take one or two bytes per value instead of four.
+ *
+ * <p>A block starts with the first time stamp and the sample count so readers can skip it
+ * without decoding. Time stamps follow in one of three modes: none (all zero), implied from a
+ * constant interval, or as zigzag varints of the change of the interval, which is mostly a
+ * single byte for the jitter of a sensor clock.
+ */
+final class DeltaCodec {
+  private static final byte TIME_NONE = 0;
+  private static final byte TIME_IMPLIED = 1;
+  private static final byte TIME_DELTA_OF_DELTA = 2;
+
+  private DeltaCodec() {
+  }
+
+  /** Upper bound of the encoded size of a block. */
+  static int maxEncodedSize(int size, int channelCount) {
+    return 8 + 5 + 1 + 1 + 10 + size * 10 + channelCount * size * 5;
+  }
+
+  static void encode(SampleBatch batch, ByteBuffer out) {
+    int size = batch.size;
+    long[] timeStamps = batch.timeStamps;
+    out.putLong(size > 0 ? timeStamps[0] : 0);
+    putVarint(out, size);
+    out.put((byte) batch.channelCount());
+    encodeTimeStamps(timeStamps, size, out);
+    for (int[] values : batch.channels) {
+      encodeInts(values, size, out);
+    }
+  }
+
+  static SampleBatch decode(ByteBuffer in) {
+    long first = in.getLong();
+    int size = getVarint(in);
+    int channelCount = in.get();
+    if (size < 0 || channelCount < 0) {
+      throw new BufferUnderflowException();
+    }
+    long[] timeStamps = new long[size];
+    decodeTimeStamps(first, timeStamps, size, in);
+    int[][] channels = new int[channelCount][];
+    for (int c = 0; c < channelCount; c++) {
+      channels[c] = new int[size];
+      decodeInts(channels[c], size, in);
+    }
+    return new SampleBatch(timeStamps, channels, size);
+  }
+
+  static void encodeInts(int[] values, int size, ByteBuffer out) {
+    int previous = 0;
+    for (int i = 0; i < size; i++) {
+      putVarint(out, zigzag(values[i] - previous));
+      previous = values[i];
+    }
+  }
+
+  static void decodeInts(int[] values, int size, ByteBuffer in) {
+    int previous = 0;
+    for (int i = 0; i < size; i++) {
+      previous += unzigzag(getVarint(in));
+      values[i] = previous;
+    }
+  }
+
+  private static void encodeTimeStamps(long[] timeStamps, int size, ByteBuffer out) {
+    boolean allZero = true;
+    boolean constant = true;
+    for (int i = 0; i < size; i++) {
+      if (timeStamps[i] != 0) {
+        allZero = false;
+      }
+      if (i >= 2 && timeStamps[i] - timeStamps[i - 1] != timeStamps[1] - timeStamps[0]) {
+        constant = false;
+      }
+    }
+    if (allZero) {
+      out.put(TIME_NONE);
+    } else if (constant) {
+      out.put(TIME_IMPLIED);
+      putVarlong(out, zigzag(size > 1 ? timeStamps[1] - timeStamps[0] : 0));
+    } else {
+      out.put(TIME_DELTA_OF_DELTA);
+      long previousDelta = 0;
+      for (int i = 1; i < size; i++) {
+        long delta = timeStamps[i] - timeStamps[i - 1];
+        putVarlong(out, zigzag(delta - previousDelta));
+        previousDelta = delta;
+      }
+    }
+  }
+
+  private static void decodeTimeStamps(long first, long[] timeStamps, int size, ByteBuffer in) {
+    byte mode = in.get();
+    if (mode == TIME_NONE) {
+      return;
+    }
+    if (size == 0) {
+      if (mode == TIME_IMPLIED) {
+        getVarlong(in);
+      }
+      return;
+    }
+    timeStamps[0] = first;
+    if (mode == TIME_IMPLIED) {
+      long interval = unzigzag(getVarlong(in));
+      for (int i = 1; i < size; i++) {
+        timeStamps[i] = first + i * interval;
+      }
+    } else {
+      long delta = 0;
+      for (int i = 1; i < size; i++) {
+        delta += unzigzag(getVarlong(in));
+        timeStamps[i] = timeStamps[i - 1] + delta;
+      }
+    }
+  }
+
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  static void putVarint(ByteBuffer out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  static int getVarint(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  private static void putVarlong(ByteBuffer out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  private static long getVarlong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      byte b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+}
@@ -0,0 +1,117 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarDeviceInfo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of devices seen while scanning, deduplicated by device id with an exponentially
+ * smoothed RSSI. Devices not advertising for the expiry time are dropped.
+ * Not thread safe, used from the conversion thread only.
+ */
+final class DeviceDiscovery {
+  private static final class Device {
+    PolarDeviceInfo info;
+    double rssi;
+    int reportedRssi;
+    long lastSeenMs;
+    boolean changed = true;
+  }
+
+  private final long expireMs;
+  private final double rssiSmoothing;
+  private final Map<String, Device> devices = new LinkedHashMap<>();
+  private final List<String> removed = new ArrayList<>();
+
+  /**
+   * @param rssiSmoothing weight of a new RSSI reading, 1 disables smoothing
+   */
+  DeviceDiscovery(long expireMs, double rssiSmoothing) {
+    this.expireMs = expireMs;
+    this.rssiSmoothing = Math.min(1, Math.max(0.01, rssiSmoothing));
+  }
+
+  /** Returns true when the device was not in the table yet. */
+  boolean update(PolarDeviceInfo info, long nowMs) {
+    Device device = devices.get(info.getDeviceId());
+    boolean found = device == null;
+    if (found) {
+      device = new Device();
+      device.rssi = info.getRssi();
+      device.reportedRssi = info.getRssi();
+      devices.put(info.getDeviceId(), device);
+      removed.remove(info.getDeviceId());
+    } else {
+      device.rssi += rssiSmoothing * (info.getRssi() - device.rssi);
+      int rssi = (int) Math.round(device.rssi);
+      if (rssi != device.reportedRssi || device.info.isConnectable() != info.isConnectable()) {
+        device.reportedRssi = rssi;
+        device.changed = true;
+      }
+    }
+    device.info = info;
+    device.lastSeenMs = nowMs;
+    return found;
+  }
+
+  void expire(long nowMs) {
+    Iterator<Map.Entry<String, Device>> iterator = devices.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Device> entry = iterator.next();
+      if (nowMs - entry.getValue().lastSeenMs > expireMs) {
+        iterator.remove();
+        removed.add(entry.getKey());
+      }
+    }
+  }
+
+  boolean hasChanges() {
+    if (!removed.isEmpty()) {
+      return true;
+    }
+    for (Device device : devices.values()) {
+      if (device.changed) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Devices changed since the previous call, or every device when {@code delta} is false,
+   * and the ids of the devices expired since the previous call.
+   */
+  WritableMap drain(SamplePayloads payloads, boolean delta) {
+    WritableArray list = Arguments.createArray();
+    for (Device device : devices.values()) {
+      if (!delta || device.changed) {
+        WritableMap params = payloads.deviceInfo(device.info);
+        params.putInt("rssi", device.reportedRssi);
+        list.pushMap(params);
+      }
+      device.changed = false;
+    }
+    WritableArray removedIds = Arguments.createArray();
+    for (String id : removed) {
+      removedIds.pushString(id);
+    }
+    removed.clear();
+    WritableMap params = Arguments.createMap();
+    params.putBoolean("delta", delta);
+    params.putArray("devices", list);
+    params.putArray("removed", removedIds);
+    return params;
+  }
+
+  void clear() {
+    devices.clear();
+    removed.clear();
+  }
+}
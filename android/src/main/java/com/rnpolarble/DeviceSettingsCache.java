@@ -0,0 +1,206 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarSensorSetting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Online stream data types and sensor settings of each device, kept on disk so streams can
+ * start on a reconnect without asking the device first. Everything cached for a device is
+ * dropped when it reports a different firmware revision.
+ */
+final class DeviceSettingsCache {
+  static final UUID FIRMWARE_REVISION = UUID.fromString("00002a26-0000-1000-8000-00805f9b34fb");
+
+  private static final int MAGIC = 0x44455631; // "DEV1"
+  private static final String SUFFIX = ".dev";
+
+  private static final class Entry {
+    String firmware = "";
+    @Nullable
+    Set<PolarBleApi.PolarDeviceDataType> dataTypes;
+    final Map<PolarBleApi.PolarDeviceDataType, Map<PolarSensorSetting.SettingType, Set<Integer>>> settings =
+            new EnumMap<>(PolarBleApi.PolarDeviceDataType.class);
+  }
+
+  private final File directory;
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  DeviceSettingsCache(File directory) {
+    this.directory = directory;
+  }
+
+  synchronized void setFirmware(String deviceId, String firmware) {
+    Entry entry = entry(deviceId);
+    if (firmware.equals(entry.firmware)) {
+      return;
+    }
+    if (!entry.firmware.isEmpty()) {
+      Log.d(RnPolarBleModule.TAG, deviceId + " firmware changed from " + entry.firmware + " to " + firmware);
+      entry.dataTypes = null;
+      entry.settings.clear();
+    }
+    entry.firmware = firmware;
+    save(deviceId, entry);
+  }
+
+  @Nullable
+  synchronized Set<PolarBleApi.PolarDeviceDataType> getDataTypes(String deviceId) {
+    Set<PolarBleApi.PolarDeviceDataType> dataTypes = entry(deviceId).dataTypes;
+    return dataTypes != null ? EnumSet.copyOf(dataTypes) : null;
+  }
+
+  /**
+   * Returns true when the data types differ from the cached ones. Settings of data types the
+   * device no longer reports are dropped.
+   */
+  synchronized boolean putDataTypes(String deviceId, Set<PolarBleApi.PolarDeviceDataType> dataTypes) {
+    Entry entry = entry(deviceId);
+    if (dataTypes.equals(entry.dataTypes)) {
+      return false;
+    }
+    entry.dataTypes = dataTypes.isEmpty()
+            ? EnumSet.noneOf(PolarBleApi.PolarDeviceDataType.class)
+            : EnumSet.copyOf(dataTypes);
+    entry.settings.keySet().retainAll(entry.dataTypes);
+    save(deviceId, entry);
+    return true;
+  }
+
+  @Nullable
+  synchronized PolarSensorSetting getSensorSetting(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Map<PolarSensorSetting.SettingType, Set<Integer>> values = entry(deviceId).settings.get(dataType);
+    return values != null ? new PolarSensorSetting(values) : null;
+  }
+
+  /** Returns true when the setting differs from the cached one. */
+  synchronized boolean putSensorSetting(String deviceId, PolarBleApi.PolarDeviceDataType dataType,
+                                        PolarSensorSetting setting) {
+    Entry entry = entry(deviceId);
+    Map<PolarSensorSetting.SettingType, Set<Integer>> values = new EnumMap<>(PolarSensorSetting.SettingType.class);
+    for (Map.Entry<PolarSensorSetting.SettingType, Set<Integer>> value : setting.getSettings().entrySet()) {
+      values.put(value.getKey(), new HashSet<>(value.getValue()));
+    }
+    if (values.equals(entry.settings.get(dataType))) {
+      return false;
+    }
+    entry.settings.put(dataType, values);
+    save(deviceId, entry);
+    return true;
+  }
+
+  private Entry entry(String deviceId) {
+    Entry entry = entries.get(deviceId);
+    if (entry == null) {
+      entry = load(deviceId);
+      entries.put(deviceId, entry);
+    }
+    return entry;
+  }
+
+  private Entry load(String deviceId) {
+    Entry entry = new Entry();
+    File file = file(deviceId);
+    if (!file.isFile()) {
+      return entry;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Bad magic");
+      }
+      entry.firmware = in.readUTF();
+      int dataTypeCount = in.readInt();
+      if (dataTypeCount >= 0) {
+        entry.dataTypes = EnumSet.noneOf(PolarBleApi.PolarDeviceDataType.class);
+        for (int i = 0; i < dataTypeCount; i++) {
+          entry.dataTypes.add(PolarBleApi.PolarDeviceDataType.valueOf(in.readUTF()));
+        }
+      }
+      int settingsCount = in.readInt();
+      for (int i = 0; i < settingsCount; i++) {
+        PolarBleApi.PolarDeviceDataType dataType = PolarBleApi.PolarDeviceDataType.valueOf(in.readUTF());
+        Map<PolarSensorSetting.SettingType, Set<Integer>> values = new EnumMap<>(PolarSensorSetting.SettingType.class);
+        int valueCount = in.readInt();
+        for (int j = 0; j < valueCount; j++) {
+          PolarSensorSetting.SettingType settingType = PolarSensorSetting.SettingType.valueOf(in.readUTF());
+          Set<Integer> options = new HashSet<>();
+          int optionCount = in.readInt();
+          for (int k = 0; k < optionCount; k++) {
+            options.add(in.readInt());
+          }
+          values.put(settingType, options);
+        }
+        entry.settings.put(dataType, values);
+      }
+      return entry;
+    } catch (IOException | IllegalArgumentException e) {
+      Log.e(RnPolarBleModule.TAG, "Dropping unreadable settings of " + deviceId + ": " + e.getLocalizedMessage());
+      file.delete();
+      return new Entry();
+    }
+  }
+
+  private void save(String deviceId, Entry entry) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(RnPolarBleModule.TAG, "Could not create " + directory);
+      return;
+    }
+    File file = file(deviceId);
+    File temporary = new File(directory, file.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeUTF(entry.firmware);
+      if (entry.dataTypes == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(entry.dataTypes.size());
+        for (PolarBleApi.PolarDeviceDataType dataType : entry.dataTypes) {
+          out.writeUTF(dataType.name());
+        }
+      }
+      out.writeInt(entry.settings.size());
+      for (Map.Entry<PolarBleApi.PolarDeviceDataType, Map<PolarSensorSetting.SettingType, Set<Integer>>> setting
+              : entry.settings.entrySet()) {
+        out.writeUTF(setting.getKey().name());
+        out.writeInt(setting.getValue().size());
+        for (Map.Entry<PolarSensorSetting.SettingType, Set<Integer>> value : setting.getValue().entrySet()) {
+          out.writeUTF(value.getKey().name());
+          out.writeInt(value.getValue().size());
+          for (int option : value.getValue()) {
+            out.writeInt(option);
+          }
+        }
+      }
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Could not cache settings of " + deviceId + ": " + e.getLocalizedMessage());
+      temporary.delete();
+      return;
+    }
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+    }
+  }
+
+  private File file(String deviceId) {
+    return new File(directory, deviceId.replaceAll("[^A-Za-z0-9_-]", "_") + SUFFIX);
+  }
+}
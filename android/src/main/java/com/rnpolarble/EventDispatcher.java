@@ -0,0 +1,81 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans events out to the registered sinks. The sink list is an immutable array swapped with
+ * compare-and-set, so dispatching never takes a lock and sinks can be added from any thread.
+ */
+final class EventDispatcher {
+  private static final EventSink[] NO_SINKS = new EventSink[0];
+
+  private final AtomicReference<EventSink[]> sinks = new AtomicReference<>(NO_SINKS);
+
+  void dispatch(String eventName, @Nullable Object params) {
+    for (EventSink sink : sinks.get()) {
+      try {
+        sink.onEvent(eventName, params);
+      } catch (RuntimeException e) {
+        Log.e(RnPolarBleModule.TAG, "Event sink failed on " + eventName + ": " + e.getLocalizedMessage());
+      }
+    }
+  }
+
+  /** Adds a sink, keeping sinks that consume params after all others. */
+  void add(EventSink sink) {
+    while (true) {
+      EventSink[] current = sinks.get();
+      List<EventSink> next = new ArrayList<>(current.length + 1);
+      for (EventSink existing : current) {
+        if (!existing.consumesParams()) {
+          next.add(existing);
+        }
+      }
+      if (!sink.consumesParams()) {
+        next.add(sink);
+      }
+      for (EventSink existing : current) {
+        if (existing.consumesParams()) {
+          next.add(existing);
+        }
+      }
+      if (sink.consumesParams()) {
+        next.add(sink);
+      }
+      if (sinks.compareAndSet(current, next.toArray(NO_SINKS))) {
+        return;
+      }
+    }
+  }
+
+  boolean remove(EventSink sink) {
+    while (true) {
+      EventSink[] current = sinks.get();
+      List<EventSink> next = new ArrayList<>(current.length);
+      for (EventSink existing : current) {
+        if (existing != sink) {
+          next.add(existing);
+        }
+      }
+      if (next.size() == current.length) {
+        return false;
+      }
+      if (sinks.compareAndSet(current, next.toArray(NO_SINKS))) {
+        sink.close();
+        return true;
+      }
+    }
+  }
+
+  void closeAll() {
+    for (EventSink sink : sinks.getAndSet(NO_SINKS)) {
+      sink.close();
+    }
+  }
+}
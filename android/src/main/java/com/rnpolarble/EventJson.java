@@ -0,0 +1,102 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.List;
+import java.util.Map;
+
+/** Writes events as one line of JSON: {"event":"HR_DATA","params":{...}}. */
+final class EventJson {
+  private EventJson() {
+  }
+
+  static String toLine(String eventName, @Nullable Object params) {
+    StringBuilder json = new StringBuilder(128);
+    json.append("{\"event\":");
+    appendString(json, eventName);
+    json.append(",\"params\":");
+    appendValue(json, params);
+    return json.append("}\n").toString();
+  }
+
+  private static void appendValue(StringBuilder json, @Nullable Object value) {
+    if (value == null) {
+      json.append("null");
+    } else if (value instanceof ReadableMap) {
+      appendValue(json, ((ReadableMap) value).toHashMap());
+    } else if (value instanceof ReadableArray) {
+      appendValue(json, ((ReadableArray) value).toArrayList());
+    } else if (value instanceof Map) {
+      json.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (!first) {
+          json.append(',');
+        }
+        first = false;
+        appendString(json, String.valueOf(entry.getKey()));
+        json.append(':');
+        appendValue(json, entry.getValue());
+      }
+      json.append('}');
+    } else if (value instanceof List) {
+      json.append('[');
+      boolean first = true;
+      for (Object item : (List<?>) value) {
+        if (!first) {
+          json.append(',');
+        }
+        first = false;
+        appendValue(json, item);
+      }
+      json.append(']');
+    } else if (value instanceof Double || value instanceof Float) {
+      double number = ((Number) value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        json.append("null");
+      } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+        json.append((long) number);
+      } else {
+        json.append(number);
+      }
+    } else if (value instanceof Number || value instanceof Boolean) {
+      json.append(value);
+    } else {
+      appendString(json, value.toString());
+    }
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+}
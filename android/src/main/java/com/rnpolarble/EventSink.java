@@ -0,0 +1,22 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Receives every event the module emits. Sinks are called on the emitting thread, mostly the
+ * conversion thread, so they must not block.
+ *
+ * <p>params is a {@link com.facebook.react.bridge.ReadableMap}, a String or null and is only
+ * valid during the call: the JS bridge consumes maps, so sinks that do are called last.
+ */
+interface EventSink {
+  void onEvent(String eventName, @Nullable Object params);
+
+  /** True for sinks that hand params over and leave them unreadable, like the JS bridge. */
+  default boolean consumesParams() {
+    return false;
+  }
+
+  default void close() {
+  }
+}
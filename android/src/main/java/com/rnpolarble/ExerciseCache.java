@@ -0,0 +1,172 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Downloaded H10 exercises kept on disk, keyed by device id and exercise path, so an
+ * exercise only has to be transferred over BLE once. The least recently used exercises
+ * are deleted once the files take more than the size limit.
+ */
+final class ExerciseCache {
+  private static final int MAGIC_RAW = 0x45584331; // "EXC1"
+  /** Samples as {@link DeltaCodec} ints, a third of the size of raw ones for typical HR. */
+  private static final int MAGIC = 0x45584332; // "EXC2"
+  private static final String SUFFIX = ".exc";
+
+  static final class Exercise {
+    final int interval;
+    final int[] samples;
+
+    Exercise(int interval, int[] samples) {
+      this.interval = interval;
+      this.samples = samples;
+    }
+  }
+
+  private final File directory;
+  private final long maxBytes;
+  /** File name to file size, in access order. */
+  private LinkedHashMap<String, Long> index;
+  private long totalBytes = 0;
+
+  ExerciseCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  synchronized boolean contains(String deviceId, String path) {
+    return index().containsKey(fileName(deviceId, path));
+  }
+
+  @Nullable
+  synchronized Exercise get(String deviceId, String path) {
+    String name = fileName(deviceId, path);
+    if (index().get(name) == null) {
+      return null;
+    }
+    File file = new File(directory, name);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int magic = in.readInt();
+      if (magic != MAGIC && magic != MAGIC_RAW) {
+        throw new IOException("Bad magic");
+      }
+      int interval = in.readInt();
+      int[] samples = new int[in.readInt()];
+      if (magic == MAGIC) {
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        DeltaCodec.decodeInts(samples, samples.length, ByteBuffer.wrap(encoded));
+      } else {
+        for (int i = 0; i < samples.length; i++) {
+          samples[i] = in.readInt();
+        }
+      }
+      file.setLastModified(System.currentTimeMillis());
+      return new Exercise(interval, samples);
+    } catch (IOException | RuntimeException e) {
+      Log.e(RnPolarBleModule.TAG, "Dropping unreadable cached exercise " + path + ": " + e.getLocalizedMessage());
+      remove(name);
+      return null;
+    }
+  }
+
+  synchronized void put(String deviceId, String path, int interval, int[] samples) {
+    String name = fileName(deviceId, path);
+    index();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.e(RnPolarBleModule.TAG, "Could not create " + directory);
+      return;
+    }
+    ByteBuffer encoded = ByteBuffer.allocate(samples.length * 5);
+    DeltaCodec.encodeInts(samples, samples.length, encoded);
+    File temporary = new File(directory, name + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(interval);
+      out.writeInt(samples.length);
+      out.writeInt(encoded.position());
+      out.write(encoded.array(), 0, encoded.position());
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Could not cache exercise " + path + ": " + e.getLocalizedMessage());
+      temporary.delete();
+      return;
+    }
+    remove(name);
+    File file = new File(directory, name);
+    if (!temporary.renameTo(file)) {
+      temporary.delete();
+      return;
+    }
+    index.put(name, file.length());
+    totalBytes += file.length();
+    evict();
+  }
+
+  private LinkedHashMap<String, Long> index() {
+    if (index != null) {
+      return index;
+    }
+    index = new LinkedHashMap<>(16, 0.75f, true);
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files != null) {
+      Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+      for (File file : files) {
+        index.put(file.getName(), file.length());
+        totalBytes += file.length();
+      }
+    }
+    evict();
+    return index;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      Map.Entry<String, Long> eldest = iterator.next();
+      iterator.remove();
+      totalBytes -= eldest.getValue();
+      new File(directory, eldest.getKey()).delete();
+    }
+  }
+
+  private void remove(String name) {
+    Long size = index.remove(name);
+    if (size != null) {
+      totalBytes -= size;
+    }
+    new File(directory, name).delete();
+  }
+
+  private static String fileName(String deviceId, String path) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest((deviceId + "\n" + path).getBytes(StandardCharsets.UTF_8));
+      StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+      for (byte b : hash) {
+        name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return name.append(SUFFIX).toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Appends events as JSON lines to a file. */
+final class FileEventSink extends QueuedEventSink {
+  private static final int BUFFER_BYTES = 64 * 1024;
+
+  private final File file;
+  private final OutputStream out;
+
+  FileEventSink(File file, int capacity) throws IOException {
+    super("RnPolarBle-file-sink", capacity);
+    this.file = file;
+    File directory = file.getParentFile();
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+    out = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_BYTES);
+    start();
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  @Override
+  void write(byte[] line) throws IOException {
+    out.write(line);
+  }
+
+  @Override
+  void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  void release() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Could not close " + file + ": " + e.getLocalizedMessage());
+    }
+  }
+}
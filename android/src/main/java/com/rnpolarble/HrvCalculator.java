@@ -0,0 +1,90 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Time domain HRV over the RR intervals of a sliding time window. Running sums are updated
+ * as intervals enter and leave the window, so each RR costs O(1) whatever the window length.
+ */
+final class HrvCalculator {
+  private static final int NN50_THRESHOLD_MS = 50;
+
+  private final long windowMs;
+  private final IntRingBuffer rrs;
+  private long sum = 0;
+  private long sumSquares = 0;
+  private long sumDiffSquares = 0;
+  private int nn50 = 0;
+
+  HrvCalculator(long windowMs) {
+    this.windowMs = windowMs;
+    // Enough room for the window at 200 bpm before the buffer has to grow.
+    this.rrs = new IntRingBuffer((int) Math.min(4096, windowMs / 300 + 1));
+  }
+
+  void add(int rrMs) {
+    if (!rrs.isEmpty()) {
+      addDiff(rrMs - rrs.last(), 1);
+    }
+    rrs.add(rrMs);
+    sum += rrMs;
+    sumSquares += (long) rrMs * rrMs;
+    while (sum > windowMs && rrs.size() > 1) {
+      removeOldest();
+    }
+  }
+
+  int size() {
+    return rrs.size();
+  }
+
+  double meanRr() {
+    return rrs.isEmpty() ? 0 : (double) sum / rrs.size();
+  }
+
+  double sdnn() {
+    int n = rrs.size();
+    if (n < 2) {
+      return 0;
+    }
+    double variance = (sumSquares - (double) sum * sum / n) / (n - 1);
+    return Math.sqrt(Math.max(0, variance));
+  }
+
+  double rmssd() {
+    int diffs = rrs.size() - 1;
+    return diffs < 1 ? 0 : Math.sqrt((double) sumDiffSquares / diffs);
+  }
+
+  double pnn50() {
+    int diffs = rrs.size() - 1;
+    return diffs < 1 ? 0 : 100.0 * nn50 / diffs;
+  }
+
+  WritableMap toJsDictionary(String id) {
+    WritableMap params = Arguments.createMap();
+    params.putString("id", id);
+    params.putInt("count", rrs.size());
+    params.putDouble("windowMs", windowMs);
+    params.putDouble("meanRr", meanRr());
+    params.putDouble("sdnn", sdnn());
+    params.putDouble("rmssd", rmssd());
+    params.putDouble("pnn50", pnn50());
+    return params;
+  }
+
+  private void removeOldest() {
+    int oldest = rrs.removeFirst();
+    sum -= oldest;
+    sumSquares -= (long) oldest * oldest;
+    addDiff(rrs.first() - oldest, -1);
+  }
+
+  private void addDiff(int diff, int sign) {
+    sumDiffSquares += sign * (long) diff * diff;
+    if (Math.abs(diff) > NN50_THRESHOLD_MS) {
+      nn50 += sign;
+    }
+  }
+}
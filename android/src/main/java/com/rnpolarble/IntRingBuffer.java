@@ -0,0 +1,70 @@
+package com.rnpolarble;
+
+import java.util.NoSuchElementException;
+
+/**
+ * FIFO of primitive ints that grows when full and otherwise never allocates.
+ */
+final class IntRingBuffer {
+  private int[] values;
+  private int head = 0;
+  private int size = 0;
+
+  IntRingBuffer(int initialCapacity) {
+    values = new int[Math.max(1, initialCapacity)];
+  }
+
+  void add(int value) {
+    if (size == values.length) {
+      grow();
+    }
+    values[(head + size) % values.length] = value;
+    size++;
+  }
+
+  int removeFirst() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    int value = values[head];
+    head = (head + 1) % values.length;
+    size--;
+    return value;
+  }
+
+  int first() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return values[head];
+  }
+
+  int last() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return values[(head + size - 1) % values.length];
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  private void grow() {
+    int[] grown = new int[values.length * 2];
+    for (int i = 0; i < size; i++) {
+      grown[i] = values[(head + i) % values.length];
+    }
+    values = grown;
+    head = 0;
+  }
+}
@@ -0,0 +1,89 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear histogram of durations in microseconds, in the manner of
+ * HdrHistogram: each power of two range is split into {@link #SUB_BUCKETS} equal buckets,
+ * so values are kept with about 6% precision from 1 us up to about 18 hours.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int RANGES = 33;
+
+  private final AtomicLongArray counts = new AtomicLongArray(RANGES * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(index(micros));
+    count.incrementAndGet();
+    sumMicros.addAndGet(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  long count() {
+    return count.get();
+  }
+
+  /** Upper bound in microseconds of the bucket holding the given percentile. */
+  long percentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      // The last bucket also holds the values past the range, so its bound does not apply.
+      if (seen >= Math.max(1, rank) && i < counts.length() - 1) {
+        return Math.min(upperBound(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  WritableMap toJsDictionary() {
+    long total = count.get();
+    WritableMap params = Arguments.createMap();
+    params.putDouble("count", total);
+    params.putDouble("meanMs", total > 0 ? sumMicros.get() / 1000.0 / total : 0);
+    params.putDouble("p50Ms", percentile(50) / 1000.0);
+    params.putDouble("p90Ms", percentile(90) / 1000.0);
+    params.putDouble("p99Ms", percentile(99) / 1000.0);
+    params.putDouble("maxMs", maxMicros.get() / 1000.0);
+    return params;
+  }
+
+  private static int index(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int range = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+    if (range >= RANGES) {
+      return RANGES * SUB_BUCKETS - 1;
+    }
+    int subBucket = (int) (micros >>> (range - 1)) - SUB_BUCKETS;
+    return range * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBound(int index) {
+    int range = index / SUB_BUCKETS;
+    int subBucket = index % SUB_BUCKETS;
+    if (range == 0) {
+      return subBucket;
+    }
+    return ((long) (SUB_BUCKETS + subBucket + 1) << (range - 1)) - 1;
+  }
+}
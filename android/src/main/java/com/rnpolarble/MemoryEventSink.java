@@ -0,0 +1,43 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last events as JSON lines in memory, for tests and for checking the pipeline
+ * without React Native.
+ */
+final class MemoryEventSink implements EventSink {
+  private final String[] lines;
+  private long count = 0;
+
+  MemoryEventSink(int capacity) {
+    lines = new String[Math.max(1, capacity)];
+  }
+
+  @Override
+  public synchronized void onEvent(String eventName, @Nullable Object params) {
+    lines[(int) (count % lines.length)] = EventJson.toLine(eventName, params);
+    count++;
+  }
+
+  synchronized long count() {
+    return count;
+  }
+
+  /** The kept events, oldest first. */
+  synchronized List<String> events() {
+    int size = (int) Math.min(count, lines.length);
+    List<String> events = new ArrayList<>(size);
+    for (long i = count - size; i < count; i++) {
+      events.add(lines[(int) (i % lines.length)]);
+    }
+    return events;
+  }
+
+  synchronized void clear() {
+    count = 0;
+  }
+}
@@ -0,0 +1,119 @@
+package com.rnpolarble;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Packets held back while the conversion thread is behind, bounded by a number of samples.
+ * Filled through {@code Flowable.onBackpressureReduce} so only the thread delivering SDK
+ * packets touches it until it is handed downstream. Receive times are kept in a primitive
+ * column next to the packets, and a drained queue is cleared and handed back for reuse, so a
+ * stream in steady state allocates no queue or wrapper per packet.
+ */
+final class PacketQueue<T> {
+  private static final int INITIAL_CAPACITY = 8;
+
+  private Object[] packets = new Object[INITIAL_CAPACITY];
+  private long[] receivedNanos = new long[INITIAL_CAPACITY];
+  private int head = 0;
+  private int size = 0;
+  private final StreamOptions.BackpressurePolicy policy;
+  private final int capacitySamples;
+  private final ToIntFunction<T> sampleCount;
+  private final StreamStats stats;
+  private int samples = 0;
+
+  PacketQueue(StreamOptions.BackpressurePolicy policy, int capacitySamples, ToIntFunction<T> sampleCount, StreamStats stats) {
+    this.policy = policy;
+    this.capacitySamples = capacitySamples;
+    this.sampleCount = sampleCount;
+    this.stats = stats;
+  }
+
+  PacketQueue<T> offer(T packet, long nanos) {
+    int count = sampleCount.applyAsInt(packet);
+    switch (policy) {
+      case LATEST:
+        dropAll();
+        break;
+      case DROP_OLDEST:
+        while (size > 0 && exceedsCapacity(count)) {
+          dropOldest();
+        }
+        break;
+      case BUFFER:
+      default:
+        if (size > 0 && exceedsCapacity(count)) {
+          stats.dropped(count);
+          return this;
+        }
+        break;
+    }
+    if (size == packets.length) {
+      grow();
+    }
+    int index = (head + size) % packets.length;
+    packets[index] = packet;
+    receivedNanos[index] = nanos;
+    size++;
+    samples += count;
+    return this;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Packet i in arrival order. */
+  @SuppressWarnings("unchecked")
+  T packet(int i) {
+    return (T) packets[(head + i) % packets.length];
+  }
+
+  /** System.nanoTime() when packet i was offered. */
+  long receivedNanos(int i) {
+    return receivedNanos[(head + i) % packets.length];
+  }
+
+  /** Empties the queue for reuse and releases the packets, keeping the arrays. */
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      packets[(head + i) % packets.length] = null;
+    }
+    head = 0;
+    size = 0;
+    samples = 0;
+  }
+
+  private boolean exceedsCapacity(int incoming) {
+    return capacitySamples > 0 && samples + incoming > capacitySamples;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dropOldest() {
+    int count = sampleCount.applyAsInt((T) packets[head]);
+    packets[head] = null;
+    head = (head + 1) % packets.length;
+    size--;
+    samples -= count;
+    stats.dropped(count);
+  }
+
+  private void dropAll() {
+    while (size > 0) {
+      dropOldest();
+    }
+  }
+
+  private void grow() {
+    Object[] grownPackets = new Object[packets.length * 2];
+    long[] grownNanos = new long[grownPackets.length];
+    for (int i = 0; i < size; i++) {
+      int index = (head + i) % packets.length;
+      grownPackets[i] = packets[index];
+      grownNanos[i] = receivedNanos[index];
+    }
+    packets = grownPackets;
+    receivedNanos = grownNanos;
+    head = 0;
+  }
+}
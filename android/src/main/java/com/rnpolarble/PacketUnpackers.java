@@ -0,0 +1,54 @@
+package com.rnpolarble;
+
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarPpgData;
+import com.polar.sdk.api.model.PolarPpiData;
+
+import java.util.List;
+
+/**
+ * Writes the samples of SDK packets to a {@link SampleWriter}, one method per stream type.
+ * Methods taking a values array reuse it for every sample, it needs one slot per channel.
+ */
+final class PacketUnpackers {
+  private PacketUnpackers() {
+  }
+
+  static void ecg(PolarEcgData polarEcgData, SampleWriter writer) {
+    for (PolarEcgData.PolarEcgDataSample s : polarEcgData.getSamples()) {
+      writer.add(s.getTimeStamp(), s.getVoltage());
+    }
+  }
+
+  static void acc(PolarAccelerometerData polarAccelerometerData, SampleWriter writer) {
+    for (PolarAccelerometerData.PolarAccelerometerDataSample s : polarAccelerometerData.getSamples()) {
+      writer.add(s.getTimeStamp(), s.getX(), s.getY(), s.getZ());
+    }
+  }
+
+  /** Channels the packet does not have are written as 0. */
+  static void ppg(PolarPpgData polarPpgData, int[] values, SampleWriter writer) {
+    for (PolarPpgData.PolarPpgSample s : polarPpgData.getSamples()) {
+      List<Integer> channels = s.getChannelSamples();
+      for (int c = 0; c < values.length; c++) {
+        values[c] = c < channels.size() ? channels.get(c) : 0;
+      }
+      writer.add(s.getTimeStamp(), values);
+    }
+  }
+
+  /** Flags are written as 0 or 1. */
+  static void ppi(PolarPpiData polarPpiData, int[] values, SampleWriter writer) {
+    for (PolarPpiData.PolarPpiSample s : polarPpiData.getSamples()) {
+      values[0] = s.getPpi();
+      values[1] = s.getErrorEstimate();
+      values[2] = s.getHr();
+      values[3] = s.getBlockerBit() ? 1 : 0;
+      values[4] = s.getSkinContactStatus() ? 1 : 0;
+      values[5] = s.getSkinContactSupported() ? 1 : 0;
+      // PPI samples carry no sensor time stamp.
+      writer.add(0, values);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.rnpolarble;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Creates the containers event payloads are written into. {@link #REACT} backs them with
+ * the native bridge types, other implementations let the conversion code run without
+ * React Native, e.g. on a plain JVM.
+ */
+interface PayloadFactory {
+  PayloadFactory REACT = new PayloadFactory() {
+    @Override
+    public WritableMap createMap() {
+      return Arguments.createMap();
+    }
+
+    @Override
+    public WritableArray createArray() {
+      return Arguments.createArray();
+    }
+
+    @Override
+    public String encodeBase64(byte[] bytes, int length) {
+      return Base64.encodeToString(bytes, 0, length, Base64.NO_WRAP);
+    }
+  };
+
+  WritableMap createMap();
+
+  WritableArray createArray();
+
+  String encodeBase64(byte[] bytes, int length);
+}
@@ -0,0 +1,38 @@
+package com.rnpolarble;
+
+/**
+ * Names of the events sent to JS.
+ */
+enum PolarEvent {
+    DEVICE_FOUND,
+    DEVICE_LIST,
+    DEVICE_CONNECTING,
+    DEVICE_CONNECTED,
+    DEVICE_DISCONNECTED,
+    BATTERY_LEVEL_RECEIVED,
+    DIS_INFORMATION_RECEIVED,
+    BLE_POWER_ON,
+    BLE_POWER_OFF,
+    ECG_FEATURE_READY,
+    HR_FEATURE_READY,
+    FTP_FEATURE_READY,
+    ACC_FEATURE_READY,
+    STREAMING_FEATURES_READY,
+    OHR_PPG_FEATURE_READY,
+    OHR_PPI_FEATURE_READY,
+    HR_VALUE_RECEIVED,
+    HR_DATA,
+    HRV_DATA,
+    ECG_DATA,
+    ACC_DATA,
+    PPG_DATA,
+    PPI_DATA,
+    RECORD_STATUS,
+    EXERCISE_ENTRY,
+    READ_EXERCISE,
+    STREAM_STATS,
+    AGGREGATE_DATA,
+    RULE_TRIGGER,
+    BACKGROUND_CATCH_UP,
+    BACKGROUND_SUMMARY
+}
@@ -0,0 +1,53 @@
+package com.rnpolarble;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarHrData;
+import com.polar.sdk.api.model.PolarPpgData;
+import com.polar.sdk.api.model.PolarPpiData;
+import com.polar.sdk.api.model.PolarSensorSetting;
+
+import java.util.function.Supplier;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+/** Streams of real devices, from the SDK api. */
+final class PolarStreamSource implements StreamSource {
+  private final Supplier<PolarBleApi> api;
+
+  PolarStreamSource(Supplier<PolarBleApi> api) {
+    this.api = api;
+  }
+
+  @Override
+  public Single<PolarSensorSetting> requestStreamSettings(String id, PolarBleApi.PolarDeviceDataType dataType) {
+    return api.get().requestStreamSettings(id, dataType);
+  }
+
+  @Override
+  public Flowable<PolarHrData> startHrStreaming(String id) {
+    return api.get().startHrStreaming(id);
+  }
+
+  @Override
+  public Flowable<PolarEcgData> startEcgStreaming(String id, PolarSensorSetting setting) {
+    return api.get().startEcgStreaming(id, setting);
+  }
+
+  @Override
+  public Flowable<PolarAccelerometerData> startAccStreaming(String id, PolarSensorSetting setting) {
+    return api.get().startAccStreaming(id, setting);
+  }
+
+  @Override
+  public Flowable<PolarPpgData> startPpgStreaming(String id, PolarSensorSetting setting) {
+    return api.get().startPpgStreaming(id, setting);
+  }
+
+  @Override
+  public Flowable<PolarPpiData> startPpiStreaming(String id) {
+    return api.get().startPpiStreaming(id);
+  }
+}
@@ -0,0 +1,107 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base of sinks that write events as JSON lines on their own thread. Events are serialized on
+ * the emitting thread and handed over through a lock-free queue; once the queue holds
+ * capacity events new ones are dropped and counted instead of blocking the emitter.
+ */
+abstract class QueuedEventSink implements EventSink {
+  private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final int capacity;
+  private final Thread writer;
+  private volatile boolean closed = false;
+
+  QueuedEventSink(String threadName, int capacity) {
+    this.capacity = capacity;
+    writer = new Thread(this::drain, threadName);
+    writer.setDaemon(true);
+  }
+
+  /** Starts the writer thread, called once the subclass is ready to write. */
+  final void start() {
+    writer.start();
+  }
+
+  @Override
+  public final void onEvent(String eventName, @Nullable Object params) {
+    if (closed) {
+      return;
+    }
+    if (queued.incrementAndGet() > capacity) {
+      queued.decrementAndGet();
+      dropped.incrementAndGet();
+      return;
+    }
+    queue.offer(EventJson.toLine(eventName, params).getBytes(StandardCharsets.UTF_8));
+    LockSupport.unpark(writer);
+  }
+
+  /** Stops taking events, the writer still writes and flushes the queued ones before release. */
+  @Override
+  public final void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+  }
+
+  WritableMap toJsDictionary() {
+    WritableMap params = Arguments.createMap();
+    params.putDouble("written", written.get());
+    params.putDouble("dropped", dropped.get());
+    params.putInt("queued", queued.get());
+    return params;
+  }
+
+  /** Writes one JSON line, called on the writer thread only. */
+  abstract void write(byte[] line) throws IOException;
+
+  /** Called on the writer thread once the queue is empty. */
+  abstract void flush() throws IOException;
+
+  /** Releases resources on the writer thread after the sink is closed. */
+  abstract void release();
+
+  private void drain() {
+    try {
+      while (true) {
+        // Read before polling, so whatever was queued before close is still written.
+        boolean closing = closed;
+        byte[] line = queue.poll();
+        if (line == null) {
+          flush();
+          if (closing) {
+            break;
+          }
+          LockSupport.park(this);
+          continue;
+        }
+        queued.decrementAndGet();
+        write(line);
+        written.incrementAndGet();
+      }
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, writer.getName() + " failed: " + e.getLocalizedMessage());
+      closed = true;
+      queue.clear();
+    } finally {
+      release();
+    }
+  }
+}
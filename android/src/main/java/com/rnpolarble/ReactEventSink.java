@@ -0,0 +1,28 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/** Emits events to JS through the device event emitter. */
+final class ReactEventSink implements EventSink {
+  private final ReactContext reactContext;
+
+  ReactEventSink(ReactContext reactContext) {
+    this.reactContext = reactContext;
+  }
+
+  @Override
+  public void onEvent(String eventName, @Nullable Object params) {
+    if (!reactContext.hasActiveReactInstance()) {
+      return;
+    }
+    reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+  }
+
+  @Override
+  public boolean consumesParams() {
+    return true;
+  }
+}
@@ -0,0 +1,44 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Locale;
+
+/**
+ * Reads optional values from option maps given from JS, falling back when a key is missing.
+ */
+final class ReadableMaps {
+  private ReadableMaps() {
+  }
+
+  static boolean has(@Nullable ReadableMap map, String key) {
+    return map != null && map.hasKey(key) && !map.isNull(key);
+  }
+
+  static int getInt(@Nullable ReadableMap map, String key, int fallback) {
+    return has(map, key) ? map.getInt(key) : fallback;
+  }
+
+  static double getDouble(@Nullable ReadableMap map, String key, double fallback) {
+    return has(map, key) ? map.getDouble(key) : fallback;
+  }
+
+  static boolean getBoolean(@Nullable ReadableMap map, String key, boolean fallback) {
+    return has(map, key) ? map.getBoolean(key) : fallback;
+  }
+
+  /** Matches names like "dropOldest" or "drop_oldest" against the constant DROP_OLDEST. */
+  static <E extends Enum<E>> E getEnum(@Nullable ReadableMap map, String key, E fallback) {
+    if (!has(map, key)) {
+      return fallback;
+    }
+    try {
+      String name = map.getString(key).replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+      return Enum.valueOf(fallback.getDeclaringClass(), name);
+    } catch (IllegalArgumentException e) {
+      return fallback;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.rnpolarble;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Consumer;
+
+/**
+ * Reconnects devices that dropped without being disconnected from JS. Attempts are retried
+ * with exponential backoff and full jitter, capped at the maximum delay, until the device
+ * connects again or is disconnected on purpose.
+ */
+final class ReconnectScheduler {
+  private static final class State {
+    int attempts = 0;
+    long disconnectedAtMs = -1;
+    Disposable pending;
+  }
+
+  private final Scheduler scheduler;
+  private final Consumer<String> connect;
+  private final Random random = new Random();
+  private final Map<String, State> watched = new HashMap<>();
+
+  private boolean enabled = true;
+  private long baseDelayMs = 500;
+  private long maxDelayMs = 30000;
+
+  private long reconnects = 0;
+  private long attemptsTotal = 0;
+  private long lastReconnectMs = 0;
+  private long maxReconnectMs = 0;
+  private long totalReconnectMs = 0;
+
+  ReconnectScheduler(Scheduler scheduler, Consumer<String> connect) {
+    this.scheduler = scheduler;
+    this.connect = connect;
+  }
+
+  synchronized void configure(boolean enabled, long baseDelayMs, long maxDelayMs) {
+    this.enabled = enabled;
+    this.baseDelayMs = Math.max(1, baseDelayMs);
+    this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+  }
+
+  /** Keeps the device connected from now on. */
+  synchronized void watch(String deviceId) {
+    if (!watched.containsKey(deviceId)) {
+      watched.put(deviceId, new State());
+    }
+  }
+
+  synchronized void unwatch(String deviceId) {
+    State state = watched.remove(deviceId);
+    if (state != null && state.pending != null) {
+      state.pending.dispose();
+    }
+  }
+
+  synchronized void onConnected(String deviceId) {
+    watch(deviceId);
+    State state = watched.get(deviceId);
+    if (state.pending != null) {
+      state.pending.dispose();
+      state.pending = null;
+    }
+    if (state.disconnectedAtMs >= 0) {
+      long elapsed = SystemClock.elapsedRealtime() - state.disconnectedAtMs;
+      reconnects++;
+      attemptsTotal += state.attempts;
+      lastReconnectMs = elapsed;
+      maxReconnectMs = Math.max(maxReconnectMs, elapsed);
+      totalReconnectMs += elapsed;
+    }
+    state.attempts = 0;
+    state.disconnectedAtMs = -1;
+  }
+
+  synchronized void onDisconnected(String deviceId) {
+    State state = watched.get(deviceId);
+    if (state == null || !enabled) {
+      return;
+    }
+    if (state.disconnectedAtMs < 0) {
+      state.disconnectedAtMs = SystemClock.elapsedRealtime();
+    }
+    schedule(deviceId, state);
+  }
+
+  synchronized void shutdown() {
+    for (State state : watched.values()) {
+      if (state.pending != null) {
+        state.pending.dispose();
+      }
+    }
+    watched.clear();
+  }
+
+  synchronized WritableMap toJsDictionary() {
+    WritableMap params = Arguments.createMap();
+    params.putInt("watchedDevices", watched.size());
+    params.putDouble("reconnects", reconnects);
+    params.putDouble("attempts", attemptsTotal);
+    params.putDouble("lastReconnectMs", lastReconnectMs);
+    params.putDouble("maxReconnectMs", maxReconnectMs);
+    params.putDouble("meanReconnectMs", reconnects > 0 ? (double) totalReconnectMs / reconnects : 0);
+    return params;
+  }
+
+  private void schedule(String deviceId, State state) {
+    if (state.pending != null) {
+      state.pending.dispose();
+    }
+    long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(state.attempts, 20));
+    long delay = (long) (random.nextDouble() * ceiling);
+    state.pending = scheduler.scheduleDirect(() -> attempt(deviceId), delay, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void attempt(String deviceId) {
+    State state = watched.get(deviceId);
+    if (state == null || state.disconnectedAtMs < 0) {
+      return;
+    }
+    state.attempts++;
+    try {
+      connect.accept(deviceId);
+    } catch (Throwable e) {
+      Log.e(RnPolarBleModule.TAG, "Reconnect to " + deviceId + " failed: " + e.getLocalizedMessage());
+    }
+    // Schedule the next attempt in case this one does not lead to deviceConnected.
+    schedule(deviceId, state);
+  }
+}
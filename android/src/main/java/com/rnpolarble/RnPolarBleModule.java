@@ -1,19 +1,20 @@
 package com.rnpolarble;
 
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.bridge.WritableNativeMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.polar.sdk.api.PolarBleApi;
 import com.polar.sdk.api.PolarBleApiCallback;
 import com.polar.sdk.api.PolarBleApiDefaultImpl;
@@ -24,94 +25,177 @@ import com.polar.sdk.api.model.PolarEcgData;
 import com.polar.sdk.api.model.PolarExerciseData;
 import com.polar.sdk.api.model.PolarExerciseEntry;
 import com.polar.sdk.api.model.PolarHrData;
+import com.polar.sdk.api.model.PolarPpgData;
 import com.polar.sdk.api.model.PolarSensorSetting;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToIntFunction;
 import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 
-import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.functions.Action;
+import io.reactivex.rxjava3.functions.BiConsumer;
 import io.reactivex.rxjava3.functions.Consumer;
 import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.schedulers.Timed;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
-enum PolarEvent {
-    DEVICE_FOUND,
-    DEVICE_CONNECTING,
-    DEVICE_CONNECTED,
-    DEVICE_DISCONNECTED,
-    BATTERY_LEVEL_RECEIVED,
-    DIS_INFORMATION_RECEIVED,
-    BLE_POWER_ON,
-    BLE_POWER_OFF,
-    ECG_FEATURE_READY,
-    HR_FEATURE_READY,
-    FTP_FEATURE_READY,
-    ACC_FEATURE_READY,
-    STREAMING_FEATURES_READY,
-    OHR_PPG_FEATURE_READY,
-    OHR_PPI_FEATURE_READY,
-    HR_VALUE_RECEIVED,
-    HR_DATA,
-    ECG_DATA,
-    ACC_DATA,
-    PPG_DATA,
-    PPI_DATA,
-    RECORD_STATUS,
-    EXERCISE_ENTRY,
-    READ_EXERCISE
-}
-
 public class RnPolarBleModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
   public static final String NAME = "RnPolarBle";
   public static final String TAG = "RnPolarBle";
 
+  private static final int MIN_AGGREGATION_WINDOW_MS = 50;
+  private static final int TRIGGER_TICK_MS = 250;
+  private static final String[] ECG_CHANNELS = {"voltage"};
+  private static final String[] ACC_CHANNELS = {"x", "y", "z"};
+  private static final String[] PPG_CHANNELS = {"ppg0", "ppg1", "ppg2", "ambient"};
+  private static final String[] PPI_CHANNELS =
+          {"ppi", "errorEstimate", "hr", "blockerBit", "skinContactStatus", "skinContactSupported"};
+  /** Packet queues the conversion thread takes ahead while it is behind on an unbounded stream. */
+  private static final int CONVERSION_PREFETCH = 16;
+  private static final long HR_EVENT_BYTES = 160;
+  private static final String HEART_RATE_SERVICE = "180D";
+  /** RSSI limit of startAutoConnectToDevice when JS passes none, the one the SDK examples use. */
+  private static final int DEFAULT_AUTO_CONNECT_RSSI = -50;
+  private static final long RECORDING_SYNC_INTERVAL_MS = 2000;
+  private static final String RECORDING_DIRECTORY = "polar-sessions";
+  private static final String EXERCISE_CACHE_DIRECTORY = "polar-exercises";
+  private static final long EXERCISE_CACHE_BYTES = 32 * 1024 * 1024;
+  private static final int EXERCISE_FETCH_CONCURRENCY = 2;
+  private static final String DEVICE_SETTINGS_DIRECTORY = "polar-devices";
+  private static final int START_STREAMS_TIMEOUT_MS = 10000;
+  private static final int H10_REQUEST_TIMEOUT_MS = 15000;
+  private static final int EXERCISE_REQUEST_TIMEOUT_MS = 120000;
+  private static final String EVENT_SINK_DIRECTORY = "polar-events";
+  private static final String EVENT_SOCKET_NAME = "rnpolarble";
+  private static final int EVENT_SINK_CAPACITY = 4096;
+  private static final long BACKGROUND_MAX_BYTES = 4 * 1024 * 1024;
+  private static final int BACKGROUND_MAX_EVENTS = 1000;
+  private static final Set<PolarBleApi.PolarDeviceDataType> STREAMED_TYPES =
+          EnumSet.of(PolarBleApi.PolarDeviceDataType.HR, PolarBleApi.PolarDeviceDataType.ECG,
+                  PolarBleApi.PolarDeviceDataType.ACC, PolarBleApi.PolarDeviceDataType.PPG,
+                  PolarBleApi.PolarDeviceDataType.PPI);
+  private static final Set<PolarBleApi.PolarBleSdkFeature> DEFAULT_FEATURES =
+          EnumSet.of(PolarBleApi.PolarBleSdkFeature.FEATURE_HR ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_SDK_MODE ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_BATTERY_INFO ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_H10_EXERCISE_RECORDING ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_OFFLINE_RECORDING ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_ONLINE_STREAMING ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_DEVICE_TIME_SETUP ,
+                  PolarBleApi.PolarBleSdkFeature.FEATURE_DEVICE_INFO);
+
   private final ReactApplicationContext reactContext;
   private ReactApplicationContext ctx;
-  public PolarBleApi api;
+  private volatile PolarBleApi api = null;
+  private Set<PolarBleApi.PolarBleSdkFeature> features = DEFAULT_FEATURES;
+  private long moduleInitNanos = 0;
+  private long apiInitNanos = 0;
 
   private Disposable searchDisposable = null;
-  private Disposable hrDisposable = null;
-  private Disposable ecgDisposable = null;
-  private Disposable accDisposable = null;
-  private Disposable ppgDisposable = null;
-  private Disposable ppiDisposable = null;
-  private Disposable recordingStatusReadDisposable = null;
-  private Disposable recordingStartStopDisposable = null;
-  private Disposable fetchExerciseDisposable = null;
-  private Disposable removeExerciseDisposable = null;
-  private Disposable listExercisesDisposable = null;
-  private List<PolarExerciseEntry> exerciseEntries = new ArrayList<>();
-
-  private Boolean hrReady = false;
-  private Boolean ecgReady = false;
-  private Boolean accReady = false;
-  private Boolean ppgReady = false;
-  private Boolean ppiReady = false;
+  private Disposable autoConnectDisposable = null;
+  private Disposable streamStatsDisposable = null;
+  private int discoveryIntervalMs = 0;
+  private int discoveryExpireMs = 10000;
+  private double discoveryRssiSmoothing = 0.3;
+  private boolean discoveryDelta = true;
+  private final ConversionScheduler conversionScheduler = new ConversionScheduler();
+  private final SamplePayloads payloads;
+  private final ReconnectScheduler reconnects;
+  /** H10 and exercise requests in flight, coalesced per device and operation. */
+  private final SingleFlight requests = new SingleFlight(conversionScheduler.scheduler());
+  private final CompositeDisposable requestDisposables = new CompositeDisposable();
+  private final Map<String, List<PolarExerciseEntry>> exerciseEntries = new ConcurrentHashMap<>();
+  private final ExerciseCache exerciseCache;
+  /** Set from the JS thread, read when the conversion thread starts or restarts a stream. */
+  private final Map<PolarBleApi.PolarDeviceDataType, StreamOptions> streamOptions = new ConcurrentHashMap<>();
+  private final StreamRegistry streams = new StreamRegistry();
+  private final Map<String, SessionRecorder> recorders = new ConcurrentHashMap<>();
+  private volatile byte recordingEncoding = SessionRecorder.ENCODING_DELTA;
+  private final DeviceSettingsCache deviceSettings;
+  private final EventDispatcher events = new EventDispatcher();
+  private final BackgroundBuffer bridgeSink;
+  private final Map<String, QueuedEventSink> eventSinks = new ConcurrentHashMap<>();
+  private int nextEventSinkId = 1;
+  private final StreamSource polarSource = new PolarStreamSource(this::api);
+  private final Aggregations aggregations;
+  private final TriggerRules triggerRules;
+  @Nullable
+  private Disposable triggerTickDisposable = null;
+  @Nullable
+  private volatile SimulatedDevices simulator = null;
 
   public RnPolarBleModule(ReactApplicationContext reactContext) {
+    this(reactContext, PayloadFactory.REACT);
+  }
+
+  /** Builds event payloads with the given factory, so JVM tests can run without the native bridge. */
+  RnPolarBleModule(ReactApplicationContext reactContext, PayloadFactory payloadFactory) {
     super(reactContext);
+    long createdNanos = System.nanoTime();
     this.reactContext = reactContext;
+        payloads = new SamplePayloads(payloadFactory);
+        aggregations = new Aggregations(payloadFactory,
+                result -> sendEvent(PolarEvent.AGGREGATE_DATA.name(), result));
+        triggerRules = new TriggerRules(payloadFactory,
+                trigger -> sendEvent(PolarEvent.RULE_TRIGGER.name(), trigger));
         ctx = reactContext;
+        reconnects = new ReconnectScheduler(conversionScheduler.scheduler(), deviceId -> api().connectToDevice(deviceId));
+        exerciseCache = new ExerciseCache(new File(reactContext.getFilesDir(), EXERCISE_CACHE_DIRECTORY), EXERCISE_CACHE_BYTES);
+        deviceSettings = new DeviceSettingsCache(new File(reactContext.getFilesDir(), DEVICE_SETTINGS_DIRECTORY));
+        bridgeSink = new BackgroundBuffer(new ReactEventSink(reactContext), payloadFactory,
+                BACKGROUND_MAX_BYTES, BACKGROUND_MAX_EVENTS);
+        events.add(bridgeSink);
+        reactContext.addLifecycleEventListener(this);
+
+        moduleInitNanos = System.nanoTime() - createdNanos;
+  }
+
+  /**
+   * Returns the SDK api, creating it on first use so apps pay for Bluetooth setup only
+   * once BLE is actually used.
+   */
+  private PolarBleApi api() {
+      PolarBleApi current = api;
+      if (current == null) {
+          synchronized (this) {
+              current = api;
+              if (current == null) {
+                  current = createApi();
+                  api = current;
+              }
+          }
+      }
+      return current;
+  }
+
+  private PolarBleApi createApi() {
+        long startNanos = System.nanoTime();
+        PolarBleApi polarApi = PolarBleApiDefaultImpl.defaultImplementation(reactContext, features);
 
-        api = PolarBleApiDefaultImpl.defaultImplementation(reactContext,
-                EnumSet.of(PolarBleApi.PolarBleSdkFeature.FEATURE_HR ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_SDK_MODE ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_BATTERY_INFO ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_H10_EXERCISE_RECORDING ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_OFFLINE_RECORDING ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_ONLINE_STREAMING ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_POLAR_DEVICE_TIME_SETUP ,
-                        PolarBleApi.PolarBleSdkFeature.FEATURE_DEVICE_INFO));
-
-        api.setApiCallback(new PolarBleApiCallback() {
+        polarApi.setApiCallback(new PolarBleApiCallback() {
             @Override
             public void batteryLevelReceived(@NonNull String identifier, int level) {
                 super.batteryLevelReceived(identifier, level);
@@ -119,16 +203,16 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
                 params.putString("id", identifier);
                 params.putInt("value", level);
 
-                sendEvent(ctx, PolarEvent.BATTERY_LEVEL_RECEIVED.name(), params);
+                sendEvent(PolarEvent.BATTERY_LEVEL_RECEIVED.name(), params);
             }
 
             @Override
             public void blePowerStateChanged(boolean powered) {
                 super.blePowerStateChanged(powered);
                 if (powered) {
-                    sendEvent(ctx, PolarEvent.BLE_POWER_ON.name());
+                    sendEvent(PolarEvent.BLE_POWER_ON.name());
                 } else {
-                    sendEvent(ctx, PolarEvent.BLE_POWER_OFF.name());
+                    sendEvent(PolarEvent.BLE_POWER_OFF.name());
                 }
             }
 
@@ -138,8 +222,9 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
                 Log.d(TAG, "bleSdkFeatureReady: " + feature);
                 switch (feature) {
                     case FEATURE_HR:
-                        hrReady = true;
-                        sendEvent(ctx, PolarEvent.HR_FEATURE_READY.name(), identifier);
+                        streams.setReady(identifier, PolarBleApi.PolarDeviceDataType.HR);
+                        sendEvent(PolarEvent.HR_FEATURE_READY.name(), identifier);
+                        resumeOwnedStream(identifier, PolarBleApi.PolarDeviceDataType.HR);
                         break;
                     case  FEATURE_BATTERY_INFO:
                         break;
@@ -154,39 +239,28 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
                     case FEATURE_POLAR_SDK_MODE:
                         break;
                     case FEATURE_POLAR_ONLINE_STREAMING:
-                        api.getAvailableOnlineStreamDataTypes(identifier)
-                                .observeOn(AndroidSchedulers.mainThread())
+                        Set<PolarBleApi.PolarDeviceDataType> cachedDataTypes = deviceSettings.getDataTypes(identifier);
+                        if (cachedDataTypes != null) {
+                            conversionScheduler.scheduler().scheduleDirect(() -> onlineStreamsAvailable(identifier, cachedDataTypes));
+                        }
+                        api().getAvailableOnlineStreamDataTypes(identifier)
+                                .observeOn(conversionScheduler.scheduler())
                                 .subscribe(new Consumer<Set<PolarBleApi.PolarDeviceDataType>>() {
                                     @Override
                                     public void accept(Set<PolarBleApi.PolarDeviceDataType> polarDeviceDataTypes) throws Throwable {
                                         Log.e(TAG, "Available online streaming data types:" + polarDeviceDataTypes);
-                                        for (PolarBleApi.PolarDeviceDataType dataType : polarDeviceDataTypes) {
-                                            switch (dataType) {
-                                                case ECG:
-                                                    sendEvent(ctx, PolarEvent.ECG_FEATURE_READY.name(), identifier);
-                                                    ecgReady = true;
-                                                    break;
-                                                case HR:
-                                                    sendEvent(ctx, PolarEvent.HR_FEATURE_READY.name(), identifier);
-                                                    hrReady = true;
-                                                    break;
-                                                case ACC:
-                                                    sendEvent(ctx, PolarEvent.ACC_FEATURE_READY.name(), identifier);
-                                                    accReady = true;
-                                                    break;
-                                                case PPI:
-                                                    sendEvent(ctx, PolarEvent.OHR_PPI_FEATURE_READY.name(), identifier);
-                                                    ppiReady = true;
-                                                    break;
-                                                case PPG:
-                                                    sendEvent(ctx, PolarEvent.OHR_PPG_FEATURE_READY.name(), identifier);
-                                                    ppgReady = true;
-                                                    break;
-                                                default:
-                                                    break;
+                                        if (deviceSettings.putDataTypes(identifier, polarDeviceDataTypes) || cachedDataTypes == null) {
+                                            Set<PolarBleApi.PolarDeviceDataType> newDataTypes = EnumSet.noneOf(PolarBleApi.PolarDeviceDataType.class);
+                                            newDataTypes.addAll(polarDeviceDataTypes);
+                                            if (cachedDataTypes != null) {
+                                                newDataTypes.removeAll(cachedDataTypes);
+                                                onlineStreamsRemoved(identifier, cachedDataTypes, polarDeviceDataTypes);
                                             }
+                                            onlineStreamsAvailable(identifier, newDataTypes);
                                         }
                                     }
+                                }, throwable -> {
+                                    Log.e(TAG, "Available online streaming data types failed: " + throwable.getLocalizedMessage());
                                 });
                         break;
                 }
@@ -195,32 +269,96 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
             @Override
             public void deviceConnected(@NonNull PolarDeviceInfo polarDeviceInfo) {
                 super.deviceConnected(polarDeviceInfo);
-                sendEvent(ctx, PolarEvent.DEVICE_CONNECTED.name(), toJsDictionary(polarDeviceInfo));
+                reconnects.onConnected(polarDeviceInfo.getDeviceId());
+                sendEvent(PolarEvent.DEVICE_CONNECTED.name(), toJsDictionary(polarDeviceInfo));
             }
 
             @Override
             public void deviceConnecting(@NonNull PolarDeviceInfo polarDeviceInfo) {
                 super.deviceConnecting(polarDeviceInfo);
-                sendEvent(ctx, PolarEvent.DEVICE_CONNECTING.name(), toJsDictionary(polarDeviceInfo));
+                sendEvent(PolarEvent.DEVICE_CONNECTING.name(), toJsDictionary(polarDeviceInfo));
             }
 
             @Override
             public void deviceDisconnected(@NonNull PolarDeviceInfo polarDeviceInfo) {
                 super.deviceDisconnected(polarDeviceInfo);
-                sendEvent(ctx, PolarEvent.DEVICE_DISCONNECTED.name(), toJsDictionary(polarDeviceInfo));
+                streams.removeDevice(polarDeviceInfo.getDeviceId());
+                reconnects.onDisconnected(polarDeviceInfo.getDeviceId());
+                sendEvent(PolarEvent.DEVICE_DISCONNECTED.name(), toJsDictionary(polarDeviceInfo));
             }
 
             @Override
             public void disInformationReceived(@NonNull String identifier, @NonNull UUID uuid, @NonNull String value) {
                 super.disInformationReceived(identifier, uuid, value);
+                if (DeviceSettingsCache.FIRMWARE_REVISION.equals(uuid)) {
+                    deviceSettings.setFirmware(identifier, value);
+                }
                 WritableMap params = Arguments.createMap();
                 params.putString("identifier", identifier);
                 params.putString("uuid", uuid.toString());
                 params.putString("value", value);
-                sendEvent(ctx, PolarEvent.DIS_INFORMATION_RECEIVED.name(), params);
+                sendEvent(PolarEvent.DIS_INFORMATION_RECEIVED.name(), params);
             }
 
         });
+        apiInitNanos = System.nanoTime() - startNanos;
+        return polarApi;
+  }
+
+  private void onlineStreamsAvailable(String identifier, Set<PolarBleApi.PolarDeviceDataType> dataTypes) {
+      for (PolarBleApi.PolarDeviceDataType dataType : dataTypes) {
+          switch (dataType) {
+              case ECG:
+                  streams.setReady(identifier, dataType);
+                  sendEvent(PolarEvent.ECG_FEATURE_READY.name(), identifier);
+                  break;
+              case HR:
+                  streams.setReady(identifier, dataType);
+                  sendEvent(PolarEvent.HR_FEATURE_READY.name(), identifier);
+                  break;
+              case ACC:
+                  streams.setReady(identifier, dataType);
+                  sendEvent(PolarEvent.ACC_FEATURE_READY.name(), identifier);
+                  break;
+              case PPI:
+                  streams.setReady(identifier, dataType);
+                  sendEvent(PolarEvent.OHR_PPI_FEATURE_READY.name(), identifier);
+                  break;
+              case PPG:
+                  streams.setReady(identifier, dataType);
+                  sendEvent(PolarEvent.OHR_PPG_FEATURE_READY.name(), identifier);
+                  break;
+              default:
+                  break;
+          }
+          resumeOwnedStream(identifier, dataType);
+      }
+  }
+
+  /**
+   * Restarts a stream that ran for aggregations or trigger rules once its device is ready
+   * again, as a disconnect stops every stream of the device while those stay registered.
+   */
+  private void resumeOwnedStream(String identifier, PolarBleApi.PolarDeviceDataType dataType) {
+      boolean inUse = dataType == PolarBleApi.PolarDeviceDataType.HR
+              ? triggerRules.hasRules(identifier)
+              : aggregations.hasQueries(identifier, dataType);
+      if (inUse && !streams.isActive(identifier, dataType)) {
+          Log.d(TAG, "Restarting " + dataType + " of " + identifier + " for aggregations or rules");
+          startStream(identifier, dataType);
+      }
+  }
+
+  /** Stops treating the cached data types the device no longer reports as ready. */
+  private void onlineStreamsRemoved(String identifier, Set<PolarBleApi.PolarDeviceDataType> cachedDataTypes,
+                                    Set<PolarBleApi.PolarDeviceDataType> dataTypes) {
+      for (PolarBleApi.PolarDeviceDataType dataType : cachedDataTypes) {
+          // HR is ready through the HR service as well, which does not depend on online streaming.
+          if (!dataTypes.contains(dataType) && dataType != PolarBleApi.PolarDeviceDataType.HR) {
+              Log.d(TAG, identifier + " no longer reports " + dataType);
+              streams.clearReady(identifier, dataType);
+          }
+      }
   }
 
   @Override
@@ -231,50 +369,242 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
 
   @Override
   public void onHostResume() {
-      api.foregroundEntered();
+      if (api != null) {
+          api.foregroundEntered();
+      }
+      // On the conversion thread so no batch is converted while the held ones go out.
+      conversionScheduler.scheduler().scheduleDirect(bridgeSink::resume);
   }
 
+  /** Stops sending to the throttled JS thread, see {@link BackgroundBuffer}. */
   @Override
   public void onHostPause() {
+      bridgeSink.pause();
   }
 
+  /** The activity is gone but the module may live on for the next one, so only streaming stops. */
   @Override
   public void onHostDestroy() {
-      api.shutDown();
+      streams.disposeAll();
+      dispose(searchDisposable);
+      dispose(streamStatsDisposable);
+  }
+
+  /** The React instance is torn down, releases everything including the SDK. */
+  @Override
+  public void invalidate() {
+      reactContext.removeLifecycleEventListener(this);
+      stopSimulation();
+      streams.disposeAll();
+      reconnects.shutdown();
+      dispose(searchDisposable);
+      dispose(autoConnectDisposable);
+      dispose(streamStatsDisposable);
+      dispose(triggerTickDisposable);
+      requestDisposables.clear();
+      for (String id : recorders.keySet()) {
+          closeRecorder(id);
+      }
+      synchronized (this) {
+          if (api != null) {
+              api.shutDown();
+              api = null;
+          }
+      }
+      conversionScheduler.shutdown();
+      eventSinks.clear();
+      events.closeAll();
+      super.invalidate();
+  }
+
+  private static void dispose(@Nullable Disposable disposable) {
+      if (disposable != null) {
+          disposable.dispose();
+      }
   }
 
   private WritableMap toJsDictionary(PolarDeviceInfo polarDeviceInfo) {
-      WritableMap rawMap = new WritableNativeMap();
-      rawMap.putString("deviceId", polarDeviceInfo.getDeviceId());
-      rawMap.putString("address", polarDeviceInfo.getAddress());
-      rawMap.putInt("rssi", polarDeviceInfo.getRssi());
-      rawMap.putString("name", polarDeviceInfo.getName());
-      rawMap.putBoolean("isConnectable", polarDeviceInfo.isConnectable());
-      return rawMap;
+      return payloads.deviceInfo(polarDeviceInfo);
+  }
+
+  private void sendEvent(String eventName, @Nullable WritableMap params) {
+      events.dispatch(eventName, params);
+  }
+
+  private void sendEvent(String eventName, String params) {
+      events.dispatch(eventName, params);
+  }
+
+  private void sendEvent(String eventName) {
+      events.dispatch(eventName, null);
+  }
+
+  private StreamOptions getStreamOptions(PolarBleApi.PolarDeviceDataType dataType) {
+      StreamOptions options = streamOptions.get(dataType);
+      return options != null ? options : StreamOptions.DEFAULT;
+  }
+
+  private boolean isSimulated(String id) {
+      SimulatedDevices simulation = simulator;
+      return simulation != null && simulation.contains(id);
+  }
+
+  /** Where the streams of a device come from, the SDK or the running simulation. */
+  private StreamSource source(String id) {
+      SimulatedDevices simulation = simulator;
+      return simulation != null && simulation.contains(id) ? simulation : polarSource;
   }
 
-  private void sendEvent(ReactContext reactContext, String eventName, @Nullable WritableMap params) {
-        if(!reactContext.hasActiveReactInstance()) {
-            return;
-        }
-        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
-    }
+  /**
+   * The settings to start a stream with, taken from the cache when the device was seen before
+   * so streaming does not wait for a settings round trip.
+   */
+  private Single<PolarSensorSetting> requestStreamSettings(String id, PolarBleApi.PolarDeviceDataType dataType) {
+      if (isSimulated(id)) {
+          return source(id).requestStreamSettings(id, dataType);
+      }
+      PolarSensorSetting cached = deviceSettings.getSensorSetting(id, dataType);
+      if (cached != null) {
+          return Single.just(cached);
+      }
+      return api().requestStreamSettings(id, dataType)
+              .doOnSuccess(setting -> deviceSettings.putSensorSetting(id, dataType, setting));
+  }
 
-    private void sendEvent(ReactContext reactContext, String eventName, String params) {
-        if(!reactContext.hasActiveReactInstance()) {
-            return;
-        }
-        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
-    }
+  /**
+   * Checks cached settings against the device while the stream runs, and restarts the stream
+   * when the device reports different settings.
+   */
+  private Disposable validateStreamSettings(String id, PolarBleApi.PolarDeviceDataType dataType, Runnable restart) {
+      if (isSimulated(id) || deviceSettings.getSensorSetting(id, dataType) == null) {
+          return Disposable.empty();
+      }
+      return api().requestStreamSettings(id, dataType)
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(setting -> {
+                  if (deviceSettings.putSensorSetting(id, dataType, setting)) {
+                      Log.w(TAG, "Cached " + dataType + " settings of " + id + " were stale, restarting stream");
+                      streams.stop(id, dataType);
+                      restart.run();
+                  }
+              }, throwable -> {
+                  Log.e(TAG, dataType + " settings validation failed: " + throwable.getLocalizedMessage());
+              });
+  }
 
-    private void sendEvent(ReactContext reactContext, String eventName) {
-        if(!reactContext.hasActiveReactInstance()) {
-            return;
-        }
-        reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, null);
-    }
+  private <T> void subscribeBatched(String id, PolarBleApi.PolarDeviceDataType dataType, PolarEvent event,
+                                    Flowable<T> packets, String[] channelNames, StreamOptions options,
+                                    Decimator decimator, CompletableSubject flowing, CompositeDisposable disposables,
+                                    ToIntFunction<T> sampleCount, BiConsumer<T, SampleWriter> unpack) {
+      StreamStats stats = streams.stats(id, dataType);
+      Aggregations.Tap aggregationTap = aggregations.tap(id, dataType, channelNames.length);
+      SampleBatcher batcher = new SampleBatcher(channelNames.length, options.batchMaxSamples);
+      decimator.setOutput(batcher);
+      long[] pendingSinceNanos = {0};
+      // A drained queue goes back to the delivering thread, so steady streaming reuses one.
+      AtomicReference<PacketQueue<T>> spareQueue = new AtomicReference<>();
+      disposables.add(packets
+              .doOnNext(packet -> {
+                  stats.received(sampleCount.applyAsInt(packet));
+                  if (!flowing.hasComplete()) {
+                      flowing.onComplete();
+                  }
+              })
+              .onBackpressureReduce(
+                      () -> {
+                          PacketQueue<T> spare = spareQueue.getAndSet(null);
+                          return spare != null
+                                  ? spare
+                                  : new PacketQueue<>(options.backpressure, options.bufferCapacity, sampleCount, stats);
+                      },
+                      (queue, packet) -> queue.offer(packet, System.nanoTime()))
+              .observeOn(conversionScheduler.scheduler(), false, conversionPrefetch(options))
+              .subscribe(queue -> {
+                  for (int i = 0, queued = queue.size(); i < queued; i++) {
+                      T packet = queue.packet(i);
+                      long receivedNanos = queue.receivedNanos(i);
+                      SessionRecorder recorder = recorders.get(id);
+                      if (recorder != null) {
+                          unpack.accept(packet, recorder.samples(dataType, channelNames.length));
+                      }
+                      if (!aggregationTap.isEmpty()) {
+                          aggregationTap.setPacketTime(receivedNanos);
+                          unpack.accept(packet, aggregationTap);
+                      }
+                      if (aggregationTap.samplesSuppressed) {
+                          stats.converted(sampleCount.applyAsInt(packet), receivedNanos, 0);
+                          continue;
+                      }
+                      if (batcher.isEmpty()) {
+                          pendingSinceNanos[0] = receivedNanos;
+                      }
+                      unpack.accept(packet, decimator);
+                      stats.converted(sampleCount.applyAsInt(packet), receivedNanos, decimator.lastInputTimeStamp());
+                      if (!options.isBatched()
+                              || (options.batchMaxSamples > 0 && batcher.size() >= options.batchMaxSamples)) {
+                          flushBatch(id, event, channelNames, options.payloadFormat, batcher, stats, pendingSinceNanos[0]);
+                      }
+                  }
+                  queue.clear();
+                  spareQueue.set(queue);
+              }, throwable -> {
+                  Log.e(TAG, event.name() + " stream failed: " + throwable.getLocalizedMessage());
+                  streams.ended(id, dataType, disposables);
+                  if (!flowing.hasComplete()) {
+                      flowing.onError(throwable);
+                  }
+              }, () -> streams.ended(id, dataType, disposables)));
+      if (options.batchWindowMs > 0) {
+          disposables.add(Flowable.interval(options.batchWindowMs, options.batchWindowMs, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+                  .subscribe(tick -> flushBatch(id, event, channelNames, options.payloadFormat, batcher, stats, pendingSinceNanos[0])));
+      }
+  }
 
+  /**
+   * Queues taken ahead by the conversion thread are out of reach of the backpressure policy, so
+   * a bounded or dropping stream takes one at a time and its capacity holds end to end.
+   */
+  private static int conversionPrefetch(StreamOptions options) {
+      return options.backpressure == StreamOptions.BackpressurePolicy.BUFFER && options.bufferCapacity <= 0
+              ? CONVERSION_PREFETCH
+              : 1;
+  }
 
+  private static int sampleRate(PolarSensorSetting setting) {
+      Set<Integer> rates = setting.getSettings().get(PolarSensorSetting.SettingType.SAMPLE_RATE);
+      int rate = 0;
+      if (rates != null) {
+          for (Integer r : rates) {
+              rate = Math.max(rate, r);
+          }
+      }
+      return rate;
+  }
+
+  private void flushBatch(String id, PolarEvent event, String[] channelNames, StreamOptions.PayloadFormat format,
+                          SampleBatcher batcher, StreamStats stats, long pendingSinceNanos) {
+      if (batcher.isEmpty()) {
+          return;
+      }
+      // Payloads are built before the batcher is cleared, so the batch does not need a copy.
+      SampleBatch batch = batcher.view();
+      if (bridgeSink.holdSamples(id, event, channelNames, format, batch) && eventSinks.isEmpty()) {
+          batcher.clear();
+          return;
+      }
+      WritableMap params = payloads.toPayload(id, channelNames, batch, format);
+      sendEvent(event.name(), params);
+      stats.emitted(SamplePayloads.estimateBytes(channelNames, batch, format), pendingSinceNanos);
+      batcher.clear();
+  }
+
+  @ReactMethod
+  public void setDiscoveryOptions(@Nullable ReadableMap options) {
+      discoveryIntervalMs = Math.max(0, ReadableMaps.getInt(options, "intervalMs", discoveryIntervalMs));
+      discoveryExpireMs = Math.max(0, ReadableMaps.getInt(options, "expireMs", discoveryExpireMs));
+      discoveryRssiSmoothing = ReadableMaps.getDouble(options, "rssiSmoothing", discoveryRssiSmoothing);
+      discoveryDelta = ReadableMaps.getBoolean(options, "delta", discoveryDelta);
+  }
 
   @ReactMethod
   public void searchForDevice() {
@@ -282,18 +612,42 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
       if (searchDisposable != null) {
           searchDisposable.dispose();
       }
-      searchDisposable = api.searchForDevice().subscribe( data -> {
-          Log.e(TAG, "found result" + data.toString());
-          sendEvent(ctx, PolarEvent.DEVICE_FOUND.name(), toJsDictionary(data));},
-          throwable -> {
-              Log.e(TAG,"" + throwable.getLocalizedMessage());
-          });
+      if (discoveryIntervalMs <= 0) {
+          searchDisposable = api().searchForDevice().subscribe( data -> {
+              Log.e(TAG, "found result" + data.toString());
+              sendEvent(PolarEvent.DEVICE_FOUND.name(), toJsDictionary(data));},
+              throwable -> {
+                  Log.e(TAG,"" + throwable.getLocalizedMessage());
+              });
+          return;
+      }
+      DeviceDiscovery discovery = new DeviceDiscovery(discoveryExpireMs, discoveryRssiSmoothing);
+      boolean delta = discoveryDelta;
+      CompositeDisposable disposables = new CompositeDisposable();
+      disposables.add(api().searchForDevice()
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(data -> {
+                  if (discovery.update(data, SystemClock.elapsedRealtime())) {
+                      sendEvent(PolarEvent.DEVICE_FOUND.name(), toJsDictionary(data));
+                  }
+              }, throwable -> {
+                  Log.e(TAG,"" + throwable.getLocalizedMessage());
+              }));
+      disposables.add(Flowable.interval(discoveryIntervalMs, discoveryIntervalMs, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+              .subscribe(tick -> {
+                  discovery.expire(SystemClock.elapsedRealtime());
+                  if (discovery.hasChanges()) {
+                      sendEvent(PolarEvent.DEVICE_LIST.name(), discovery.drain(payloads, delta));
+                  }
+              }));
+      searchDisposable = disposables;
   }
 
   @ReactMethod
   public void connectToDevice(String id) {
+      reconnects.watch(id);
       try {
-          api.connectToDevice(id);
+          api().connectToDevice(id);
       } catch (Exception e) {
           Log.e(TAG,"" + e.getLocalizedMessage());
       }
@@ -301,250 +655,1046 @@ public class RnPolarBleModule extends ReactContextBaseJavaModule implements Life
 
   @ReactMethod
   public void disconnectFromDevice(String id) {
+      reconnects.unwatch(id);
       try {
-          api.disconnectFromDevice(id);
+          api().disconnectFromDevice(id);
       } catch (Exception e) {
           Log.e(TAG,"" + e.getLocalizedMessage());
       }
   }
 
   @ReactMethod
-  public void startAutoConnectToDevice(Integer rrsi) {
+  public void startAutoConnectToDevice(@Nullable Integer rrsi) {
+      if (autoConnectDisposable != null) {
+          autoConnectDisposable.dispose();
+      }
+      int rssiLimit = rrsi != null ? rrsi : DEFAULT_AUTO_CONNECT_RSSI;
+      // Connects to the strongest device advertising the heart rate service above the RSSI limit,
+      // deviceConnected then hands it to the reconnect scheduler.
+      autoConnectDisposable = api().autoConnectToDevice(rssiLimit, HEART_RATE_SERVICE, null)
+              .subscribe(() -> {
+                  Log.d(TAG, "auto connect started");
+              }, throwable -> {
+                  Log.e(TAG, "auto connect failed: " + throwable.getLocalizedMessage());
+              });
+  }
 
+  @ReactMethod
+  public void setReconnectOptions(@Nullable ReadableMap options) {
+      reconnects.configure(
+              ReadableMaps.getBoolean(options, "enabled", true),
+              ReadableMaps.getInt(options, "baseDelayMs", 500),
+              ReadableMaps.getInt(options, "maxDelayMs", 30000));
   }
 
   @ReactMethod
-  public void startHrStreaming(String id) {
-      if (hrReady && hrDisposable == null) {
-          hrDisposable = api.startHrStreaming(id)
-                  .observeOn(AndroidSchedulers.mainThread())
-                  .subscribe(new Consumer<PolarHrData>() {
-                      @Override
-                      public void accept(PolarHrData polarHrData) throws Throwable {
-                          WritableMap params = Arguments.createMap();
-                          params.putString("id", id);
-                          params.putInt("hr", polarHrData.getSamples().get(0).getHr());
-                          WritableArray rrsMSList = Arguments.createArray();
-                          for (Integer s : polarHrData.getSamples().get(0).getRrsMs()) {
-                              rrsMSList.pushInt(s);
+  public void getReconnectStats(Promise promise) {
+      promise.resolve(reconnects.toJsDictionary());
+  }
+
+  @ReactMethod
+  public void setStreamOptions(String dataType, @Nullable ReadableMap options) {
+      PolarBleApi.PolarDeviceDataType type;
+      try {
+          type = PolarBleApi.PolarDeviceDataType.valueOf(dataType.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+          Log.e(TAG, "setStreamOptions unknown data type " + dataType);
+          return;
+      }
+      streamOptions.put(type, StreamOptions.fromReadableMap(options, getStreamOptions(type)));
+  }
+
+  /**
+   * Creates the SDK api with only the given features, e.g. ["hr", "onlineStreaming"].
+   * Without a call to initialize the api is created with all features on the first BLE call.
+   */
+  @ReactMethod
+  public void initialize(@Nullable ReadableArray featureNames, Promise promise) {
+      Set<PolarBleApi.PolarBleSdkFeature> selected = DEFAULT_FEATURES;
+      if (featureNames != null && featureNames.size() > 0) {
+          selected = EnumSet.noneOf(PolarBleApi.PolarBleSdkFeature.class);
+          for (int i = 0; i < featureNames.size(); i++) {
+              String name = featureNames.getString(i).replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+              PolarBleApi.PolarBleSdkFeature feature = parseFeature(name);
+              if (feature == null) {
+                  promise.reject("INVALID_FEATURE", "Unknown feature " + featureNames.getString(i));
+                  return;
+              }
+              selected.add(feature);
+          }
+      }
+      synchronized (this) {
+          if (api != null) {
+              if (!features.equals(selected)) {
+                  promise.reject("ALREADY_INITIALIZED", "Api is already created with features " + features);
+                  return;
+              }
+          } else {
+              features = selected;
+          }
+      }
+      api();
+      promise.resolve(initStatsToJsDictionary());
+  }
+
+  @ReactMethod
+  public void getInitStats(Promise promise) {
+      promise.resolve(initStatsToJsDictionary());
+  }
+
+  @Nullable
+  private static PolarBleApi.PolarBleSdkFeature parseFeature(String name) {
+      for (String candidate : new String[]{name, "FEATURE_" + name, "FEATURE_POLAR_" + name}) {
+          try {
+              return PolarBleApi.PolarBleSdkFeature.valueOf(candidate);
+          } catch (IllegalArgumentException e) {
+              // try the next spelling
+          }
+      }
+      return null;
+  }
+
+  private WritableMap initStatsToJsDictionary() {
+      WritableMap params = Arguments.createMap();
+      params.putBoolean("initialized", api != null);
+      params.putDouble("moduleInitMs", moduleInitNanos / 1e6);
+      params.putDouble("apiInitMs", apiInitNanos / 1e6);
+      WritableArray featureNames = Arguments.createArray();
+      for (PolarBleApi.PolarBleSdkFeature feature : features) {
+          featureNames.pushString(feature.name());
+      }
+      params.putArray("features", featureNames);
+      return params;
+  }
+
+  /**
+   * Also sends every event to a JSON lines file ("file", options { path }) or a local socket
+   * ("socket", options { name }). Resolves { id, type, path } or { id, type, name }.
+   */
+  @ReactMethod
+  public void addEventSink(String type, @Nullable ReadableMap options, Promise promise) {
+      int capacity = Math.max(1, ReadableMaps.getInt(options, "capacity", EVENT_SINK_CAPACITY));
+      WritableMap params = Arguments.createMap();
+      QueuedEventSink sink;
+      try {
+          if ("file".equals(type)) {
+              File file = ReadableMaps.has(options, "path")
+                      ? new File(options.getString("path"))
+                      : new File(new File(reactContext.getFilesDir(), EVENT_SINK_DIRECTORY),
+                              "events-" + System.currentTimeMillis() + ".jsonl");
+              FileEventSink fileSink = new FileEventSink(file, capacity);
+              params.putString("path", fileSink.getFile().getAbsolutePath());
+              sink = fileSink;
+          } else if ("socket".equals(type)) {
+              String name = ReadableMaps.has(options, "name") ? options.getString("name") : EVENT_SOCKET_NAME;
+              SocketEventSink socketSink = new SocketEventSink(name, capacity);
+              params.putString("name", socketSink.getName());
+              sink = socketSink;
+          } else {
+              promise.reject("INVALID_SINK", "Unknown event sink type " + type);
+              return;
+          }
+      } catch (IOException e) {
+          promise.reject("SINK_FAILED", e.getLocalizedMessage(), e);
+          return;
+      }
+      String id;
+      synchronized (eventSinks) {
+          id = type + "-" + nextEventSinkId++;
+      }
+      eventSinks.put(id, sink);
+      events.add(sink);
+      params.putString("id", id);
+      params.putString("type", type);
+      promise.resolve(params);
+  }
+
+  @ReactMethod
+  public void removeEventSink(String id) {
+      QueuedEventSink sink = eventSinks.remove(id);
+      if (sink != null) {
+          events.remove(sink);
+      }
+  }
+
+  /** Stops or resumes sending events to JS, for sessions that only feed other sinks. */
+  @ReactMethod
+  public void setJsEventsEnabled(boolean enabled) {
+      if (enabled) {
+          events.remove(bridgeSink);
+          events.add(bridgeSink);
+      } else {
+          events.remove(bridgeSink);
+      }
+  }
+
+  /**
+   * Background buffering while the app is paused: enabled (default true), maxBytes of
+   * compressed samples (4 MB) and maxEvents other events (1000) held until resume.
+   */
+  @ReactMethod
+  public void setBackgroundOptions(@Nullable ReadableMap options) {
+      bridgeSink.configure(ReadableMaps.getBoolean(options, "enabled", true),
+              Math.max(0, ReadableMaps.getInt(options, "maxBytes", (int) BACKGROUND_MAX_BYTES)),
+              Math.max(0, ReadableMaps.getInt(options, "maxEvents", BACKGROUND_MAX_EVENTS)));
+  }
+
+  @ReactMethod
+  public void getEventSinkStats(Promise promise) {
+      WritableArray stats = Arguments.createArray();
+      for (Map.Entry<String, QueuedEventSink> entry : eventSinks.entrySet()) {
+          WritableMap params = entry.getValue().toJsDictionary();
+          params.putString("id", entry.getKey());
+          stats.pushMap(params);
+      }
+      promise.resolve(stats);
+  }
+
+  /**
+   * Connects virtual devices that stream synthetic or replayed data through the module, see
+   * {@link SimulationOptions} for the spec. Resolves the ids of the devices.
+   */
+  @ReactMethod
+  public void startSimulation(@Nullable ReadableMap spec, Promise promise) {
+      stopSimulation();
+      SimulationOptions options;
+      try {
+          options = SimulationOptions.fromReadableMap(spec);
+      } catch (IllegalArgumentException e) {
+          promise.reject("INVALID_SPEC", e.getLocalizedMessage(), e);
+          return;
+      }
+      SimulatedDevices simulation;
+      try {
+          simulation = new SimulatedDevices(options, new SimulatedDevices.Listener() {
+              @Override
+              public void onConnected(String deviceId, Set<PolarBleApi.PolarDeviceDataType> dataTypes) {
+                  conversionScheduler.scheduler().scheduleDirect(() -> {
+                      sendEvent(PolarEvent.DEVICE_CONNECTED.name(),
+                              payloads.deviceInfo(new PolarDeviceInfo(deviceId, deviceId, 0, "Simulated " + deviceId, true)));
+                      onlineStreamsAvailable(deviceId, dataTypes);
+                      if (options.autoStart) {
+                          for (PolarBleApi.PolarDeviceDataType dataType : dataTypes) {
+                              startStream(deviceId, dataType);
                           }
-                          params.putArray("rrsMs", rrsMSList);
-                          params.putBoolean("rrAvailable", polarHrData.getSamples().get(0).getRrAvailable());
-                          params.putBoolean("contactStatus", polarHrData.getSamples().get(0).getContactStatus());
-                          params.putBoolean("contactStatusSupported", polarHrData.getSamples().get(0).getContactStatusSupported());
-                          sendEvent(ctx, PolarEvent.HR_DATA.name(), params);
                       }
                   });
+              }
+
+              @Override
+              public void onDisconnected(String deviceId) {
+                  streams.removeDevice(deviceId);
+                  conversionScheduler.scheduler().scheduleDirect(() -> sendEvent(PolarEvent.DEVICE_DISCONNECTED.name(),
+                          payloads.deviceInfo(new PolarDeviceInfo(deviceId, deviceId, 0, "Simulated " + deviceId, true))));
+              }
+          });
+      } catch (IOException e) {
+          promise.reject("REPLAY_FAILED", e.getLocalizedMessage(), e);
+          return;
+      }
+      simulator = simulation;
+      simulation.start();
+      WritableArray ids = Arguments.createArray();
+      for (String deviceId : simulation.deviceIds()) {
+          ids.pushString(deviceId);
       }
+      promise.resolve(ids);
   }
 
   @ReactMethod
-  public void stopHrStreaming(String id) {
-      if (hrDisposable != null) {
-          hrDisposable.dispose();
-          hrDisposable = null;
+  public void stopSimulation() {
+      SimulatedDevices simulation = simulator;
+      if (simulation != null) {
+          simulation.stop();
+          simulator = null;
       }
   }
 
   @ReactMethod
-  public void startEcgStreaming(String id) {
-      if (ecgReady && ecgDisposable == null) {
-          ecgDisposable = api.requestStreamSettings(id, PolarBleApi.PolarDeviceDataType.ECG).toFlowable().flatMap(
-                  new Function<PolarSensorSetting, Publisher<PolarEcgData>>() {
-                      @Override
-                      public Publisher<PolarEcgData> apply(PolarSensorSetting polarSensorSetting) throws Throwable {
-                          return api.startEcgStreaming(id, polarSensorSetting.maxSettings());
-                      }
+  public void getSimulationStats(Promise promise) {
+      SimulatedDevices simulation = simulator;
+      promise.resolve(simulation != null ? simulation.toJsDictionary() : null);
+  }
+
+  @ReactMethod
+  public void getConversionStats(Promise promise) {
+      promise.resolve(conversionScheduler.toJsDictionary());
+  }
+
+  @ReactMethod
+  public void getStreamStats(Promise promise) {
+      promise.resolve(streams.statsToJsArray());
+  }
+
+  @ReactMethod
+  public void setStreamStatsInterval(int intervalMs) {
+      if (streamStatsDisposable != null) {
+          streamStatsDisposable.dispose();
+          streamStatsDisposable = null;
+      }
+      if (intervalMs > 0) {
+          streamStatsDisposable = Flowable.interval(intervalMs, intervalMs, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+                  .subscribe(tick -> {
+                      WritableMap params = Arguments.createMap();
+                      params.putArray("streams", streams.statsToJsArray());
+                      params.putMap("conversion", conversionScheduler.toJsDictionary());
+                      sendEvent(PolarEvent.STREAM_STATS.name(), params);
+                  });
+      }
+  }
+
+  /**
+   * Registers a windowed aggregation over a stream, started if needed, resolving with the query
+   * id. query is { dataType: "acc", channel: "magnitude", windowMs: 1000,
+   * operators: ["rms", "max"], threshold }. Results arrive as AGGREGATE_DATA events; a stream
+   * started only for aggregations sends no sample events.
+   */
+  @ReactMethod
+  public void addAggregation(String id, ReadableMap query, Promise promise) {
+      String dataType = ReadableMaps.has(query, "dataType") ? query.getString("dataType") : "";
+      PolarBleApi.PolarDeviceDataType type;
+      try {
+          type = PolarBleApi.PolarDeviceDataType.valueOf(dataType.toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+          promise.reject("INVALID_QUERY", "Unknown data type " + dataType);
+          return;
+      }
+      String[] channelNames = aggregationChannels(type);
+      if (channelNames == null) {
+          promise.reject("INVALID_QUERY", type + " can not be aggregated");
+          return;
+      }
+      String channelName = ReadableMaps.has(query, "channel") ? query.getString("channel") : channelNames[0];
+      int channel = Arrays.asList(channelNames).indexOf(channelName);
+      if ("magnitude".equals(channelName) && channelNames.length == 3) {
+          channel = WindowAggregator.MAGNITUDE;
+      } else if (channel < 0) {
+          promise.reject("INVALID_QUERY", "Unknown " + type + " channel " + channelName);
+          return;
+      }
+      int windowMs = ReadableMaps.getInt(query, "windowMs", 1000);
+      if (windowMs < MIN_AGGREGATION_WINDOW_MS) {
+          promise.reject("INVALID_QUERY", "windowMs must be at least " + MIN_AGGREGATION_WINDOW_MS);
+          return;
+      }
+      Set<WindowAggregator.Operator> operators = EnumSet.noneOf(WindowAggregator.Operator.class);
+      if (ReadableMaps.has(query, "operators")) {
+          ReadableArray names = query.getArray("operators");
+          for (int i = 0; i < names.size(); i++) {
+              WindowAggregator.Operator operator = WindowAggregator.Operator.fromKey(names.getString(i));
+              if (operator == null) {
+                  promise.reject("INVALID_QUERY", "Unknown operator " + names.getString(i));
+                  return;
+              }
+              operators.add(operator);
+          }
+      }
+      if (operators.isEmpty()) {
+          promise.reject("INVALID_QUERY", "addAggregation needs operators");
+          return;
+      }
+      if (operators.contains(WindowAggregator.Operator.COUNT_ABOVE) && !ReadableMaps.has(query, "threshold")) {
+          promise.reject("INVALID_QUERY", "countAbove needs a threshold");
+          return;
+      }
+      WindowAggregator aggregator = new WindowAggregator(aggregations.nextQueryId(), id,
+              type.name().toLowerCase(Locale.ROOT), channelName, channel, windowMs, operators,
+              ReadableMaps.getDouble(query, "threshold", 0));
+      if (!streams.isActive(id, type)) {
+          aggregations.tap(id, type, channelNames.length).samplesSuppressed = true;
+      }
+      aggregations.add(type, channelNames.length, aggregator);
+      startStream(id, type)
+              .timeout(START_STREAMS_TIMEOUT_MS, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+              .subscribe(() -> promise.resolve(aggregator.queryId), throwable -> {
+                  removeAggregation(aggregator.queryId);
+                  promise.reject(throwable);
+              });
+  }
+
+  /** Removes an aggregation, stopping its stream when it only ran for aggregations. */
+  @ReactMethod
+  public void removeAggregation(String queryId) {
+      Aggregations.Tap tap = aggregations.remove(queryId);
+      if (tap != null && tap.samplesSuppressed) {
+          tap.samplesSuppressed = false;
+          streams.stop(tap.deviceId, tap.dataType);
+      }
+  }
+
+  /**
+   * Registers a rule evaluated natively on the HR stream of a device, started if needed,
+   * resolving with the rule id. rule is { type: "threshold", metric: "hr", above: 180,
+   * hysteresis: 5, durationMs: 10000 } (or below instead of above), { type: "contactLost",
+   * durationMs }, { type: "rrGap", durationMs } or { type: "signalLost", durationMs }.
+   * RULE_TRIGGER events are sent when a rule fires and when it clears.
+   */
+  @ReactMethod
+  public void addTriggerRule(String id, ReadableMap rule, Promise promise) {
+      String typeName = ReadableMaps.has(rule, "type") ? rule.getString("type") : "";
+      TriggerRule.Type type = TriggerRule.Type.fromKey(typeName);
+      if (type == null) {
+          promise.reject("INVALID_RULE", "Unknown rule type " + typeName);
+          return;
+      }
+      String metric = ReadableMaps.has(rule, "metric") ? rule.getString("metric") : "hr";
+      boolean below = ReadableMaps.has(rule, "below");
+      if (type == TriggerRule.Type.THRESHOLD) {
+          if (!"hr".equals(metric) && !"rr".equals(metric)) {
+              promise.reject("INVALID_RULE", "Unknown metric " + metric);
+              return;
+          }
+          if (below == ReadableMaps.has(rule, "above")) {
+              promise.reject("INVALID_RULE", "threshold needs either above or below");
+              return;
+          }
+      }
+      int durationMs = ReadableMaps.getInt(rule, "durationMs", 0);
+      if (durationMs < 0 || (durationMs == 0 && type != TriggerRule.Type.THRESHOLD
+              && type != TriggerRule.Type.CONTACT_LOST)) {
+          promise.reject("INVALID_RULE", type.key + " needs a positive durationMs");
+          return;
+      }
+      TriggerRule triggerRule = new TriggerRule(triggerRules.nextRuleId(), id, type, metric, below,
+              ReadableMaps.getDouble(rule, below ? "below" : "above", 0),
+              ReadableMaps.getDouble(rule, "hysteresis", 0), durationMs, System.nanoTime() / 1000000);
+      if (!streams.isActive(id, PolarBleApi.PolarDeviceDataType.HR)) {
+          triggerRules.device(id).samplesSuppressed = true;
+      }
+      triggerRules.add(triggerRule);
+      updateTriggerTick();
+      startStream(id, PolarBleApi.PolarDeviceDataType.HR)
+              .timeout(START_STREAMS_TIMEOUT_MS, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+              .subscribe(() -> promise.resolve(triggerRule.ruleId), throwable -> {
+                  removeTriggerRule(triggerRule.ruleId);
+                  promise.reject(throwable);
+              });
+  }
+
+  /** Removes a rule, stopping the HR stream when it only ran for rules. */
+  @ReactMethod
+  public void removeTriggerRule(String ruleId) {
+      TriggerRules.Device device = triggerRules.remove(ruleId);
+      if (device != null && device.samplesSuppressed) {
+          device.samplesSuppressed = false;
+          streams.stop(device.id, PolarBleApi.PolarDeviceDataType.HR);
+      }
+      updateTriggerTick();
+  }
+
+  /** Runs the check for rules on missing data only while there are rules. */
+  private synchronized void updateTriggerTick() {
+      if (triggerRules.isEmpty()) {
+          dispose(triggerTickDisposable);
+          triggerTickDisposable = null;
+      } else if (triggerTickDisposable == null) {
+          triggerTickDisposable = Flowable.interval(TRIGGER_TICK_MS, TRIGGER_TICK_MS, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+                  .subscribe(tick -> triggerRules.tick(System.nanoTime()));
+      }
+  }
+
+  @Nullable
+  private static String[] aggregationChannels(PolarBleApi.PolarDeviceDataType dataType) {
+      switch (dataType) {
+          case ECG:
+              return ECG_CHANNELS;
+          case ACC:
+              return ACC_CHANNELS;
+          case PPG:
+              return PPG_CHANNELS;
+          case PPI:
+              return PPI_CHANNELS;
+          default:
+              return null;
+      }
+  }
+
+  /**
+   * Starts the given data types at once, settings for each being requested in parallel.
+   * spec is { dataTypes: ["hr", "ecg", "acc"], timeoutMs }. Resolves once every stream has
+   * delivered data, failed or timed out with { id, started, pending, failed, elapsedMs }.
+   */
+  @ReactMethod
+  public void startStreams(String id, ReadableMap spec, Promise promise) {
+      if (!ReadableMaps.has(spec, "dataTypes")) {
+          promise.reject("INVALID_SPEC", "startStreams needs dataTypes");
+          return;
+      }
+      ReadableArray dataTypes = spec.getArray("dataTypes");
+      int timeoutMs = ReadableMaps.getInt(spec, "timeoutMs", START_STREAMS_TIMEOUT_MS);
+      long startNanos = System.nanoTime();
+      List<Single<String[]>> results = new ArrayList<>();
+      for (int i = 0; i < dataTypes.size(); i++) {
+          String name = dataTypes.getString(i);
+          Completable flowing;
+          try {
+              flowing = startJsStream(id, PolarBleApi.PolarDeviceDataType.valueOf(name.toUpperCase(Locale.ROOT)));
+          } catch (IllegalArgumentException e) {
+              flowing = Completable.error(new IllegalArgumentException("Unknown data type " + name));
+          }
+          results.add(flowing
+                  .timeout(timeoutMs, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+                  .toSingleDefault(new String[]{name, "started", null})
+                  .onErrorReturn(throwable -> throwable instanceof TimeoutException
+                          ? new String[]{name, "pending", null}
+                          : new String[]{name, "failed", String.valueOf(throwable.getLocalizedMessage())}));
+      }
+      if (results.isEmpty()) {
+          promise.reject("INVALID_SPEC", "startStreams needs dataTypes");
+          return;
+      }
+      Single.zip(results, outcomes -> {
+          WritableArray started = Arguments.createArray();
+          WritableArray pending = Arguments.createArray();
+          WritableArray failed = Arguments.createArray();
+          for (Object outcome : outcomes) {
+              String[] result = (String[]) outcome;
+              if ("started".equals(result[1])) {
+                  started.pushString(result[0]);
+              } else if ("pending".equals(result[1])) {
+                  pending.pushString(result[0]);
+              } else {
+                  WritableMap failure = Arguments.createMap();
+                  failure.putString("dataType", result[0]);
+                  failure.putString("error", result[2]);
+                  failed.pushMap(failure);
+              }
+          }
+          WritableMap params = Arguments.createMap();
+          params.putString("id", id);
+          params.putArray("started", started);
+          params.putArray("pending", pending);
+          params.putArray("failed", failed);
+          params.putDouble("elapsedMs", (System.nanoTime() - startNanos) / 1e6);
+          return params;
+      }).subscribe(promise::resolve, throwable -> promise.reject(throwable));
+  }
+
+  /** Starts a stream JS asked for, with sample events even if it was running for aggregations only. */
+  private Completable startJsStream(String id, PolarBleApi.PolarDeviceDataType dataType) {
+      aggregations.releaseSamples(id, dataType);
+      if (dataType == PolarBleApi.PolarDeviceDataType.HR) {
+          triggerRules.releaseSamples(id);
+      }
+      return startStream(id, dataType);
+  }
+
+  /** Stops a stream JS asked for, or only its sample events while aggregations or rules still use it. */
+  private void stopJsStream(String id, PolarBleApi.PolarDeviceDataType dataType) {
+      boolean inUse = dataType == PolarBleApi.PolarDeviceDataType.HR
+              ? triggerRules.suppressSamples(id)
+              : aggregations.suppressSamples(id, dataType);
+      if (!inUse) {
+          streams.stop(id, dataType);
+      }
+  }
+
+  /** Starts a stream unless it already runs, completing once it delivers its first data. */
+  private Completable startStream(String id, PolarBleApi.PolarDeviceDataType dataType) {
+      if (!streams.isReady(id, dataType)) {
+          return Completable.error(new IllegalStateException(dataType + " is not ready on " + id));
+      }
+      if (!STREAMED_TYPES.contains(dataType)) {
+          return Completable.error(new IllegalArgumentException(dataType + " streaming is not supported"));
+      }
+      CompositeDisposable stream = streams.reserve(id, dataType);
+      if (stream == null) {
+          return Completable.complete();
+      }
+      CompletableSubject flowing = CompletableSubject.create();
+      switch (dataType) {
+          case HR:
+              startHr(id, flowing, stream);
+              break;
+          case ECG:
+              startEcg(id, flowing, stream);
+              break;
+          case ACC:
+              startAcc(id, flowing, stream);
+              break;
+          case PPG:
+              startPpg(id, flowing, stream);
+              break;
+          default:
+              startPpi(id, flowing, stream);
+              break;
+      }
+      return flowing;
+  }
+
+  @ReactMethod
+  public void startHrStreaming(String id) {
+      startJsStream(id, PolarBleApi.PolarDeviceDataType.HR);
+  }
+
+  private void startHr(String id, CompletableSubject flowing, CompositeDisposable hrDisposable) {
+      StreamOptions options = getStreamOptions(PolarBleApi.PolarDeviceDataType.HR);
+      HrvCalculator hrv = options.hrvWindowMs > 0 ? new HrvCalculator(options.hrvWindowMs) : null;
+      StreamStats stats = streams.stats(id, PolarBleApi.PolarDeviceDataType.HR);
+      hrDisposable.add(source(id).startHrStreaming(id)
+              .map(polarHrData -> {
+                  stats.received(polarHrData.getSamples().size());
+                  if (!flowing.hasComplete()) {
+                      flowing.onComplete();
                   }
-          )
-          .observeOn(AndroidSchedulers.mainThread()).subscribe(
-                          new Consumer<PolarEcgData>() {
-                              @Override
-                              public void accept(PolarEcgData polarEcgData) throws Throwable {
-                                  WritableMap params = Arguments.createMap();
-                                  WritableArray samples = Arguments.createArray();
-                                  for (PolarEcgData.PolarEcgDataSample s : polarEcgData.getSamples()) {
-                                      WritableMap params1 = Arguments.createMap();
-                                      params1.putDouble("timeStamp", s.getTimeStamp());
-                                      params1.putInt("voltage", s.getVoltage());
-                                      samples.pushMap(params1);
-                                  }
-                                  params.putString("id", id);
-                                  params.putArray("samples", samples);
-                                  sendEvent(ctx, PolarEvent.ECG_DATA.name(), params);
+                  return new Timed<>(polarHrData, System.nanoTime(), TimeUnit.NANOSECONDS);
+              })
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(new Consumer<Timed<PolarHrData>>() {
+                  @Override
+                  public void accept(Timed<PolarHrData> timed) throws Throwable {
+                      PolarHrData polarHrData = timed.value();
+                      List<PolarHrData.PolarHrSample> samples = polarHrData.getSamples();
+                      int sampleCount = samples.size();
+                      long now = System.currentTimeMillis();
+                      stats.converted(sampleCount, timed.time(), 0);
+                      SessionRecorder recorder = recorders.get(id);
+                      if (recorder != null) {
+                          for (int i = 0; i < sampleCount; i++) {
+                              recorder.addHr(now, samples.get(i));
+                          }
+                      }
+                      if (hrv != null) {
+                          for (int i = 0; i < sampleCount; i++) {
+                              List<Integer> rrs = samples.get(i).getRrsMs();
+                              for (int r = 0, rrCount = rrs.size(); r < rrCount; r++) {
+                                  hrv.add(rrs.get(r));
                               }
                           }
-                  );
+                      }
+                      triggerRules.onHr(id, timed.time(), polarHrData);
+                      if (triggerRules.isSuppressed(id)) {
+                          return;
+                      }
+                      if (bridgeSink.holdHr(id, polarHrData, now * 1000000)
+                              && eventSinks.isEmpty()) {
+                          return;
+                      }
+                      WritableMap params = payloads.hr(id, polarHrData);
+                      sendEvent(PolarEvent.HR_DATA.name(), params);
+                      stats.emitted(HR_EVENT_BYTES, timed.time());
+                  }
+              }, throwable -> {
+                  Log.e(TAG, "HR stream failed: " + throwable.getLocalizedMessage());
+                  streams.ended(id, PolarBleApi.PolarDeviceDataType.HR, hrDisposable);
+                  if (!flowing.hasComplete()) {
+                      flowing.onError(throwable);
+                  }
+              }, () -> streams.ended(id, PolarBleApi.PolarDeviceDataType.HR, hrDisposable)));
+      if (hrv != null) {
+          hrDisposable.add(Flowable.interval(options.hrvIntervalMs, options.hrvIntervalMs, TimeUnit.MILLISECONDS, conversionScheduler.scheduler())
+                  .subscribe(tick -> {
+                      if (hrv.size() > 1) {
+                          sendEvent(PolarEvent.HRV_DATA.name(), hrv.toJsDictionary(id));
+                      }
+                  }));
       }
   }
 
+  @ReactMethod
+  public void stopHrStreaming(String id) {
+      stopJsStream(id, PolarBleApi.PolarDeviceDataType.HR);
+  }
+
+  @ReactMethod
+  public void startEcgStreaming(String id) {
+      startJsStream(id, PolarBleApi.PolarDeviceDataType.ECG);
+  }
+
+  private void startEcg(String id, CompletableSubject flowing, CompositeDisposable ecgDisposable) {
+      StreamOptions options = getStreamOptions(PolarBleApi.PolarDeviceDataType.ECG);
+      Decimator decimator = new Decimator(ECG_CHANNELS.length, options.outputRate);
+      Flowable<PolarEcgData> packets = requestStreamSettings(id, PolarBleApi.PolarDeviceDataType.ECG).toFlowable().flatMap(
+              new Function<PolarSensorSetting, Publisher<PolarEcgData>>() {
+                  @Override
+                  public Publisher<PolarEcgData> apply(PolarSensorSetting polarSensorSetting) throws Throwable {
+                      PolarSensorSetting setting = polarSensorSetting.maxSettings();
+                      decimator.setInputRate(sampleRate(setting));
+                      streams.stats(id, PolarBleApi.PolarDeviceDataType.ECG).setSampleRate(decimator.effectiveRate());
+                      return source(id).startEcgStreaming(id, setting);
+                  }
+              }
+      );
+      subscribeBatched(id, PolarBleApi.PolarDeviceDataType.ECG, PolarEvent.ECG_DATA,
+              packets, ECG_CHANNELS, options, decimator, flowing, ecgDisposable,
+              polarEcgData -> polarEcgData.getSamples().size(),
+              PacketUnpackers::ecg);
+      ecgDisposable.add(validateStreamSettings(id, PolarBleApi.PolarDeviceDataType.ECG,
+              () -> startStream(id, PolarBleApi.PolarDeviceDataType.ECG)));
+  }
+
   @ReactMethod
   public void stopEcgStreaming(String id) {
-      if (ecgDisposable != null) {
-          ecgDisposable.dispose();
-          ecgDisposable = null;
-      }
+      stopJsStream(id, PolarBleApi.PolarDeviceDataType.ECG);
   }
 
   @ReactMethod
   public void startAccStreaming(String id) {
-      if (accReady && accDisposable == null) {
-          accDisposable = api.requestStreamSettings(id, PolarBleApi.PolarDeviceDataType.ACC).toFlowable().flatMap(
-                  new Function<PolarSensorSetting, Publisher<PolarAccelerometerData>>() {
-                      @Override
-                      public Publisher<PolarAccelerometerData> apply(PolarSensorSetting polarSensorSetting) throws Throwable {
-                          return api.startAccStreaming(id, polarSensorSetting.maxSettings());
-                      }
+      startJsStream(id, PolarBleApi.PolarDeviceDataType.ACC);
+  }
+
+  private void startAcc(String id, CompletableSubject flowing, CompositeDisposable accDisposable) {
+      StreamOptions options = getStreamOptions(PolarBleApi.PolarDeviceDataType.ACC);
+      Decimator decimator = new Decimator(ACC_CHANNELS.length, options.outputRate);
+      Flowable<PolarAccelerometerData> packets = requestStreamSettings(id, PolarBleApi.PolarDeviceDataType.ACC).toFlowable().flatMap(
+              new Function<PolarSensorSetting, Publisher<PolarAccelerometerData>>() {
+                  @Override
+                  public Publisher<PolarAccelerometerData> apply(PolarSensorSetting polarSensorSetting) throws Throwable {
+                      PolarSensorSetting setting = polarSensorSetting.maxSettings();
+                      decimator.setInputRate(sampleRate(setting));
+                      streams.stats(id, PolarBleApi.PolarDeviceDataType.ACC).setSampleRate(decimator.effectiveRate());
+                      return source(id).startAccStreaming(id, setting);
                   }
-          )
-                  .observeOn(AndroidSchedulers.mainThread())
-                  .subscribe(new Consumer<PolarAccelerometerData>() {
-                      @Override
-                      public void accept(PolarAccelerometerData polarAccelerometerData) throws Throwable {
-                          WritableMap params = Arguments.createMap();
-                          WritableArray samples = Arguments.createArray();
-                          for (PolarAccelerometerData.PolarAccelerometerDataSample s : polarAccelerometerData.getSamples()) {
-                              WritableMap params1 = Arguments.createMap();
-                              params1.putDouble("timeStamp", s.getTimeStamp());
-                              params1.putInt("x", s.getX());
-                              params1.putInt("y", s.getY());
-                              params1.putInt("y", s.getZ());
-                              samples.pushMap(params1);
-                          }
-                          params.putString("id", id);
-                          params.putArray("samples", samples);
-                          sendEvent(ctx, PolarEvent.ACC_DATA.name(), params);
-                      }
-                  });
-      }
+              }
+      );
+      subscribeBatched(id, PolarBleApi.PolarDeviceDataType.ACC, PolarEvent.ACC_DATA,
+              packets, ACC_CHANNELS, options, decimator, flowing, accDisposable,
+              polarAccelerometerData -> polarAccelerometerData.getSamples().size(),
+              PacketUnpackers::acc);
+      accDisposable.add(validateStreamSettings(id, PolarBleApi.PolarDeviceDataType.ACC,
+              () -> startStream(id, PolarBleApi.PolarDeviceDataType.ACC)));
   }
 
   @ReactMethod
   public void stopAccStreaming(String id) {
-      if (accDisposable != null) {
-          accDisposable.dispose();
-          accDisposable = null;
-      }
+      stopJsStream(id, PolarBleApi.PolarDeviceDataType.ACC);
   }
 
   @ReactMethod
   public void startPpgStreaming(String id) {
+      startJsStream(id, PolarBleApi.PolarDeviceDataType.PPG);
+  }
 
+  private void startPpg(String id, CompletableSubject flowing, CompositeDisposable ppgDisposable) {
+      StreamOptions options = getStreamOptions(PolarBleApi.PolarDeviceDataType.PPG);
+      Decimator decimator = new Decimator(PPG_CHANNELS.length, options.outputRate);
+      Flowable<PolarPpgData> packets = requestStreamSettings(id, PolarBleApi.PolarDeviceDataType.PPG).toFlowable().flatMap(
+              new Function<PolarSensorSetting, Publisher<PolarPpgData>>() {
+                  @Override
+                  public Publisher<PolarPpgData> apply(PolarSensorSetting polarSensorSetting) throws Throwable {
+                      PolarSensorSetting setting = polarSensorSetting.maxSettings();
+                      decimator.setInputRate(sampleRate(setting));
+                      streams.stats(id, PolarBleApi.PolarDeviceDataType.PPG).setSampleRate(decimator.effectiveRate());
+                      return source(id).startPpgStreaming(id, setting);
+                  }
+              }
+      );
+      int[] values = new int[PPG_CHANNELS.length];
+      subscribeBatched(id, PolarBleApi.PolarDeviceDataType.PPG, PolarEvent.PPG_DATA,
+              packets, PPG_CHANNELS, options, decimator, flowing, ppgDisposable,
+              polarPpgData -> polarPpgData.getSamples().size(),
+              (polarPpgData, writer) -> PacketUnpackers.ppg(polarPpgData, values, writer));
+      ppgDisposable.add(validateStreamSettings(id, PolarBleApi.PolarDeviceDataType.PPG,
+              () -> startStream(id, PolarBleApi.PolarDeviceDataType.PPG)));
   }
 
   @ReactMethod
   public void stopPpgStreaming(String id) {
-
+      stopJsStream(id, PolarBleApi.PolarDeviceDataType.PPG);
   }
 
   @ReactMethod
   public void startPpiStreaming(String id) {
+      startJsStream(id, PolarBleApi.PolarDeviceDataType.PPI);
+  }
 
+  private void startPpi(String id, CompletableSubject flowing, CompositeDisposable ppiDisposable) {
+      StreamOptions options = getStreamOptions(PolarBleApi.PolarDeviceDataType.PPI);
+      // PPI has no sample rate to decimate from, the decimator only passes samples through.
+      Decimator decimator = new Decimator(PPI_CHANNELS.length, 0);
+      int[] values = new int[PPI_CHANNELS.length];
+      subscribeBatched(id, PolarBleApi.PolarDeviceDataType.PPI, PolarEvent.PPI_DATA,
+              source(id).startPpiStreaming(id), PPI_CHANNELS, options, decimator, flowing, ppiDisposable,
+              polarPpiData -> polarPpiData.getSamples().size(),
+              (polarPpiData, writer) -> PacketUnpackers.ppi(polarPpiData, values, writer));
   }
 
   @ReactMethod
   public void stopPpiStreaming(String id) {
+      stopJsStream(id, PolarBleApi.PolarDeviceDataType.PPI);
+  }
 
+  @ReactMethod
+  public void startSessionRecording(String id, Promise promise) {
+      SessionRecorder recorder = recorders.get(id);
+      if (recorder != null) {
+          promise.resolve(recorder.getFile().getAbsolutePath());
+          return;
+      }
+      File directory = new File(reactContext.getFilesDir(), RECORDING_DIRECTORY);
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+          promise.reject("RECORDING_ERROR", "Could not create " + directory);
+          return;
+      }
+      File file = new File(directory, id + "-" + System.currentTimeMillis() + ".rnpb");
+      try {
+          recorder = new SessionRecorder(file, id, recordingEncoding);
+      } catch (IOException e) {
+          promise.reject("RECORDING_ERROR", e);
+          return;
+      }
+      recorder.start(Schedulers.io(), RECORDING_SYNC_INTERVAL_MS);
+      recorders.put(id, recorder);
+      promise.resolve(file.getAbsolutePath());
   }
 
   @ReactMethod
-  public void getH10RecordingStatus(String id) {
-      recordingStatusReadDisposable = api.requestRecordingStatus(id)
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(new Consumer<Pair<Boolean, String>>() {
-                  @Override
-                  public void accept(Pair<Boolean, String> booleanStringPair) throws Throwable {
-                      WritableMap params = Arguments.createMap();
-                      params.putBoolean("ongoing", booleanStringPair.first);
-                      params.putString("entryId", booleanStringPair.second);
-                      sendEvent(ctx, PolarEvent.RECORD_STATUS.name(), params);
-                  }
-              });
+  public void stopSessionRecording(String id, Promise promise) {
+      SessionRecorder recorder = closeRecorder(id);
+      promise.resolve(recorder != null ? recorder.getFile().getAbsolutePath() : null);
+  }
+
+  @ReactMethod
+  public void getSessionRecordingPath(String id, Promise promise) {
+      SessionRecorder recorder = recorders.get(id);
+      promise.resolve(recorder != null ? recorder.getFile().getAbsolutePath() : null);
+  }
+
+  /**
+   * Options of recordings started afterwards: encoding "delta" (default) stores samples
+   * compressed, "raw" as plain ints and longs.
+   */
+  @ReactMethod
+  public void setRecordingOptions(ReadableMap options) {
+      if (options.hasKey("encoding")) {
+          recordingEncoding = "raw".equals(options.getString("encoding"))
+                  ? SessionRecorder.ENCODING_RAW
+                  : SessionRecorder.ENCODING_DELTA;
+      }
   }
 
+  /** Resolves the frames of a recording up to its last sync, [{ dataType, timeStamp, clock, offset }]. */
   @ReactMethod
-  public void startH10Recording(String id, String exerciseId, String sampleType) {
+  public void getSessionRecordingIndex(String path, Promise promise) {
+      List<SessionReplay.IndexEntry> index;
+      try {
+          index = SessionReplay.readIndex(new File(path));
+      } catch (IOException e) {
+          promise.reject("RECORDING_ERROR", e);
+          return;
+      }
+      WritableArray result = Arguments.createArray();
+      for (SessionReplay.IndexEntry entry : index) {
+          WritableMap map = Arguments.createMap();
+          map.putString("dataType", entry.dataType.name());
+          map.putDouble("timeStamp", entry.timeStamp);
+          map.putString("clock", entry.wallClock ? "wall" : "sensor");
+          map.putDouble("offset", entry.offset);
+          result.pushMap(map);
+      }
+      promise.resolve(result);
+  }
+
+  private SessionRecorder closeRecorder(String id) {
+      SessionRecorder recorder = recorders.remove(id);
+      if (recorder != null) {
+          // Samples are added on the conversion thread, so close there after any pending packet.
+          conversionScheduler.scheduler().scheduleDirect(recorder::close);
+      }
+      return recorder;
+  }
+
+  /**
+   * Resolves { ongoing, entryId }, also sent as RECORD_STATUS. Like the other H10 and exercise
+   * requests, calls for the same device made while one is in flight share its result.
+   */
+  @ReactMethod
+  public void getH10RecordingStatus(String id, Promise promise) {
+      requests.run("recordingStatus/" + id, H10_REQUEST_TIMEOUT_MS, () -> api().requestRecordingStatus(id)
+              .observeOn(conversionScheduler.scheduler())
+              .doOnSuccess(status -> sendEvent(PolarEvent.RECORD_STATUS.name(), recordStatus(status))))
+              .map(this::recordStatus)
+              .subscribe(promise::resolve, promise::reject, requestDisposables);
+  }
+
+  private WritableMap recordStatus(Pair<Boolean, String> status) {
+      WritableMap params = Arguments.createMap();
+      params.putBoolean("ongoing", status.first);
+      params.putString("entryId", status.second);
+      return params;
+  }
+
+  @ReactMethod
+  public void startH10Recording(String id, String exerciseId, String sampleType, Promise promise) {
       PolarH10OfflineExerciseApi.SampleType sample;
       if (sampleType.equals("hr")) {
         sample = PolarH10OfflineExerciseApi.SampleType.HR;
       } else {
         sample = PolarH10OfflineExerciseApi.SampleType.RR;
       }
-      recordingStartStopDisposable = api.startRecording(id, exerciseId, PolarH10OfflineExerciseApi.RecordingInterval.INTERVAL_1S, sample)
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(() -> {}, error -> {
-                  Log.e(TAG, "startH10Recording error");
-              });
+      requests.run("startRecording/" + id + "/" + exerciseId + "/" + sample, H10_REQUEST_TIMEOUT_MS,
+              () -> api().startRecording(id, exerciseId, PolarH10OfflineExerciseApi.RecordingInterval.INTERVAL_1S, sample)
+                      .toSingleDefault(true))
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(done -> promise.resolve(null), error -> {
+                  Log.e(TAG, "startH10Recording error: " + error.getLocalizedMessage());
+                  promise.reject(error);
+              }, requestDisposables);
   }
 
   @ReactMethod
-  public void stopH10Recording(String id) {
-      recordingStartStopDisposable = api.stopRecording(id)
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(() -> {}, error -> {
-                  Log.e(TAG, "stopH10Recording error");
-              });
+  public void stopH10Recording(String id, Promise promise) {
+      requests.run("stopRecording/" + id, H10_REQUEST_TIMEOUT_MS,
+              () -> api().stopRecording(id).toSingleDefault(true))
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(done -> promise.resolve(null), error -> {
+                  Log.e(TAG, "stopH10Recording error: " + error.getLocalizedMessage());
+                  promise.reject(error);
+              }, requestDisposables);
   }
 
+  /** Resolves [{ id, path, date, cached }], each entry is also sent as EXERCISE_ENTRY. */
   @ReactMethod
-  public void listExercises(String id) {
-      exerciseEntries.clear();
-      listExercisesDisposable = api.listExercises(id)
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(
-                      new Consumer<PolarExerciseEntry>() {
-                          @Override
-                          public void accept(PolarExerciseEntry polarExerciseEntry) throws Throwable {
-                              exerciseEntries.add(polarExerciseEntry);
-                              WritableMap params = Arguments.createMap();
-                              params.putString("id", polarExerciseEntry.getIdentifier());
-                              params.putString("path", polarExerciseEntry.getPath());
-                              params.putString("date", polarExerciseEntry.getDate().toString());
-                              sendEvent(ctx, PolarEvent.EXERCISE_ENTRY.name(), params);
-                          }
-                      }
-              );
+  public void listExercises(String id, Promise promise) {
+      requests.run("listExercises/" + id, H10_REQUEST_TIMEOUT_MS, () -> {
+          List<PolarExerciseEntry> entries = Collections.synchronizedList(new ArrayList<>());
+          exerciseEntries.put(id, entries);
+          return api().listExercises(id)
+                  .observeOn(conversionScheduler.scheduler())
+                  .doOnNext(polarExerciseEntry -> {
+                      entries.add(polarExerciseEntry);
+                      sendEvent(PolarEvent.EXERCISE_ENTRY.name(), exerciseEntry(id, polarExerciseEntry));
+                  })
+                  .toList();
+      })
+              .map(entries -> {
+                  WritableArray array = Arguments.createArray();
+                  for (PolarExerciseEntry entry : entries) {
+                      array.pushMap(exerciseEntry(id, entry));
+                  }
+                  return array;
+              })
+              .subscribe(promise::resolve, promise::reject, requestDisposables);
+  }
 
+  private WritableMap exerciseEntry(String id, PolarExerciseEntry polarExerciseEntry) {
+      WritableMap params = Arguments.createMap();
+      params.putString("id", polarExerciseEntry.getIdentifier());
+      params.putString("path", polarExerciseEntry.getPath());
+      params.putString("date", polarExerciseEntry.getDate().toString());
+      params.putBoolean("cached", exerciseCache.contains(id, polarExerciseEntry.getPath()));
+      return params;
   }
 
+  /** Resolves { interval, samples } of the first listed exercise, also sent as READ_EXERCISE. */
   @ReactMethod
-  public void readExercise(String id) {
-      if (!exerciseEntries.isEmpty()) {
-          fetchExerciseDisposable = api.fetchExercise(id, exerciseEntries.get(0))
-                  .observeOn(AndroidSchedulers.mainThread())
-                  .subscribe(new Consumer<PolarExerciseData>() {
-                      @Override
-                      public void accept(PolarExerciseData polarExerciseData) throws Throwable {
-                          WritableMap params = Arguments.createMap();
-                          WritableArray samples = Arguments.createArray();
-                          params.putInt("interval", polarExerciseData.getRecordingInterval());
-                          for (Integer s : polarExerciseData.getHrSamples()) {
-                              samples.pushInt(s);
-                          }
-                          params.putArray("samples", samples);
-                          sendEvent(ctx, PolarEvent.READ_EXERCISE.name(), params);
-                      }
-                  });
+  public void readExercise(String id, Promise promise) {
+      PolarExerciseEntry entry = firstExerciseEntry(id);
+      if (entry == null) {
+          promise.reject("NO_EXERCISE", "No exercise to read, please list the exercises first");
+          return;
       }
+      requests.run("readExercise/" + id + "/" + entry.getPath(), EXERCISE_REQUEST_TIMEOUT_MS, () -> {
+          ExerciseCache.Exercise cached = exerciseCache.get(id, entry.getPath());
+          return (cached != null ? Single.just(cached) : fetchExercise(id, entry))
+                  .observeOn(conversionScheduler.scheduler())
+                  .doOnSuccess(exercise -> sendEvent(PolarEvent.READ_EXERCISE.name(),
+                          payloads.exercise(exercise.interval, exercise.samples)));
+      })
+              .map(exercise -> payloads.exercise(exercise.interval, exercise.samples))
+              .subscribe(promise::resolve, promise::reject, requestDisposables);
+  }
+
+  /** Downloads an exercise into the cache, shared by readExercise and fetchExercises. */
+  private Single<ExerciseCache.Exercise> fetchExercise(String id, PolarExerciseEntry entry) {
+      return requests.run("fetchExercise/" + id + "/" + entry.getPath(), EXERCISE_REQUEST_TIMEOUT_MS,
+              () -> api().fetchExercise(id, entry)
+                      .observeOn(conversionScheduler.scheduler())
+                      .map(polarExerciseData -> {
+                          int[] samples = toInts(polarExerciseData.getHrSamples());
+                          exerciseCache.put(id, entry.getPath(), polarExerciseData.getRecordingInterval(), samples);
+                          return new ExerciseCache.Exercise(polarExerciseData.getRecordingInterval(), samples);
+                      }));
   }
 
   @ReactMethod
-  public void removeExercise(String id) {
-      if (exerciseEntries.isEmpty()) {
-          Log.d(TAG, "No exercise to read, please list the exercises first");
-          return;
+  public void fetchExercises(String id, @Nullable ReadableArray paths, Promise promise) {
+      Set<Object> wanted = paths != null ? new HashSet<>(paths.toArrayList()) : null;
+      List<PolarExerciseEntry> selected = new ArrayList<>();
+      List<PolarExerciseEntry> entries = exerciseEntries.get(id);
+      if (entries != null) {
+          synchronized (entries) {
+              for (PolarExerciseEntry entry : entries) {
+                  if (wanted == null || wanted.contains(entry.getPath())) {
+                      selected.add(entry);
+                  }
+              }
+          }
       }
-
-      removeExerciseDisposable = api.removeExercise(id, exerciseEntries.get(0))
-              .observeOn(AndroidSchedulers.mainThread())
-              .subscribe(new Action() {
-                  @Override
-                  public void run() throws Throwable {
-                      exerciseEntries.remove(exerciseEntries.get(0));
+      Flowable.fromIterable(selected)
+              .flatMapSingle(entry -> {
+                  if (exerciseCache.contains(id, entry.getPath())) {
+                      return Single.just(exerciseFetchResult(entry, true, null));
                   }
-              });
+                  return fetchExercise(id, entry)
+                          .map(exercise -> exerciseFetchResult(entry, false, null))
+                          .onErrorReturn(throwable -> exerciseFetchResult(entry, false, throwable));
+              }, false, EXERCISE_FETCH_CONCURRENCY)
+              .toList()
+              .observeOn(conversionScheduler.scheduler())
+              .subscribe(results -> {
+                  WritableArray array = Arguments.createArray();
+                  for (WritableMap result : results) {
+                      array.pushMap(result);
+                  }
+                  promise.resolve(array);
+              }, promise::reject, requestDisposables);
+  }
+
+  /** Unboxes exercise samples once, everything downstream works on the int array. */
+  private static int[] toInts(List<Integer> values) {
+      int[] ints = new int[values.size()];
+      for (int i = 0; i < ints.length; i++) {
+          ints[i] = values.get(i);
+      }
+      return ints;
+  }
+
+  @ReactMethod
+  public void readCachedExercise(String id, String path, Promise promise) {
+      ExerciseCache.Exercise cached = exerciseCache.get(id, path);
+      promise.resolve(cached != null ? payloads.exercise(cached.interval, cached.samples) : null);
   }
 
+  private WritableMap exerciseFetchResult(PolarExerciseEntry entry, boolean cached, @Nullable Throwable error) {
+      WritableMap result = Arguments.createMap();
+      result.putString("path", entry.getPath());
+      result.putBoolean("cached", cached);
+      if (error != null) {
+          result.putString("error", "" + error.getLocalizedMessage());
+      }
+      return result;
+  }
 
+  @Nullable
+  private PolarExerciseEntry firstExerciseEntry(String id) {
+      List<PolarExerciseEntry> entries = exerciseEntries.get(id);
+      if (entries == null) {
+          return null;
+      }
+      synchronized (entries) {
+          return entries.isEmpty() ? null : entries.get(0);
+      }
+  }
 
+  /** Removes the first listed exercise from the device, resolving its path. */
+  @ReactMethod
+  public void removeExercise(String id, Promise promise) {
+      PolarExerciseEntry entry = firstExerciseEntry(id);
+      if (entry == null) {
+          promise.reject("NO_EXERCISE", "No exercise to remove, please list the exercises first");
+          return;
+      }
+      requests.run("removeExercise/" + id + "/" + entry.getPath(), H10_REQUEST_TIMEOUT_MS,
+              () -> api().removeExercise(id, entry)
+                      .observeOn(conversionScheduler.scheduler())
+                      .doOnComplete(() -> {
+                          List<PolarExerciseEntry> entries = exerciseEntries.get(id);
+                          if (entries != null) {
+                              entries.remove(entry);
+                          }
+                      })
+                      .toSingleDefault(entry.getPath()))
+              .subscribe(promise::resolve, promise::reject, requestDisposables);
+  }
 }
@@ -0,0 +1,20 @@
+package com.rnpolarble;
+
+/**
+ * Samples of one stream collected between two flushes, stored column by column.
+ */
+final class SampleBatch {
+  final long[] timeStamps;
+  final int[][] channels;
+  final int size;
+
+  SampleBatch(long[] timeStamps, int[][] channels, int size) {
+    this.timeStamps = timeStamps;
+    this.channels = channels;
+    this.size = size;
+  }
+
+  int channelCount() {
+    return channels.length;
+  }
+}
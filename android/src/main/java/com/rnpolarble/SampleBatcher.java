@@ -0,0 +1,110 @@
+package com.rnpolarble;
+
+import java.util.Arrays;
+
+/**
+ * Collects the samples of one device stream until they are flushed as a {@link SampleBatch}.
+ * Not thread safe, all calls are expected on the thread the stream is observed on.
+ */
+final class SampleBatcher implements SampleWriter {
+  private static final int INITIAL_CAPACITY = 256;
+
+  private long[] timeStamps;
+  private final int[][] channels;
+  private int size = 0;
+
+  SampleBatcher(int channelCount, int expectedSamples) {
+    int capacity = Math.max(INITIAL_CAPACITY, expectedSamples);
+    timeStamps = new long[capacity];
+    channels = new int[channelCount][capacity];
+  }
+
+  @Override
+  public void add(long timeStamp, int value) {
+    ensureCapacity();
+    timeStamps[size] = timeStamp;
+    channels[0][size] = value;
+    size++;
+  }
+
+  @Override
+  public void add(long timeStamp, int x, int y, int z) {
+    ensureCapacity();
+    timeStamps[size] = timeStamp;
+    channels[0][size] = x;
+    channels[1][size] = y;
+    channels[2][size] = z;
+    size++;
+  }
+
+  @Override
+  public void add(long timeStamp, int[] values) {
+    ensureCapacity();
+    timeStamps[size] = timeStamp;
+    for (int c = 0; c < channels.length; c++) {
+      channels[c][size] = values[c];
+    }
+    size++;
+  }
+
+  /** Adds the sample at index of column arrays like the ones of a {@link SampleRingBuffer}. */
+  void add(long timeStamp, int[][] columns, int index) {
+    ensureCapacity();
+    timeStamps[size] = timeStamp;
+    for (int c = 0; c < channels.length; c++) {
+      channels[c][size] = columns[c][index];
+    }
+    size++;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  SampleBatch drain() {
+    int[][] columns = new int[channels.length][];
+    for (int c = 0; c < channels.length; c++) {
+      columns[c] = Arrays.copyOf(channels[c], size);
+    }
+    SampleBatch batch = new SampleBatch(Arrays.copyOf(timeStamps, size), columns, size);
+    size = 0;
+    return batch;
+  }
+
+  /**
+   * The pending samples without copying them, for callers that are done with the batch before
+   * they add again. Call {@link #clear()} afterwards.
+   */
+  SampleBatch view() {
+    return new SampleBatch(timeStamps, channels, size);
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  /** Drops the first count samples, moving the rest to the front. */
+  void removeFirst(int count) {
+    int remaining = size - count;
+    System.arraycopy(timeStamps, count, timeStamps, 0, remaining);
+    for (int[] values : channels) {
+      System.arraycopy(values, count, values, 0, remaining);
+    }
+    size = remaining;
+  }
+
+  private void ensureCapacity() {
+    if (size < timeStamps.length) {
+      return;
+    }
+    int capacity = timeStamps.length * 2;
+    timeStamps = Arrays.copyOf(timeStamps, capacity);
+    for (int c = 0; c < channels.length; c++) {
+      channels[c] = Arrays.copyOf(channels[c], capacity);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarDeviceInfo;
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Converts SDK data and {@link SampleBatch}es into event payloads.
+ */
+final class SamplePayloads {
+  private final PayloadFactory factory;
+
+  SamplePayloads(PayloadFactory factory) {
+    this.factory = factory;
+  }
+
+  WritableMap deviceInfo(PolarDeviceInfo polarDeviceInfo) {
+    WritableMap rawMap = factory.createMap();
+    rawMap.putString("deviceId", polarDeviceInfo.getDeviceId());
+    rawMap.putString("address", polarDeviceInfo.getAddress());
+    rawMap.putInt("rssi", polarDeviceInfo.getRssi());
+    rawMap.putString("name", polarDeviceInfo.getName());
+    rawMap.putBoolean("isConnectable", polarDeviceInfo.isConnectable());
+    return rawMap;
+  }
+
+  WritableMap hr(String id, PolarHrData polarHrData) {
+    PolarHrData.PolarHrSample sample = polarHrData.getSamples().get(0);
+    WritableMap params = factory.createMap();
+    params.putString("id", id);
+    params.putInt("hr", sample.getHr());
+    WritableArray rrsMSList = factory.createArray();
+    List<Integer> rrs = sample.getRrsMs();
+    for (int i = 0, count = rrs.size(); i < count; i++) {
+      rrsMSList.pushInt(rrs.get(i));
+    }
+    params.putArray("rrsMs", rrsMSList);
+    params.putBoolean("rrAvailable", sample.getRrAvailable());
+    params.putBoolean("contactStatus", sample.getContactStatus());
+    params.putBoolean("contactStatusSupported", sample.getContactStatusSupported());
+    return params;
+  }
+
+  WritableMap exercise(int interval, int[] samples) {
+    WritableMap params = factory.createMap();
+    WritableArray values = factory.createArray();
+    params.putInt("interval", interval);
+    for (int s : samples) {
+      values.pushInt(s);
+    }
+    params.putArray("samples", values);
+    return params;
+  }
+
+  /** Payload of a batch in the format selected with {@link StreamOptions.PayloadFormat}. */
+  WritableMap toPayload(String id, String[] channelNames, SampleBatch batch, StreamOptions.PayloadFormat format) {
+    switch (format) {
+      case COLUMNAR:
+        return toColumnar(id, channelNames, batch);
+      case PACKED:
+        return toPacked(id, channelNames, batch);
+      case SAMPLES:
+      default:
+        return toSamples(id, channelNames, batch);
+    }
+  }
+
+  /** Rough size of the payload once serialized, for telemetry. */
+  static long estimateBytes(String[] channelNames, SampleBatch batch, StreamOptions.PayloadFormat format) {
+    long names = 0;
+    for (String name : channelNames) {
+      names += name.length() + 3;
+    }
+    switch (format) {
+      case PACKED:
+        int bytesPerValue = fitsInShort(batch) ? 2 : 4;
+        return 96 + names + channelNames.length * (4L * ((batch.size * bytesPerValue + 2) / 3));
+      case COLUMNAR:
+        return 96 + names + (long) channelNames.length * batch.size * 7;
+      case SAMPLES:
+      default:
+        return 32 + (long) batch.size * (28 + names + channelNames.length * 7L);
+    }
+  }
+
+  /** One map per sample, the original payload shape. */
+  WritableMap toSamples(String id, String[] channelNames, SampleBatch batch) {
+    WritableMap params = factory.createMap();
+    WritableArray samples = factory.createArray();
+    for (int i = 0; i < batch.size; i++) {
+      WritableMap sample = factory.createMap();
+      sample.putDouble("timeStamp", batch.timeStamps[i]);
+      for (int c = 0; c < channelNames.length; c++) {
+        sample.putInt(channelNames[c], batch.channels[c][i]);
+      }
+      samples.pushMap(sample);
+    }
+    params.putString("id", id);
+    params.putArray("samples", samples);
+    return params;
+  }
+
+  /** One number array per channel. */
+  WritableMap toColumnar(String id, String[] channelNames, SampleBatch batch) {
+    WritableMap params = header(id, "columnar", batch);
+    for (int c = 0; c < channelNames.length; c++) {
+      WritableArray values = factory.createArray();
+      int[] channel = batch.channels[c];
+      for (int i = 0; i < batch.size; i++) {
+        values.pushInt(channel[i]);
+      }
+      params.putArray(channelNames[c], values);
+    }
+    return params;
+  }
+
+  /** One base64 string of little endian int16 (or int32 when a value does not fit) per channel. */
+  WritableMap toPacked(String id, String[] channelNames, SampleBatch batch) {
+    WritableMap params = header(id, "packed", batch);
+    int bytesPerValue = fitsInShort(batch) ? 2 : 4;
+    ByteBuffer buffer = ByteBuffer.allocate(batch.size * bytesPerValue).order(ByteOrder.LITTLE_ENDIAN);
+    for (int c = 0; c < channelNames.length; c++) {
+      buffer.clear();
+      int[] channel = batch.channels[c];
+      for (int i = 0; i < batch.size; i++) {
+        if (bytesPerValue == 2) {
+          buffer.putShort((short) channel[i]);
+        } else {
+          buffer.putInt(channel[i]);
+        }
+      }
+      params.putString(channelNames[c], factory.encodeBase64(buffer.array(), buffer.position()));
+    }
+    params.putInt("bytesPerValue", bytesPerValue);
+    return params;
+  }
+
+  private WritableMap header(String id, String format, SampleBatch batch) {
+    WritableMap params = factory.createMap();
+    params.putString("id", id);
+    params.putString("format", format);
+    params.putInt("count", batch.size);
+    params.putDouble("timeStamp", batch.size > 0 ? batch.timeStamps[0] : 0);
+    params.putDouble("sampleInterval", sampleInterval(batch));
+    return params;
+  }
+
+  /** Mean distance between sample timestamps in nanoseconds. */
+  static double sampleInterval(SampleBatch batch) {
+    if (batch.size < 2) {
+      return 0;
+    }
+    return (double) (batch.timeStamps[batch.size - 1] - batch.timeStamps[0]) / (batch.size - 1);
+  }
+
+  private static boolean fitsInShort(SampleBatch batch) {
+    for (int[] channel : batch.channels) {
+      for (int i = 0; i < batch.size; i++) {
+        if (channel[i] < Short.MIN_VALUE || channel[i] > Short.MAX_VALUE) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,107 @@
+package com.rnpolarble;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size FIFO of multi-channel samples for handing them from one producer thread to one
+ * consumer thread without locks or allocation. Time stamps and channels are kept in primitive
+ * columns; the producer publishes a sample by advancing the tail and the consumer frees it by
+ * advancing the head, each only written by its own side. When the buffer is full new samples
+ * are dropped and counted, so the producer never waits.
+ */
+final class SampleRingBuffer implements SampleWriter {
+  private final long[] timeStamps;
+  private final int[][] channels;
+  private final int mask;
+  /** Next sample to read, written by the consumer. */
+  private final AtomicLong head = new AtomicLong();
+  /** Next sample to write, written by the producer. */
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  /** The producer's last view of the head, refreshed only when the buffer looks full. */
+  private long cachedHead = 0;
+
+  /** The capacity is rounded up to a power of two. */
+  SampleRingBuffer(int channelCount, int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    timeStamps = new long[size];
+    channels = new int[channelCount][size];
+    mask = size - 1;
+  }
+
+  int channelCount() {
+    return channels.length;
+  }
+
+  @Override
+  public void add(long timeStamp, int value) {
+    long position = tail.get();
+    if (isFull(position)) {
+      return;
+    }
+    int index = (int) position & mask;
+    timeStamps[index] = timeStamp;
+    channels[0][index] = value;
+    tail.lazySet(position + 1);
+  }
+
+  @Override
+  public void add(long timeStamp, int x, int y, int z) {
+    long position = tail.get();
+    if (isFull(position)) {
+      return;
+    }
+    int index = (int) position & mask;
+    timeStamps[index] = timeStamp;
+    channels[0][index] = x;
+    channels[1][index] = y;
+    channels[2][index] = z;
+    tail.lazySet(position + 1);
+  }
+
+  @Override
+  public void add(long timeStamp, int[] values) {
+    long position = tail.get();
+    if (isFull(position)) {
+      return;
+    }
+    int index = (int) position & mask;
+    timeStamps[index] = timeStamp;
+    for (int c = 0; c < channels.length; c++) {
+      channels[c][index] = values[c];
+    }
+    tail.lazySet(position + 1);
+  }
+
+  /** Moves up to max samples into the batcher, called on the consumer thread only. */
+  int drainTo(SampleBatcher batcher, int max) {
+    long position = head.get();
+    int count = (int) Math.min(max, tail.get() - position);
+    for (int i = 0; i < count; i++) {
+      int index = (int) (position + i) & mask;
+      batcher.add(timeStamps[index], channels, index);
+    }
+    head.lazySet(position + count);
+    return count;
+  }
+
+  boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+
+  long dropped() {
+    return dropped.get();
+  }
+
+  private boolean isFull(long position) {
+    if (position - cachedHead <= mask) {
+      return false;
+    }
+    cachedHead = head.get();
+    if (position - cachedHead <= mask) {
+      return false;
+    }
+    dropped.lazySet(dropped.get() + 1);
+    return true;
+  }
+}
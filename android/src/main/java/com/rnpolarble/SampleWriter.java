@@ -0,0 +1,13 @@
+package com.rnpolarble;
+
+/**
+ * Receives the samples unpacked from SDK packets.
+ */
+interface SampleWriter {
+  void add(long timeStamp, int value);
+
+  void add(long timeStamp, int x, int y, int z);
+
+  /** Adds one value per channel, {@code values} may be reused by the caller afterwards. */
+  void add(long timeStamp, int[] values);
+}
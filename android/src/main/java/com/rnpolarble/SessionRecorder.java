@@ -0,0 +1,364 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+import io.reactivex.rxjava3.core.Scheduler;
+
+/**
+ * Appends the raw data of one device to a binary session file.
+ *
+ * <p>The file starts with {@link #FILE_MAGIC}, a format version and the device id. Every
+ * packet is then written as a frame of {@link #FRAME_MAGIC}, data type, encoding, payload
+ * length, payload and the CRC32 of the payload, all little endian. A frame cut short by a
+ * crash fails its length or CRC check, so readers can drop it and resynchronize on the
+ * next frame magic. Frames are buffered and forced to disk every sync interval.
+ *
+ * <p>Sample frames are written raw or compressed with {@link DeltaCodec}. Every sync appends
+ * an index frame with the first time stamp and file offset of each frame written since the
+ * previous index, and the offset of that previous index, so a reader can find any point in
+ * time by walking the indexes back from the end of the file. Sample time stamps are on the
+ * sensor clock in ns; HR carries none, so its entries hold the wall clock in ns and have
+ * {@link #INDEX_WALL_CLOCK} set in their type.
+ *
+ * <p>Samples are added on the conversion thread and handed to a writer worker through a
+ * {@link SampleRingBuffer} per data type, so encoding and disk syncs never hold up conversion.
+ * The writer drains the buffers into frames of up to {@link #FRAME_MAX_SAMPLES} samples. Adding
+ * samples and {@link #close()} must happen on the conversion thread.
+ */
+final class SessionRecorder {
+  static final int FILE_MAGIC = 0x42504e52; // "RNPB"
+  static final int FRAME_MAGIC = 0x4d524631; // "1FRM"
+  static final byte VERSION = 1;
+
+  static final byte TYPE_HR = 1;
+  static final byte TYPE_ECG = 2;
+  static final byte TYPE_ACC = 3;
+  static final byte TYPE_PPG = 4;
+  static final byte TYPE_PPI = 5;
+  /** Previous index offset (-1 for none), entry count, then type, first time stamp and offset per frame. */
+  static final byte TYPE_INDEX = 16;
+  /** Set in the type of index entries whose time stamp is on the wall clock. */
+  static final byte INDEX_WALL_CLOCK = (byte) 0x80;
+
+  /** Sample count, channel count, timestamps and then each channel as plain ints. */
+  static final byte ENCODING_RAW = 0;
+  /** A {@link DeltaCodec} block. */
+  static final byte ENCODING_DELTA = 1;
+
+  private static final int FRAME_OVERHEAD = 4 + 1 + 1 + 4 + 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int INDEX_ENTRY_SIZE = 1 + 8 + 8;
+  /** Holds 30 seconds of the fastest stream, in case the writer is held up by a slow disk. */
+  private static final int RING_CAPACITY = 8192;
+  private static final int FRAME_MAX_SAMPLES = 1024;
+  private static final long DRAIN_INTERVAL_MS = 250;
+
+  /** HR samples go through the ring as one hr, flags, rr row per RR interval. */
+  private static final int HR_CONTACT = 1;
+  private static final int HR_CONTACT_SUPPORTED = 2;
+  /** The row holds the next RR of the sample of the previous row. */
+  private static final int HR_CONTINUED = 4;
+  /** The sample has no RR, the rr of its only row is not one. */
+  private static final int HR_NO_RR = 8;
+  /** On the last row of a sample, so the writer never splits a sample across frames. */
+  private static final int HR_LAST = 16;
+
+  private final File file;
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private final CRC32 crc = new CRC32();
+  private final byte encoding;
+  private ByteBuffer payload = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+  private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private int indexEntries = 0;
+  private long previousIndexOffset = -1;
+  /** File offset the next frame is written at. */
+  private long position;
+  private final AtomicReferenceArray<SampleRingBuffer> rings = new AtomicReferenceArray<>(TYPE_PPI + 1);
+  /** Writer side batches the rings drain into, by type code. */
+  private final SampleBatcher[] frames = new SampleBatcher[TYPE_PPI + 1];
+  private Scheduler.Worker writer;
+
+  SessionRecorder(File file, String deviceId, byte encoding) throws IOException {
+    this.file = file;
+    this.encoding = encoding;
+    this.channel = new FileOutputStream(file, true).getChannel();
+    position = channel.size();
+    if (position == 0) {
+      byte[] id = deviceId.getBytes(StandardCharsets.UTF_8);
+      buffer.putInt(FILE_MAGIC);
+      buffer.put(VERSION);
+      buffer.putShort((short) id.length);
+      buffer.put(id);
+      position = buffer.position();
+    }
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /** Starts the writer on a worker of the scheduler, syncing every interval. */
+  void start(Scheduler scheduler, long syncIntervalMs) {
+    writer = scheduler.createWorker();
+    long drainsPerSync = Math.max(1, syncIntervalMs / DRAIN_INTERVAL_MS);
+    long[] drains = {0};
+    writer.schedulePeriodically(() -> {
+      drain();
+      if (++drains[0] % drainsPerSync == 0) {
+        sync();
+      }
+    }, DRAIN_INTERVAL_MS, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Where the conversion thread writes the samples of a stream to be recorded. */
+  SampleWriter samples(PolarBleApi.PolarDeviceDataType dataType, int channelCount) {
+    byte type = typeCode(dataType);
+    SampleRingBuffer ring = rings.get(type);
+    if (ring == null) {
+      ring = new SampleRingBuffer(channelCount, RING_CAPACITY);
+      rings.set(type, ring);
+    }
+    return ring;
+  }
+
+  /** HR samples carry no sensor time, so the frame holds the wall clock time it was received at. */
+  void addHr(long receivedAtMs, PolarHrData.PolarHrSample sample) {
+    SampleWriter ring = samples(PolarBleApi.PolarDeviceDataType.HR, 3);
+    int flags = (sample.getContactStatus() ? HR_CONTACT : 0) | (sample.getContactStatusSupported() ? HR_CONTACT_SUPPORTED : 0);
+    List<Integer> rrs = sample.getRrsMs();
+    int count = rrs.size();
+    if (count == 0) {
+      ring.add(receivedAtMs, sample.getHr(), flags | HR_NO_RR | HR_LAST, 0);
+    }
+    for (int i = 0; i < count; i++) {
+      int rowFlags = (i == 0 ? flags : flags | HR_CONTINUED) | (i == count - 1 ? HR_LAST : 0);
+      ring.add(receivedAtMs, sample.getHr(), rowFlags, rrs.get(i));
+    }
+  }
+
+  static byte typeCode(PolarBleApi.PolarDeviceDataType dataType) {
+    switch (dataType) {
+      case HR:
+        return TYPE_HR;
+      case ECG:
+        return TYPE_ECG;
+      case ACC:
+        return TYPE_ACC;
+      case PPG:
+        return TYPE_PPG;
+      case PPI:
+        return TYPE_PPI;
+      default:
+        return 0;
+    }
+  }
+
+  private void drain() {
+    for (byte type = TYPE_HR; type <= TYPE_PPI; type++) {
+      SampleRingBuffer ring = rings.get(type);
+      if (ring == null) {
+        continue;
+      }
+      SampleBatcher frame = frames[type];
+      if (frame == null) {
+        frame = new SampleBatcher(ring.channelCount(), FRAME_MAX_SAMPLES);
+        frames[type] = frame;
+      }
+      while (ring.drainTo(frame, FRAME_MAX_SAMPLES) > 0) {
+        if (type == TYPE_HR) {
+          // Rows of a sample the drain cut off stay for the next one.
+          frame.removeFirst(writeHr(frame.view()));
+        } else {
+          writeSamples(type, frame.view());
+          frame.clear();
+        }
+      }
+    }
+  }
+
+  private void writeSamples(byte type, SampleBatch batch) {
+    if (encoding == ENCODING_DELTA) {
+      ByteBuffer out = payload(DeltaCodec.maxEncodedSize(batch.size, batch.channelCount()));
+      DeltaCodec.encode(batch, out);
+      writeFrame(type, ENCODING_DELTA, out, batch.size > 0 ? batch.timeStamps[0] : 0);
+      return;
+    }
+    ByteBuffer out = payload(4 + 1 + batch.size * 8 + batch.channelCount() * batch.size * 4);
+    out.putInt(batch.size);
+    out.put((byte) batch.channelCount());
+    for (int i = 0; i < batch.size; i++) {
+      out.putLong(batch.timeStamps[i]);
+    }
+    for (int[] values : batch.channels) {
+      for (int i = 0; i < batch.size; i++) {
+        out.putInt(values[i]);
+      }
+    }
+    writeFrame(type, ENCODING_RAW, out, batch.size > 0 ? batch.timeStamps[0] : 0);
+  }
+
+  /**
+   * Writes a frame per HR sample, regrouping the rows {@link #addHr} split it into. Returns the
+   * number of rows written, the rows of a sample whose last row is not drained yet are left.
+   */
+  private int writeHr(SampleBatch rows) {
+    int[] flags = rows.channels[1];
+    int start = 0;
+    for (int i = 0; i < rows.size; i++) {
+      if (i > start && (flags[i] & HR_CONTINUED) == 0) {
+        // The rest of the previous sample was dropped by a full ring.
+        writeHrFrame(rows, start, i);
+        start = i;
+      }
+      if ((flags[i] & HR_LAST) != 0) {
+        writeHrFrame(rows, start, i + 1);
+        start = i + 1;
+      }
+    }
+    return start;
+  }
+
+  private void writeHrFrame(SampleBatch rows, int start, int end) {
+    int[] hr = rows.channels[0];
+    int[] flags = rows.channels[1];
+    int[] rrs = rows.channels[2];
+    int count = (flags[start] & HR_NO_RR) != 0 ? 0 : end - start;
+    ByteBuffer out = payload(8 + 4 + 1 + 2 + count * 4);
+    out.putLong(rows.timeStamps[start]);
+    out.putInt(hr[start]);
+    out.put((byte) (flags[start] & (HR_CONTACT | HR_CONTACT_SUPPORTED)));
+    out.putShort((short) count);
+    for (int r = start; r < start + count; r++) {
+      out.putInt(rrs[r]);
+    }
+    writeFrame(TYPE_HR, ENCODING_RAW, out, TimeUnit.MILLISECONDS.toNanos(rows.timeStamps[start]));
+  }
+
+  private void sync() {
+    writeIndex();
+    try {
+      flushBuffer();
+      channel.force(false);
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Session recording sync failed: " + e.getLocalizedMessage());
+    }
+  }
+
+  /** Writes the samples added so far and closes the file on the writer. */
+  void close() {
+    Scheduler.Worker current = writer;
+    current.schedule(() -> {
+      drain();
+      sync();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        Log.e(RnPolarBleModule.TAG, "Session recording close failed: " + e.getLocalizedMessage());
+      }
+      long dropped = 0;
+      for (byte type = TYPE_HR; type <= TYPE_PPI; type++) {
+        SampleRingBuffer ring = rings.get(type);
+        dropped += ring != null ? ring.dropped() : 0;
+      }
+      if (dropped > 0) {
+        Log.w(RnPolarBleModule.TAG, "Session recording dropped " + dropped + " samples the writer fell behind on");
+      }
+      current.dispose();
+    });
+  }
+
+  private ByteBuffer payload(int capacity) {
+    if (payload.capacity() < capacity) {
+      payload = ByteBuffer.allocate(Math.max(capacity, payload.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    payload.clear();
+    return payload;
+  }
+
+  private void writeIndex() {
+    if (indexEntries == 0) {
+      return;
+    }
+    ByteBuffer out = payload(8 + 4 + indexEntries * INDEX_ENTRY_SIZE);
+    out.putLong(previousIndexOffset);
+    out.putInt(indexEntries);
+    index.flip();
+    out.put(index);
+    index.clear();
+    indexEntries = 0;
+    previousIndexOffset = position;
+    writeFrame(TYPE_INDEX, ENCODING_RAW, out, 0);
+  }
+
+  private void writeFrame(byte type, byte encoding, ByteBuffer framePayload, long timeStamp) {
+    if (type != TYPE_INDEX) {
+      if (index.remaining() < INDEX_ENTRY_SIZE) {
+        ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+        index.flip();
+        larger.put(index);
+        index = larger;
+      }
+      index.put(type == TYPE_HR ? (byte) (type | INDEX_WALL_CLOCK) : type);
+      index.putLong(timeStamp);
+      index.putLong(position);
+      indexEntries++;
+    }
+    framePayload.flip();
+    int length = framePayload.remaining();
+    crc.reset();
+    crc.update(framePayload.array(), framePayload.arrayOffset(), length);
+    try {
+      if (buffer.remaining() < FRAME_OVERHEAD + length) {
+        flushBuffer();
+      }
+      if (buffer.remaining() < FRAME_OVERHEAD + length) {
+        ByteBuffer large = ByteBuffer.allocate(FRAME_OVERHEAD + length).order(ByteOrder.LITTLE_ENDIAN);
+        putFrame(large, type, encoding, framePayload, length);
+        large.flip();
+        writeFully(large);
+      } else {
+        putFrame(buffer, type, encoding, framePayload, length);
+      }
+      position += FRAME_OVERHEAD + length;
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Session recording write failed: " + e.getLocalizedMessage());
+    }
+  }
+
+  private void putFrame(ByteBuffer out, byte type, byte encoding, ByteBuffer framePayload, int length) {
+    out.putInt(FRAME_MAGIC);
+    out.put(type);
+    out.put(encoding);
+    out.putInt(length);
+    out.put(framePayload);
+    out.putInt((int) crc.getValue());
+  }
+
+  private void flushBuffer() throws IOException {
+    buffer.flip();
+    writeFully(buffer);
+    buffer.clear();
+  }
+
+  private void writeFully(ByteBuffer source) throws IOException {
+    while (source.hasRemaining()) {
+      channel.write(source);
+    }
+  }
+}
@@ -0,0 +1,442 @@
+package com.rnpolarble;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Packets of a session file written by {@link SessionRecorder}, grouped by data type so the
+ * simulator can replay them. Frames that fail their CRC are skipped like a crash-cut tail.
+ *
+ * <p>Opening a replay scans the file frame by frame and keeps only where each packet is; the
+ * packets are read back from the file as they are replayed, so a long recording does not have
+ * to fit in memory. {@link #close()} releases the file.
+ */
+final class SessionReplay implements Closeable {
+  private static final int WINDOW_SIZE = 64 * 1024;
+  /** Frames claiming to be longer are taken as corrupt rather than read. */
+  private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+  private static final int FRAME_HEADER = 4 + 1 + 1 + 4;
+
+  /** Recorded packets of one data type and the time they span. */
+  static final class Track {
+    private final FileChannel channel;
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+    private byte[] encodings = new byte[64];
+    private int size = 0;
+    long firstTime = Long.MAX_VALUE;
+    long lastTime = Long.MIN_VALUE;
+
+    private Track(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    int size() {
+      return size;
+    }
+
+    /** Mean time between packets, or the fallback when the track carries no times. */
+    long packetPeriodNanos(long fallbackNanos) {
+      if (size() < 2 || lastTime <= firstTime) {
+        return fallbackNanos;
+      }
+      return (lastTime - firstTime) / (size() - 1);
+    }
+
+    /** Reads sample packet i of an ECG, ACC, PPG or PPI track. */
+    SampleBatch batch(int i) throws IOException {
+      SampleBatch batch = decode(encodings[i], read(i));
+      if (batch == null) {
+        throw new IOException("Recorded packet " + i + " changed");
+      }
+      return batch;
+    }
+
+    /** Reads packet i of an HR track. */
+    PolarHrData hr(int i) throws IOException {
+      return decodeHr(read(i));
+    }
+
+    private ByteBuffer read(int i) throws IOException {
+      ByteBuffer payload = ByteBuffer.allocate(lengths[i]).order(ByteOrder.LITTLE_ENDIAN);
+      long offset = offsets[i];
+      while (payload.hasRemaining()) {
+        int read = channel.read(payload, offset + payload.position());
+        if (read < 0) {
+          throw new EOFException("Recorded packet " + i + " is cut short");
+        }
+      }
+      payload.flip();
+      return payload;
+    }
+
+    private void add(long offset, int length, byte encoding, long timeNanos) {
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+        encodings = Arrays.copyOf(encodings, size * 2);
+      }
+      offsets[size] = offset;
+      lengths[size] = length;
+      encodings[size] = encoding;
+      size++;
+      if (timeNanos != 0) {
+        firstTime = Math.min(firstTime, timeNanos);
+        lastTime = Math.max(lastTime, timeNanos);
+      }
+    }
+  }
+
+  /** Where a frame of a session file starts. */
+  static final class IndexEntry {
+    final PolarBleApi.PolarDeviceDataType dataType;
+    /** In ns, on the wall clock when wallClock is set and on the sensor clock otherwise. */
+    final long timeStamp;
+    final boolean wallClock;
+    final long offset;
+
+    IndexEntry(PolarBleApi.PolarDeviceDataType dataType, long timeStamp, boolean wallClock, long offset) {
+      this.dataType = dataType;
+      this.timeStamp = timeStamp;
+      this.wallClock = wallClock;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * A buffered window over a file that can step back within the frame being parsed, so a
+   * frame failing its checks can be rescanned from its second byte.
+   */
+  private static final class FrameWindow {
+    private final FileChannel channel;
+    private final long fileSize;
+    private ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    /** File offset of the first byte of the buffer. */
+    private long bufferOffset = 0;
+
+    FrameWindow(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.fileSize = channel.size();
+      buffer.limit(0);
+    }
+
+    long offset() {
+      return bufferOffset + buffer.position();
+    }
+
+    /** Makes count bytes from the position readable, false when the file ends before. */
+    boolean fill(int count) throws IOException {
+      if (buffer.remaining() >= count) {
+        return true;
+      }
+      if (fileSize - offset() < count) {
+        return false;
+      }
+      bufferOffset += buffer.position();
+      if (buffer.capacity() < count) {
+        ByteBuffer larger = ByteBuffer.allocate(count).order(ByteOrder.LITTLE_ENDIAN);
+        larger.put(buffer);
+        buffer = larger;
+      } else {
+        buffer.compact();
+      }
+      while (buffer.position() < count) {
+        if (channel.read(buffer, bufferOffset + buffer.position()) < 0) {
+          throw new EOFException();
+        }
+      }
+      buffer.flip();
+      return true;
+    }
+  }
+
+  private final FileChannel channel;
+  private final Map<PolarBleApi.PolarDeviceDataType, Track> tracks =
+          new EnumMap<>(PolarBleApi.PolarDeviceDataType.class);
+
+  private SessionReplay(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  @Nullable
+  Track track(PolarBleApi.PolarDeviceDataType dataType) {
+    Track track = tracks.get(dataType);
+    return track != null && track.size() > 0 ? track : null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  static SessionReplay read(File file) throws IOException {
+    FileChannel channel = new FileInputStream(file).getChannel();
+    try {
+      SessionReplay replay = new SessionReplay(channel);
+      replay.scan(file);
+      return replay;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private void scan(File file) throws IOException {
+    FrameWindow window = new FrameWindow(channel);
+    if (!window.fill(7) || window.buffer.getInt() != SessionRecorder.FILE_MAGIC) {
+      throw new IOException("Not a session recording: " + file);
+    }
+    window.buffer.get();
+    int idLength = window.buffer.getShort();
+    if (idLength < 0 || !window.fill(idLength)) {
+      throw new IOException("Not a session recording: " + file);
+    }
+    window.buffer.position(window.buffer.position() + idLength);
+
+    CRC32 crc = new CRC32();
+    int skipped = 0;
+    while (window.fill(FRAME_HEADER + 4)) {
+      ByteBuffer buffer = window.buffer;
+      int start = buffer.position();
+      int length = buffer.getInt(start + 6);
+      if (buffer.getInt(start) != SessionRecorder.FRAME_MAGIC || length < 0 || length > MAX_FRAME_LENGTH
+              || !window.fill(FRAME_HEADER + length + 4)) {
+        window.buffer.position(window.buffer.position() + 1);
+        continue;
+      }
+      // Filling may have moved the frame to the start of a new buffer.
+      buffer = window.buffer;
+      start = buffer.position();
+      byte type = buffer.get(start + 4);
+      byte encoding = buffer.get(start + 5);
+      int payloadStart = start + FRAME_HEADER;
+      crc.reset();
+      crc.update(buffer.array(), buffer.arrayOffset() + payloadStart, length);
+      if (buffer.getInt(payloadStart + length) != (int) crc.getValue()) {
+        skipped++;
+        buffer.position(start + 1);
+        continue;
+      }
+      ByteBuffer payload = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      payload.position(payloadStart).limit(payloadStart + length);
+      if (!add(type, encoding, window.offset() + FRAME_HEADER, payload.slice().order(ByteOrder.LITTLE_ENDIAN))) {
+        skipped++;
+      }
+      buffer.position(payloadStart + length + 4);
+    }
+    if (skipped > 0) {
+      Log.w(RnPolarBleModule.TAG, "Skipped " + skipped + " frames of " + file);
+    }
+  }
+
+  /**
+   * The frame index of a session file, oldest first, found from the last index frame without
+   * reading the data frames. Frames written after the last sync are not indexed.
+   */
+  static List<IndexEntry> readIndex(File file) throws IOException {
+    List<List<IndexEntry>> indexes = new ArrayList<>();
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      long offset = findLastIndex(in);
+      while (offset >= 0) {
+        ByteBuffer payload = readIndexFrame(in, offset);
+        if (payload == null) {
+          break;
+        }
+        long previous = payload.getLong();
+        List<IndexEntry> entries = new ArrayList<>();
+        for (int i = payload.getInt(); i > 0; i--) {
+          byte type = payload.get();
+          PolarBleApi.PolarDeviceDataType dataType = dataType((byte) (type & ~SessionRecorder.INDEX_WALL_CLOCK));
+          long timeStamp = payload.getLong();
+          long frameOffset = payload.getLong();
+          if (dataType != null) {
+            // Files from before the flag only had HR on the wall clock.
+            boolean wallClock = (type & SessionRecorder.INDEX_WALL_CLOCK) != 0
+                    || dataType == PolarBleApi.PolarDeviceDataType.HR;
+            entries.add(new IndexEntry(dataType, timeStamp, wallClock, frameOffset));
+          }
+        }
+        indexes.add(entries);
+        offset = previous < offset ? previous : -1;
+      }
+    }
+    List<IndexEntry> index = new ArrayList<>();
+    for (int i = indexes.size() - 1; i >= 0; i--) {
+      index.addAll(indexes.get(i));
+    }
+    return index;
+  }
+
+  private static long findLastIndex(RandomAccessFile in) throws IOException {
+    long end = in.length();
+    byte[] window = new byte[64 * 1024];
+    while (end > 0) {
+      long start = Math.max(0, end - window.length);
+      int length = (int) (end - start);
+      in.seek(start);
+      in.readFully(window, 0, length);
+      ByteBuffer bytes = ByteBuffer.wrap(window, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = length - 6; i >= 0; i--) {
+        if (bytes.getInt(i) == SessionRecorder.FRAME_MAGIC && window[i + 4] == SessionRecorder.TYPE_INDEX
+                && readIndexFrame(in, start + i) != null) {
+          return start + i;
+        }
+      }
+      if (start == 0) {
+        break;
+      }
+      // Overlap so a frame header across the window border is still found.
+      end = start + 6;
+    }
+    return -1;
+  }
+
+  @Nullable
+  private static ByteBuffer readIndexFrame(RandomAccessFile in, long offset) throws IOException {
+    if (offset < 0 || offset + 10 > in.length()) {
+      return null;
+    }
+    in.seek(offset);
+    byte[] header = new byte[10];
+    in.readFully(header);
+    ByteBuffer frame = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    if (frame.getInt() != SessionRecorder.FRAME_MAGIC || frame.get() != SessionRecorder.TYPE_INDEX) {
+      return null;
+    }
+    frame.get();
+    int length = frame.getInt();
+    if (length < 12 || offset + 10 + length + 4 > in.length()) {
+      return null;
+    }
+    byte[] payload = new byte[length + 4];
+    in.readFully(payload);
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, length);
+    ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt(length) != (int) crc.getValue()) {
+      return null;
+    }
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /** Checks that a frame decodes and notes where it is, false for frames that do not. */
+  private boolean add(byte type, byte encoding, long offset, ByteBuffer payload) {
+    if (type == SessionRecorder.TYPE_INDEX) {
+      return true;
+    }
+    PolarBleApi.PolarDeviceDataType dataType = dataType(type);
+    if (dataType == null) {
+      return false;
+    }
+    int length = payload.remaining();
+    long timeNanos;
+    if (dataType == PolarBleApi.PolarDeviceDataType.HR) {
+      try {
+        decodeHr(payload.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+      } catch (RuntimeException e) {
+        return false;
+      }
+      timeNanos = payload.getLong(0) * 1000000;
+    } else {
+      SampleBatch batch = decode(encoding, payload);
+      if (batch == null) {
+        return false;
+      }
+      timeNanos = batch.size > 0 ? batch.timeStamps[0] : 0;
+    }
+    Track track = tracks.get(dataType);
+    if (track == null) {
+      track = new Track(channel);
+      tracks.put(dataType, track);
+    }
+    track.add(offset, length, encoding, timeNanos);
+    return true;
+  }
+
+  private static PolarHrData decodeHr(ByteBuffer payload) {
+    payload.getLong();
+    int hr = payload.getInt();
+    byte contact = payload.get();
+    List<Integer> rrs = new ArrayList<>();
+    for (int i = payload.getShort(); i > 0; i--) {
+      rrs.add(payload.getInt());
+    }
+    List<PolarHrData.PolarHrSample> samples = new ArrayList<>(1);
+    samples.add(new PolarHrData.PolarHrSample(hr, rrs, !rrs.isEmpty(), (contact & 1) != 0, (contact & 2) != 0));
+    return new PolarHrData(samples);
+  }
+
+  @Nullable
+  private static SampleBatch decode(byte encoding, ByteBuffer payload) {
+    if (encoding == SessionRecorder.ENCODING_DELTA) {
+      try {
+        return DeltaCodec.decode(payload);
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+    if (encoding != SessionRecorder.ENCODING_RAW) {
+      return null;
+    }
+    try {
+      return decodeRaw(payload);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static SampleBatch decodeRaw(ByteBuffer payload) {
+    int size = payload.getInt();
+    int channelCount = payload.get();
+    long[] timeStamps = new long[size];
+    for (int i = 0; i < size; i++) {
+      timeStamps[i] = payload.getLong();
+    }
+    int[][] channels = new int[channelCount][size];
+    for (int[] values : channels) {
+      for (int i = 0; i < size; i++) {
+        values[i] = payload.getInt();
+      }
+    }
+    return new SampleBatch(timeStamps, channels, size);
+  }
+
+  @Nullable
+  private static PolarBleApi.PolarDeviceDataType dataType(byte type) {
+    switch (type) {
+      case SessionRecorder.TYPE_HR:
+        return PolarBleApi.PolarDeviceDataType.HR;
+      case SessionRecorder.TYPE_ECG:
+        return PolarBleApi.PolarDeviceDataType.ECG;
+      case SessionRecorder.TYPE_ACC:
+        return PolarBleApi.PolarDeviceDataType.ACC;
+      case SessionRecorder.TYPE_PPG:
+        return PolarBleApi.PolarDeviceDataType.PPG;
+      case SessionRecorder.TYPE_PPI:
+        return PolarBleApi.PolarDeviceDataType.PPI;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,422 @@
+package com.rnpolarble;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarHrData;
+import com.polar.sdk.api.model.PolarPpgData;
+import com.polar.sdk.api.model.PolarPpiData;
+import com.polar.sdk.api.model.PolarSensorSetting;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Supplier;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+
+/**
+ * Virtual devices that stream synthetic or recorded sessions through the same pipeline as
+ * real devices, to load test the module without straps. Devices connect, lose packets and
+ * drop their connection as configured; data runs at real time times the speed.
+ *
+ * <p>Synthetic signals follow a slowly varying heart rate: ECG beats with a QRS complex and
+ * T wave, PPG pulses delayed from the beat, a resting accelerometer and matching RR and PPI
+ * intervals. A replayed session loops its recorded packets with time stamps kept increasing.
+ */
+final class SimulatedDevices implements StreamSource {
+  interface Listener {
+    void onConnected(String deviceId, Set<PolarBleApi.PolarDeviceDataType> dataTypes);
+
+    void onDisconnected(String deviceId);
+  }
+
+  private static final String THREAD_NAME = "RnPolarBle-simulator";
+  private static final String ID_PREFIX = "SIM";
+  private static final int ECG_RATE = 130;
+  private static final int ECG_PACKET_SAMPLES = 73;
+  private static final int PPG_RATE = 135;
+  private static final int PPG_PACKET_SAMPLES = 35;
+  private static final int ACC_PACKET_SAMPLES = 36;
+  private static final long HR_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final class Device {
+    final String id;
+    final double phase;
+    @Nullable
+    CompletableSubject link;
+    @Nullable
+    Disposable pending;
+
+    Device(String id, double phase) {
+      this.id = id;
+      this.phase = phase;
+    }
+  }
+
+  private final SimulationOptions options;
+  private final Listener listener;
+  @Nullable
+  private final SessionReplay replay;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, THREAD_NAME);
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Scheduler scheduler = Schedulers.from(executor);
+  private final Random random = new Random();
+  private final Map<String, Device> devices = new LinkedHashMap<>();
+  private final long startedAtMs = SystemClock.elapsedRealtime();
+  private final long sensorEpochNanos = System.nanoTime();
+
+  private final AtomicLong packetsGenerated = new AtomicLong();
+  private final AtomicLong packetsLost = new AtomicLong();
+  private final AtomicLong samplesGenerated = new AtomicLong();
+  private final AtomicLong disconnects = new AtomicLong();
+
+  SimulatedDevices(SimulationOptions options, Listener listener) throws IOException {
+    this.options = options;
+    this.listener = listener;
+    this.replay = options.replayPath != null ? SessionReplay.read(new File(options.replayPath)) : null;
+    for (int i = 0; i < options.devices; i++) {
+      String id = String.format("%s%05d", ID_PREFIX, i);
+      devices.put(id, new Device(id, random.nextDouble()));
+    }
+  }
+
+  List<String> deviceIds() {
+    return new ArrayList<>(devices.keySet());
+  }
+
+  boolean contains(String deviceId) {
+    return devices.containsKey(deviceId);
+  }
+
+  void start() {
+    for (Device device : devices.values()) {
+      scheduler.scheduleDirect(() -> connect(device));
+    }
+  }
+
+  void stop() {
+    synchronized (this) {
+      for (Device device : devices.values()) {
+        if (device.pending != null) {
+          device.pending.dispose();
+        }
+      }
+    }
+    for (Device device : devices.values()) {
+      disconnect(device, false);
+    }
+    executor.shutdown();
+    if (replay != null) {
+      try {
+        replay.close();
+      } catch (IOException e) {
+        Log.w(RnPolarBleModule.TAG, "Could not close the replayed session", e);
+      }
+    }
+  }
+
+  long samplesGenerated() {
+    return samplesGenerated.get();
+  }
+
+  WritableMap toJsDictionary() {
+    long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - startedAtMs);
+    WritableMap params = Arguments.createMap();
+    params.putInt("devices", devices.size());
+    params.putDouble("speed", options.speed);
+    params.putDouble("elapsedMs", elapsedMs);
+    params.putDouble("packetsGenerated", packetsGenerated.get());
+    params.putDouble("packetsLost", packetsLost.get());
+    params.putDouble("samplesGenerated", samplesGenerated.get());
+    params.putDouble("samplesPerSecond", samplesGenerated.get() * 1000.0 / elapsedMs);
+    params.putDouble("disconnects", disconnects.get());
+    return params;
+  }
+
+  private void connect(Device device) {
+    synchronized (this) {
+      device.link = CompletableSubject.create();
+      device.pending = null;
+      if (options.disconnectEveryMs > 0) {
+        long connectedMs = (long) (-Math.log(1 - random.nextDouble()) * options.disconnectEveryMs);
+        device.pending = scheduler.scheduleDirect(() -> disconnect(device, true), connectedMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    listener.onConnected(device.id, Collections.unmodifiableSet(options.dataTypes));
+  }
+
+  private void disconnect(Device device, boolean reconnect) {
+    CompletableSubject link;
+    synchronized (this) {
+      link = device.link;
+      device.link = null;
+      if (reconnect) {
+        device.pending = scheduler.scheduleDirect(() -> connect(device), options.reconnectDelayMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (link == null) {
+      return;
+    }
+    disconnects.incrementAndGet();
+    listener.onDisconnected(device.id);
+    link.onError(new IllegalStateException("Simulated disconnect of " + device.id));
+  }
+
+  @Override
+  public Single<PolarSensorSetting> requestStreamSettings(String id, PolarBleApi.PolarDeviceDataType dataType) {
+    Map<PolarSensorSetting.SettingType, Set<Integer>> settings = new EnumMap<>(PolarSensorSetting.SettingType.class);
+    switch (dataType) {
+      case ECG:
+        settings.put(PolarSensorSetting.SettingType.SAMPLE_RATE, Collections.singleton(ECG_RATE));
+        settings.put(PolarSensorSetting.SettingType.RESOLUTION, Collections.singleton(14));
+        break;
+      case ACC:
+        settings.put(PolarSensorSetting.SettingType.SAMPLE_RATE, new HashSet<>(Arrays.asList(25, 50, 100, 200)));
+        settings.put(PolarSensorSetting.SettingType.RESOLUTION, Collections.singleton(16));
+        settings.put(PolarSensorSetting.SettingType.RANGE, new HashSet<>(Arrays.asList(2, 4, 8)));
+        break;
+      case PPG:
+        settings.put(PolarSensorSetting.SettingType.SAMPLE_RATE, Collections.singleton(PPG_RATE));
+        settings.put(PolarSensorSetting.SettingType.RESOLUTION, Collections.singleton(22));
+        settings.put(PolarSensorSetting.SettingType.CHANNELS, Collections.singleton(4));
+        break;
+      default:
+        return Single.error(new IllegalArgumentException(dataType + " has no settings"));
+    }
+    return Single.just(new PolarSensorSetting(settings));
+  }
+
+  @Override
+  public Flowable<PolarHrData> startHrStreaming(String id) {
+    Device device = devices.get(id);
+    SessionReplay.Track track = replay != null ? replay.track(PolarBleApi.PolarDeviceDataType.HR) : null;
+    long[] index = {0};
+    if (track != null) {
+      return stream(device, track.packetPeriodNanos(HR_PERIOD_NANOS),
+              () -> track.hr((int) (index[0]++ % track.size())), 1);
+    }
+    return stream(device, HR_PERIOD_NANOS, () -> {
+      double t = (index[0]++) * HR_PERIOD_NANOS / 1e9;
+      int hr = (int) Math.round(heartRate(device, t));
+      List<Integer> rrs = new ArrayList<>(1);
+      rrs.add(60000 / hr);
+      List<PolarHrData.PolarHrSample> samples = new ArrayList<>(1);
+      samples.add(new PolarHrData.PolarHrSample(hr, rrs, true, true, true));
+      return new PolarHrData(samples);
+    }, 1);
+  }
+
+  @Override
+  public Flowable<PolarEcgData> startEcgStreaming(String id, PolarSensorSetting setting) {
+    Device device = devices.get(id);
+    int rate = sampleRate(setting, ECG_RATE);
+    return stream(device, PolarBleApi.PolarDeviceDataType.ECG, rate, ECG_PACKET_SAMPLES,
+            (t, values) -> values[0] = (int) Math.round(ecg(device, t)),
+            1, batch -> {
+              List<PolarEcgData.PolarEcgDataSample> samples = new ArrayList<>(batch.size);
+              for (int i = 0; i < batch.size; i++) {
+                samples.add(new PolarEcgData.PolarEcgDataSample(batch.timeStamps[i], batch.channels[0][i]));
+              }
+              return new PolarEcgData(samples, batch.timeStamps[batch.size - 1]);
+            });
+  }
+
+  @Override
+  public Flowable<PolarAccelerometerData> startAccStreaming(String id, PolarSensorSetting setting) {
+    Device device = devices.get(id);
+    int rate = sampleRate(setting, 50);
+    return stream(device, PolarBleApi.PolarDeviceDataType.ACC, rate, ACC_PACKET_SAMPLES,
+            (t, values) -> {
+              values[0] = (int) Math.round(20 * Math.sin(2 * Math.PI * 1.1 * t) + random.nextGaussian() * 3);
+              values[1] = (int) Math.round(-1000 + 30 * Math.sin(2 * Math.PI * 0.3 * t) + random.nextGaussian() * 3);
+              values[2] = (int) Math.round(15 * Math.sin(2 * Math.PI * 2 * t) + random.nextGaussian() * 3);
+            },
+            3, batch -> {
+              List<PolarAccelerometerData.PolarAccelerometerDataSample> samples = new ArrayList<>(batch.size);
+              for (int i = 0; i < batch.size; i++) {
+                samples.add(new PolarAccelerometerData.PolarAccelerometerDataSample(batch.timeStamps[i],
+                        batch.channels[0][i], batch.channels[1][i], batch.channels[2][i]));
+              }
+              return new PolarAccelerometerData(samples, batch.timeStamps[batch.size - 1]);
+            });
+  }
+
+  @Override
+  public Flowable<PolarPpgData> startPpgStreaming(String id, PolarSensorSetting setting) {
+    Device device = devices.get(id);
+    int rate = sampleRate(setting, PPG_RATE);
+    return stream(device, PolarBleApi.PolarDeviceDataType.PPG, rate, PPG_PACKET_SAMPLES,
+            (t, values) -> {
+              double pulse = pulse(device, t - 0.25, 0.35, 0.08);
+              for (int c = 0; c < 3; c++) {
+                values[c] = (int) Math.round(250000 - 8000 * pulse + random.nextGaussian() * 50);
+              }
+              values[3] = 2000;
+            },
+            4, batch -> {
+              List<PolarPpgData.PolarPpgSample> samples = new ArrayList<>(batch.size);
+              for (int i = 0; i < batch.size; i++) {
+                List<Integer> channels = new ArrayList<>(batch.channelCount());
+                for (int[] values : batch.channels) {
+                  channels.add(values[i]);
+                }
+                samples.add(new PolarPpgData.PolarPpgSample(batch.timeStamps[i], channels));
+              }
+              return new PolarPpgData(samples, PolarPpgData.PpgDataType.PPG3_AMBIENT1);
+            });
+  }
+
+  @Override
+  public Flowable<PolarPpiData> startPpiStreaming(String id) {
+    Device device = devices.get(id);
+    return stream(device, PolarBleApi.PolarDeviceDataType.PPI, 1, 1,
+            (t, values) -> {
+              int hr = (int) Math.round(heartRate(device, t));
+              values[0] = 60000 / hr;
+              values[1] = 10;
+              values[2] = hr;
+              values[3] = 0;
+              values[4] = 1;
+              values[5] = 1;
+            },
+            6, batch -> {
+              List<PolarPpiData.PolarPpiSample> samples = new ArrayList<>(batch.size);
+              for (int i = 0; i < batch.size; i++) {
+                int[][] c = batch.channels;
+                samples.add(new PolarPpiData.PolarPpiSample(c[0][i], c[1][i], c[2][i], c[3][i] != 0, c[4][i] != 0, c[5][i] != 0));
+              }
+              return new PolarPpiData(samples);
+            });
+  }
+
+  private interface SampleFunction {
+    void sample(double timeSeconds, int[] values);
+  }
+
+  private interface PacketFunction<T> {
+    T packet(SampleBatch batch);
+  }
+
+  /** Packets of synthetic samples, or of the recorded track of the data type when replaying. */
+  private <T> Flowable<T> stream(Device device, PolarBleApi.PolarDeviceDataType dataType, int rate, int packetSamples,
+                                 SampleFunction signal, int channelCount, PacketFunction<T> toPacket) {
+    SessionReplay.Track track = replay != null ? replay.track(dataType) : null;
+    if (track != null) {
+      long periodNanos = track.packetPeriodNanos(TimeUnit.SECONDS.toNanos(packetSamples) / rate);
+      long loopNanos = track.lastTime > track.firstTime ? track.lastTime - track.firstTime + periodNanos : 0;
+      long[] index = {0};
+      long startNanos = sensorNanos();
+      return stream(device, periodNanos, () -> {
+        int packet = (int) (index[0] % track.size());
+        long offset = startNanos - track.firstTime + (index[0]++ / track.size()) * loopNanos;
+        SampleBatch recorded = track.batch(packet);
+        long[] timeStamps = new long[recorded.size];
+        for (int i = 0; i < recorded.size; i++) {
+          timeStamps[i] = recorded.timeStamps[i] == 0 ? 0 : recorded.timeStamps[i] + offset;
+        }
+        return toPacket.packet(new SampleBatch(timeStamps, recorded.channels, recorded.size));
+      }, packetSamples);
+    }
+    long samplePeriodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    SampleBatcher batcher = new SampleBatcher(channelCount, packetSamples);
+    int[] values = new int[channelCount];
+    long[] index = {0};
+    long startNanos = sensorNanos();
+    boolean timed = dataType != PolarBleApi.PolarDeviceDataType.PPI;
+    return stream(device, samplePeriodNanos * packetSamples, () -> {
+      for (int i = 0; i < packetSamples; i++) {
+        long sampleNanos = (index[0]++) * samplePeriodNanos;
+        signal.sample(sampleNanos / 1e9, values);
+        batcher.add(timed ? startNanos + sampleNanos : 0, values);
+      }
+      return toPacket.packet(batcher.drain());
+    }, packetSamples);
+  }
+
+  /**
+   * Emits a packet every period, sped up by the simulation speed, until the device
+   * disconnects. Lost packets are still generated so the signal keeps its timing.
+   */
+  private <T> Flowable<T> stream(@Nullable Device device, long periodNanos, Supplier<T> nextPacket, int packetSamples) {
+    CompletableSubject link;
+    synchronized (this) {
+      link = device != null ? device.link : null;
+    }
+    if (link == null) {
+      return Flowable.error(new IllegalStateException("Simulated device is not connected"));
+    }
+    long scaledNanos = Math.max(1, (long) (periodNanos / options.speed));
+    return Flowable.interval(scaledNanos, scaledNanos, TimeUnit.NANOSECONDS, scheduler)
+            .onBackpressureDrop()
+            .map(tick -> nextPacket.get())
+            .filter(packet -> {
+              packetsGenerated.incrementAndGet();
+              if (options.packetLoss > 0 && random.nextDouble() < options.packetLoss) {
+                packetsLost.incrementAndGet();
+                return false;
+              }
+              samplesGenerated.addAndGet(packetSamples);
+              return true;
+            })
+            .mergeWith(link);
+  }
+
+  /** Sensor clock of the devices, running at the simulation speed. */
+  private long sensorNanos() {
+    return sensorEpochNanos + (long) ((System.nanoTime() - sensorEpochNanos) * options.speed);
+  }
+
+  private double heartRate(Device device, double t) {
+    return 62 + 6 * Math.sin(2 * Math.PI * (t / 30 + device.phase));
+  }
+
+  /** Gaussian pulse of the given height and width at the given phase of every beat. */
+  private double pulse(Device device, double t, double beatPhase, double widthSeconds) {
+    double beat = 60 / heartRate(device, t);
+    double offset = ((t + device.phase * beat) % beat + beat) % beat - beatPhase * beat;
+    return Math.exp(-(offset * offset) / (2 * widthSeconds * widthSeconds));
+  }
+
+  /** ECG in microvolts: Q, R and S waves followed by a T wave. */
+  private double ecg(Device device, double t) {
+    return 1100 * pulse(device, t, 0.2, 0.012)
+            - 150 * pulse(device, t, 0.17, 0.008)
+            - 200 * pulse(device, t, 0.23, 0.01)
+            + 250 * pulse(device, t, 0.45, 0.05)
+            + random.nextGaussian() * 15;
+  }
+
+  private static int sampleRate(PolarSensorSetting setting, int fallback) {
+    Set<Integer> rates = setting.getSettings().get(PolarSensorSetting.SettingType.SAMPLE_RATE);
+    return rates == null || rates.isEmpty() ? fallback : Collections.max(rates);
+  }
+}
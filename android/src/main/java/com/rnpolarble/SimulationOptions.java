@@ -0,0 +1,71 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.polar.sdk.api.PolarBleApi;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Settings of a simulation given from JS with {@code startSimulation}.
+ */
+final class SimulationOptions {
+  /** Number of virtual devices. */
+  final int devices;
+  /** How much faster than real time sensor data is produced. */
+  final double speed;
+  /** Share of packets that are dropped, between 0 and 1. */
+  final double packetLoss;
+  /** Mean time a device stays connected, 0 keeps devices connected. */
+  final int disconnectEveryMs;
+  /** Time a dropped device takes to connect again. */
+  final int reconnectDelayMs;
+  /** Data types the devices offer. */
+  final Set<PolarBleApi.PolarDeviceDataType> dataTypes;
+  /** Starts every data type as soon as a device connects. */
+  final boolean autoStart;
+  /** Session recording to replay instead of synthetic signals, null for synthetic. */
+  @Nullable
+  final String replayPath;
+
+  SimulationOptions(int devices, double speed, double packetLoss, int disconnectEveryMs, int reconnectDelayMs,
+                    Set<PolarBleApi.PolarDeviceDataType> dataTypes, boolean autoStart, @Nullable String replayPath) {
+    this.devices = devices;
+    this.speed = speed;
+    this.packetLoss = packetLoss;
+    this.disconnectEveryMs = disconnectEveryMs;
+    this.reconnectDelayMs = reconnectDelayMs;
+    this.dataTypes = dataTypes;
+    this.autoStart = autoStart;
+    this.replayPath = replayPath;
+  }
+
+  static SimulationOptions fromReadableMap(@Nullable ReadableMap map) {
+    Set<PolarBleApi.PolarDeviceDataType> dataTypes = EnumSet.of(
+            PolarBleApi.PolarDeviceDataType.HR,
+            PolarBleApi.PolarDeviceDataType.ECG,
+            PolarBleApi.PolarDeviceDataType.ACC,
+            PolarBleApi.PolarDeviceDataType.PPG,
+            PolarBleApi.PolarDeviceDataType.PPI);
+    if (ReadableMaps.has(map, "dataTypes")) {
+      ReadableArray names = map.getArray("dataTypes");
+      dataTypes = EnumSet.noneOf(PolarBleApi.PolarDeviceDataType.class);
+      for (int i = 0; i < names.size(); i++) {
+        dataTypes.add(PolarBleApi.PolarDeviceDataType.valueOf(names.getString(i).toUpperCase(Locale.ROOT)));
+      }
+    }
+    return new SimulationOptions(
+            Math.max(1, ReadableMaps.getInt(map, "devices", 1)),
+            Math.max(0.01, ReadableMaps.getDouble(map, "speed", 1)),
+            Math.min(1, Math.max(0, ReadableMaps.getDouble(map, "packetLoss", 0))),
+            Math.max(0, ReadableMaps.getInt(map, "disconnectEveryMs", 0)),
+            Math.max(0, ReadableMaps.getInt(map, "reconnectDelayMs", 2000)),
+            dataTypes,
+            ReadableMaps.getBoolean(map, "autoStart", true),
+            ReadableMaps.has(map, "replayPath") ? map.getString("replayPath") : null);
+  }
+}
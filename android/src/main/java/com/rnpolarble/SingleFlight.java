@@ -0,0 +1,45 @@
+package com.rnpolarble;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Supplier;
+
+/**
+ * Coalesces identical requests to a device: while a request with the same key is in flight,
+ * later callers subscribe to it instead of starting another BLE round trip and all get its
+ * result. Every request ends after its timeout, so a stalled device does not keep it, or the
+ * callers waiting on it, around. A request is reference counted: once every caller has
+ * disposed it is cancelled, and the next caller starts a new one.
+ */
+final class SingleFlight {
+  private final Map<String, Single<?>> inFlight = new ConcurrentHashMap<>();
+  private final Scheduler timeoutScheduler;
+
+  SingleFlight(Scheduler timeoutScheduler) {
+    this.timeoutScheduler = timeoutScheduler;
+  }
+
+  /** The in flight request for key, or a new one from request. */
+  @SuppressWarnings("unchecked")
+  <T> Single<T> run(String key, long timeoutMs, Supplier<Single<T>> request) {
+    return Single.defer(() -> (Single<T>) inFlight.computeIfAbsent(key, k -> flight(k, timeoutMs, request)));
+  }
+
+  private <T> Single<T> flight(String key, long timeoutMs, Supplier<Single<T>> request) {
+    AtomicReference<Single<T>> self = new AtomicReference<>();
+    Single<T> flight = Single.defer(request)
+            .timeout(timeoutMs, TimeUnit.MILLISECONDS, timeoutScheduler)
+            // Only this flight, a caller joining as it ends may already have started the next.
+            .doFinally(() -> inFlight.remove(key, self.get()))
+            .toObservable()
+            .share()
+            .singleOrError();
+    self.set(flight);
+    return flight;
+  }
+}
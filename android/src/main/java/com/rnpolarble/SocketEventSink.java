@@ -0,0 +1,122 @@
+package com.rnpolarble;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Serves events as JSON lines on a local socket in the abstract namespace, for example read
+ * with {@code adb forward tcp:8765 localabstract:<name>}. Every connected client receives
+ * all events from the moment it connects; clients that fail a write are dropped.
+ */
+final class SocketEventSink extends QueuedEventSink {
+  private final String name;
+  private final LocalServerSocket server;
+  private final List<LocalSocket> clients = new ArrayList<>();
+  private final Thread acceptor;
+  private volatile boolean released = false;
+
+  SocketEventSink(String name, int capacity) throws IOException {
+    super("RnPolarBle-socket-sink", capacity);
+    this.name = name;
+    server = new LocalServerSocket(name);
+    acceptor = new Thread(this::accept, "RnPolarBle-socket-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    start();
+  }
+
+  String getName() {
+    return name;
+  }
+
+  private void accept() {
+    while (true) {
+      try {
+        LocalSocket client = server.accept();
+        if (released) {
+          closeQuietly(client);
+          return;
+        }
+        synchronized (clients) {
+          clients.add(client);
+        }
+      } catch (IOException e) {
+        // The server socket was closed.
+        return;
+      }
+    }
+  }
+
+  @Override
+  void write(byte[] line) {
+    synchronized (clients) {
+      Iterator<LocalSocket> iterator = clients.iterator();
+      while (iterator.hasNext()) {
+        LocalSocket client = iterator.next();
+        try {
+          client.getOutputStream().write(line);
+        } catch (IOException e) {
+          iterator.remove();
+          closeQuietly(client);
+        }
+      }
+    }
+  }
+
+  @Override
+  void flush() {
+    synchronized (clients) {
+      Iterator<LocalSocket> iterator = clients.iterator();
+      while (iterator.hasNext()) {
+        LocalSocket client = iterator.next();
+        try {
+          OutputStream out = client.getOutputStream();
+          out.flush();
+        } catch (IOException e) {
+          iterator.remove();
+          closeQuietly(client);
+        }
+      }
+    }
+  }
+
+  @Override
+  void release() {
+    released = true;
+    // Closing the server socket does not wake up a blocked accept, connecting to it does.
+    LocalSocket wakeUp = new LocalSocket();
+    try {
+      wakeUp.connect(new LocalSocketAddress(name));
+    } catch (IOException e) {
+      // The acceptor is not waiting.
+    }
+    closeQuietly(wakeUp);
+    try {
+      server.close();
+    } catch (IOException e) {
+      Log.e(RnPolarBleModule.TAG, "Could not close socket " + name + ": " + e.getLocalizedMessage());
+    }
+    synchronized (clients) {
+      for (LocalSocket client : clients) {
+        closeQuietly(client);
+      }
+      clients.clear();
+    }
+  }
+
+  private static void closeQuietly(LocalSocket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Already gone.
+    }
+  }
+}
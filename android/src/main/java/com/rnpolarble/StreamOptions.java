@@ -0,0 +1,79 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * Per stream type settings given from JS with {@code setStreamOptions}.
+ */
+final class StreamOptions {
+  enum PayloadFormat {
+    SAMPLES,
+    COLUMNAR,
+    PACKED
+  }
+
+  enum BackpressurePolicy {
+    /** Keeps pending packets up to the capacity, then drops new ones. */
+    BUFFER,
+    /** Keeps the newest packets up to the capacity. */
+    DROP_OLDEST,
+    /** Keeps only the newest packet. */
+    LATEST
+  }
+
+  static final StreamOptions DEFAULT =
+          new StreamOptions(0, 0, PayloadFormat.SAMPLES, BackpressurePolicy.BUFFER, 0, 0, 0, 1000);
+
+  /** Flush interval for batched events, 0 emits one event per SDK packet. */
+  final int batchWindowMs;
+  /** Flush as soon as this many samples are pending, 0 flushes on the window only. */
+  final int batchMaxSamples;
+  final PayloadFormat payloadFormat;
+  final BackpressurePolicy backpressure;
+  /** Samples held while the conversion thread is behind, 0 for no limit. */
+  final int bufferCapacity;
+  /** Rate in Hz the samples are decimated to before they are emitted, 0 keeps the device rate. */
+  final int outputRate;
+  /** Length of the RR window HRV is computed over, 0 disables HRV. Used by the HR stream. */
+  final int hrvWindowMs;
+  /** How often HRV_DATA is emitted while HRV is enabled. */
+  final int hrvIntervalMs;
+
+  StreamOptions(int batchWindowMs, int batchMaxSamples, PayloadFormat payloadFormat,
+                BackpressurePolicy backpressure, int bufferCapacity, int outputRate,
+                int hrvWindowMs, int hrvIntervalMs) {
+    this.batchWindowMs = batchWindowMs;
+    this.batchMaxSamples = batchMaxSamples;
+    this.payloadFormat = payloadFormat;
+    this.backpressure = backpressure;
+    this.bufferCapacity = bufferCapacity;
+    this.outputRate = outputRate;
+    this.hrvWindowMs = hrvWindowMs;
+    this.hrvIntervalMs = hrvIntervalMs;
+  }
+
+  boolean isBatched() {
+    return batchWindowMs > 0 || batchMaxSamples > 0;
+  }
+
+  static StreamOptions fromReadableMap(@Nullable ReadableMap map, StreamOptions defaults) {
+    if (map == null) {
+      return defaults;
+    }
+    return new StreamOptions(
+            getInt(map, "batchWindowMs", defaults.batchWindowMs),
+            getInt(map, "batchMaxSamples", defaults.batchMaxSamples),
+            ReadableMaps.getEnum(map, "payloadFormat", defaults.payloadFormat),
+            ReadableMaps.getEnum(map, "backpressure", defaults.backpressure),
+            getInt(map, "bufferCapacity", defaults.bufferCapacity),
+            getInt(map, "outputRate", defaults.outputRate),
+            getInt(map, "hrvWindowMs", defaults.hrvWindowMs),
+            Math.max(1, getInt(map, "hrvIntervalMs", defaults.hrvIntervalMs)));
+  }
+
+  private static int getInt(ReadableMap map, String key, int fallback) {
+    return Math.max(0, ReadableMaps.getInt(map, key, fallback));
+  }
+}
@@ -0,0 +1,156 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.PolarBleApi;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.disposables.Disposable;
+
+/**
+ * Active stream subscriptions and ready data types, both kept per device so several
+ * sensors can stream the same data type at once.
+ */
+final class StreamRegistry {
+  private final Map<StreamKey, Disposable> streams = new ConcurrentHashMap<>();
+  private final Map<StreamKey, StreamStats> stats = new ConcurrentHashMap<>();
+  private final Map<String, Set<PolarBleApi.PolarDeviceDataType>> readyTypes = new ConcurrentHashMap<>();
+
+  void setReady(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Set<PolarBleApi.PolarDeviceDataType> types = readyTypes.get(deviceId);
+    if (types == null) {
+      Set<PolarBleApi.PolarDeviceDataType> created = Collections.newSetFromMap(new ConcurrentHashMap<>());
+      types = readyTypes.putIfAbsent(deviceId, created);
+      if (types == null) {
+        types = created;
+      }
+    }
+    types.add(dataType);
+  }
+
+  void clearReady(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Set<PolarBleApi.PolarDeviceDataType> types = readyTypes.get(deviceId);
+    if (types != null) {
+      types.remove(dataType);
+    }
+  }
+
+  boolean isReady(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Set<PolarBleApi.PolarDeviceDataType> types = readyTypes.get(deviceId);
+    return types != null && types.contains(dataType);
+  }
+
+  boolean isActive(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    return streams.containsKey(new StreamKey(deviceId, dataType));
+  }
+
+  /**
+   * Registers a stream about to start and returns the container its subscriptions go into, or
+   * null when the stream is already registered. Checking and registering is one step, so two
+   * concurrent starts can not both subscribe.
+   */
+  @Nullable
+  CompositeDisposable reserve(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    CompositeDisposable stream = new CompositeDisposable();
+    return streams.putIfAbsent(new StreamKey(deviceId, dataType), stream) == null ? stream : null;
+  }
+
+  /**
+   * Forgets a stream that failed or completed by itself so it can be started again, unless
+   * it was replaced by another one meanwhile.
+   */
+  void ended(String deviceId, PolarBleApi.PolarDeviceDataType dataType, Disposable disposable) {
+    disposable.dispose();
+    streams.remove(new StreamKey(deviceId, dataType), disposable);
+  }
+
+  void stop(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    Disposable disposable = streams.remove(new StreamKey(deviceId, dataType));
+    if (disposable != null) {
+      disposable.dispose();
+    }
+  }
+
+  StreamStats stats(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+    StreamKey key = new StreamKey(deviceId, dataType);
+    StreamStats streamStats = stats.get(key);
+    if (streamStats == null) {
+      StreamStats created = new StreamStats();
+      streamStats = stats.putIfAbsent(key, created);
+      if (streamStats == null) {
+        streamStats = created;
+      }
+    }
+    return streamStats;
+  }
+
+  WritableArray statsToJsArray() {
+    WritableArray array = Arguments.createArray();
+    for (Map.Entry<StreamKey, StreamStats> entry : stats.entrySet()) {
+      WritableMap params = entry.getValue().toJsDictionary();
+      params.putString("id", entry.getKey().deviceId);
+      params.putString("dataType", entry.getKey().dataType.name());
+      array.pushMap(params);
+    }
+    return array;
+  }
+
+  /** Stops every stream of a device and forgets its ready data types. */
+  void removeDevice(String deviceId) {
+    readyTypes.remove(deviceId);
+    Iterator<Map.Entry<StreamKey, Disposable>> iterator = streams.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<StreamKey, Disposable> entry = iterator.next();
+      if (entry.getKey().deviceId.equals(deviceId)) {
+        iterator.remove();
+        entry.getValue().dispose();
+      }
+    }
+  }
+
+  void disposeAll() {
+    Iterator<Disposable> iterator = streams.values().iterator();
+    while (iterator.hasNext()) {
+      Disposable disposable = iterator.next();
+      iterator.remove();
+      disposable.dispose();
+    }
+    readyTypes.clear();
+  }
+
+  private static final class StreamKey {
+    final String deviceId;
+    final PolarBleApi.PolarDeviceDataType dataType;
+
+    StreamKey(String deviceId, PolarBleApi.PolarDeviceDataType dataType) {
+      this.deviceId = deviceId;
+      this.dataType = dataType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof StreamKey)) {
+        return false;
+      }
+      StreamKey other = (StreamKey) o;
+      return deviceId.equals(other.deviceId) && dataType == other.dataType;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * deviceId.hashCode() + dataType.hashCode();
+    }
+  }
+}
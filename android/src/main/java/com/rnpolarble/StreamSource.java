@@ -0,0 +1,30 @@
+package com.rnpolarble;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarHrData;
+import com.polar.sdk.api.model.PolarPpgData;
+import com.polar.sdk.api.model.PolarPpiData;
+import com.polar.sdk.api.model.PolarSensorSetting;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * The part of the SDK the streams are started from, so streams of simulated devices run
+ * through the same pipeline as real ones.
+ */
+interface StreamSource {
+  Single<PolarSensorSetting> requestStreamSettings(String id, PolarBleApi.PolarDeviceDataType dataType);
+
+  Flowable<PolarHrData> startHrStreaming(String id);
+
+  Flowable<PolarEcgData> startEcgStreaming(String id, PolarSensorSetting setting);
+
+  Flowable<PolarAccelerometerData> startAccStreaming(String id, PolarSensorSetting setting);
+
+  Flowable<PolarPpgData> startPpgStreaming(String id, PolarSensorSetting setting);
+
+  Flowable<PolarPpiData> startPpiStreaming(String id);
+}
@@ -0,0 +1,100 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of one device stream, kept across restarts of the stream.
+ *
+ * <p>Latencies are measured on {@link System#nanoTime()}: queue is from the packet arriving
+ * from the SDK to its conversion, emit is from the oldest packet of an event arriving to the
+ * event being emitted. The sensor clock cannot be compared with the phone clock directly, so
+ * sensor latency is the delay of a packet relative to the quickest packet seen on the stream.
+ */
+final class StreamStats {
+  private final AtomicLong packetsIn = new AtomicLong();
+  private final AtomicLong samplesIn = new AtomicLong();
+  private final AtomicLong samplesOut = new AtomicLong();
+  private final AtomicLong samplesDropped = new AtomicLong();
+  private final AtomicLong eventsOut = new AtomicLong();
+  private final AtomicLong bytesOut = new AtomicLong();
+  private final LatencyHistogram sensorLatency = new LatencyHistogram();
+  private final LatencyHistogram queueLatency = new LatencyHistogram();
+  private final LatencyHistogram emitLatency = new LatencyHistogram();
+  private long minSensorOffsetNanos = Long.MAX_VALUE;
+  private volatile double sampleRate = 0;
+
+  void received(int samples) {
+    packetsIn.incrementAndGet();
+    samplesIn.addAndGet(samples);
+  }
+
+  /** Called on the conversion thread for every packet taken off the queue. */
+  void converted(int samples, long receivedNanos, long sensorTimeStamp) {
+    long now = System.nanoTime();
+    samplesOut.addAndGet(samples);
+    queueLatency.recordNanos(now - receivedNanos);
+    if (sensorTimeStamp != 0) {
+      long offset = receivedNanos - sensorTimeStamp;
+      if (offset < minSensorOffsetNanos) {
+        minSensorOffsetNanos = offset;
+      }
+      sensorLatency.recordNanos(offset - minSensorOffsetNanos);
+    }
+  }
+
+  /** The rate samples are emitted at once decimated, set when the stream starts. */
+  void setSampleRate(double sampleRate) {
+    this.sampleRate = sampleRate;
+  }
+
+  void dropped(int samples) {
+    samplesDropped.addAndGet(samples);
+  }
+
+  void emitted(long estimatedBytes, long oldestReceivedNanos) {
+    eventsOut.incrementAndGet();
+    bytesOut.addAndGet(estimatedBytes);
+    if (oldestReceivedNanos != 0) {
+      emitLatency.recordNanos(System.nanoTime() - oldestReceivedNanos);
+    }
+  }
+
+  long samplesIn() {
+    return samplesIn.get();
+  }
+
+  long samplesOut() {
+    return samplesOut.get();
+  }
+
+  long samplesDropped() {
+    return samplesDropped.get();
+  }
+
+  LatencyHistogram emitLatency() {
+    return emitLatency;
+  }
+
+  long bufferedSamples() {
+    return samplesIn.get() - samplesOut.get() - samplesDropped.get();
+  }
+
+  WritableMap toJsDictionary() {
+    WritableMap params = Arguments.createMap();
+    params.putDouble("packetsIn", packetsIn.get());
+    params.putDouble("samplesIn", samplesIn.get());
+    params.putDouble("samplesOut", samplesOut.get());
+    params.putDouble("droppedSamples", samplesDropped.get());
+    params.putDouble("bufferedSamples", bufferedSamples());
+    params.putDouble("eventsOut", eventsOut.get());
+    params.putDouble("estimatedBytesOut", bytesOut.get());
+    params.putDouble("sampleRate", sampleRate);
+    params.putMap("sensorLatency", sensorLatency.toJsDictionary());
+    params.putMap("queueLatency", queueLatency.toJsDictionary());
+    params.putMap("emitLatency", emitLatency.toJsDictionary());
+    return params;
+  }
+}
@@ -0,0 +1,145 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.util.List;
+
+/**
+ * One declarative rule over the HR stream of a device. A rule fires once its condition has
+ * held for durationMs and clears once the condition is gone again, for thresholds only past
+ * the hysteresis band, so a value hovering around the limit does not fire over and over.
+ *
+ * <p>Not thread safe, samples and ticks are expected on the conversion thread.
+ */
+final class TriggerRule {
+  enum Type {
+    /** hr or rr above (or below) value. */
+    THRESHOLD("threshold"),
+    /** Contact lost on a strap that reports contact. */
+    CONTACT_LOST("contactLost"),
+    /** No RR interval while HR samples keep arriving. */
+    RR_GAP("rrGap"),
+    /** No HR samples at all. */
+    SIGNAL_LOST("signalLost");
+
+    final String key;
+
+    Type(String key) {
+      this.key = key;
+    }
+
+    @Nullable
+    static Type fromKey(String key) {
+      for (Type type : values()) {
+        if (type.key.equals(key)) {
+          return type;
+        }
+      }
+      return null;
+    }
+  }
+
+  interface Listener {
+    void onTransition(TriggerRule rule, boolean fired, double value);
+  }
+
+  final String ruleId;
+  final String deviceId;
+  final Type type;
+  /** For thresholds, "hr" or "rr". */
+  final String metric;
+  private final boolean below;
+  private final double limit;
+  private final double hysteresis;
+  private final long durationMs;
+
+  private boolean active = false;
+  private long pendingSinceMs = -1;
+  private long lastSampleMs;
+  private long lastRrMs;
+
+  TriggerRule(String ruleId, String deviceId, Type type, String metric, boolean below, double limit,
+              double hysteresis, long durationMs, long nowMs) {
+    this.ruleId = ruleId;
+    this.deviceId = deviceId;
+    this.type = type;
+    this.metric = metric;
+    this.below = below;
+    this.limit = limit;
+    this.hysteresis = Math.abs(hysteresis);
+    this.durationMs = durationMs;
+    this.lastSampleMs = nowMs;
+    this.lastRrMs = nowMs;
+  }
+
+  void onSample(long timeMs, PolarHrData.PolarHrSample sample, Listener listener) {
+    List<Integer> rrs = sample.getRrsMs();
+    int rrCount = rrs.size();
+    long silentMs = timeMs - lastSampleMs;
+    long rrGapMs = timeMs - lastRrMs;
+    lastSampleMs = timeMs;
+    if (rrCount > 0) {
+      lastRrMs = timeMs;
+    }
+    switch (type) {
+      case THRESHOLD:
+        if ("rr".equals(metric)) {
+          for (int i = 0; i < rrCount; i++) {
+            threshold(timeMs, rrs.get(i), listener);
+          }
+        } else {
+          threshold(timeMs, sample.getHr(), listener);
+        }
+        break;
+      case CONTACT_LOST:
+        boolean lost = sample.getContactStatusSupported() && !sample.getContactStatus();
+        update(timeMs, lost, !lost, sample.getHr(), listener);
+        break;
+      case RR_GAP:
+        update(timeMs, rrCount == 0 && rrGapMs >= durationMs, rrCount > 0, rrGapMs, listener);
+        break;
+      case SIGNAL_LOST:
+        update(timeMs, false, true, silentMs, listener);
+        break;
+    }
+  }
+
+  /** Checks rules that fire on missing data, called periodically. */
+  void onTick(long timeMs, Listener listener) {
+    if (type == Type.SIGNAL_LOST && !active && timeMs - lastSampleMs >= durationMs) {
+      active = true;
+      listener.onTransition(this, true, timeMs - lastSampleMs);
+    }
+  }
+
+  private void threshold(long timeMs, double value, Listener listener) {
+    boolean over = below ? value < limit : value > limit;
+    boolean clear = below ? value >= limit + hysteresis : value <= limit - hysteresis;
+    update(timeMs, over, clear, value, listener);
+  }
+
+  private void update(long timeMs, boolean over, boolean clear, double value, Listener listener) {
+    if (active) {
+      if (clear) {
+        active = false;
+        pendingSinceMs = -1;
+        listener.onTransition(this, false, value);
+      }
+      return;
+    }
+    if (!over) {
+      pendingSinceMs = -1;
+      return;
+    }
+    if (pendingSinceMs < 0) {
+      pendingSinceMs = timeMs;
+    }
+    // RR gaps carry their duration in the condition already.
+    if (type == Type.RR_GAP || timeMs - pendingSinceMs >= durationMs) {
+      active = true;
+      listener.onTransition(this, true, value);
+    }
+  }
+}
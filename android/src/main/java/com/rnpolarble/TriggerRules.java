@@ -0,0 +1,176 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarHrData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigger rules registered from JS, kept per device and evaluated on the HR samples in the
+ * stream pipeline, so JS only hears about a rule firing or clearing instead of every sample.
+ */
+final class TriggerRules implements TriggerRule.Listener {
+  interface Listener {
+    void onTrigger(WritableMap trigger);
+  }
+
+  /** The rules of one device, an immutable array swapped on change like {@link Aggregations.Tap}. */
+  static final class Device {
+    private static final TriggerRule[] NO_RULES = new TriggerRule[0];
+
+    final String id;
+    private volatile TriggerRule[] rules = NO_RULES;
+    /** Set when the HR stream runs for the rules only, so no HR_DATA events are sent. */
+    volatile boolean samplesSuppressed = false;
+
+    Device(String id) {
+      this.id = id;
+    }
+
+    boolean isEmpty() {
+      return rules.length == 0;
+    }
+
+    private synchronized void add(TriggerRule rule) {
+      TriggerRule[] current = rules;
+      TriggerRule[] next = new TriggerRule[current.length + 1];
+      System.arraycopy(current, 0, next, 0, current.length);
+      next[current.length] = rule;
+      rules = next;
+    }
+
+    private synchronized boolean remove(TriggerRule rule) {
+      List<TriggerRule> next = new ArrayList<>(rules.length);
+      for (TriggerRule existing : rules) {
+        if (existing != rule) {
+          next.add(existing);
+        }
+      }
+      rules = next.toArray(NO_RULES);
+      return rules.length == 0;
+    }
+  }
+
+  private final PayloadFactory factory;
+  private final Listener listener;
+  private final Map<String, Device> devices = new ConcurrentHashMap<>();
+  private final Map<String, TriggerRule> rules = new ConcurrentHashMap<>();
+  private int nextRuleId = 1;
+
+  TriggerRules(PayloadFactory factory, Listener listener) {
+    this.factory = factory;
+    this.listener = listener;
+  }
+
+  synchronized Device device(String deviceId) {
+    Device device = devices.get(deviceId);
+    if (device == null) {
+      device = new Device(deviceId);
+      devices.put(deviceId, device);
+    }
+    return device;
+  }
+
+  synchronized String nextRuleId() {
+    return "rule-" + nextRuleId++;
+  }
+
+  boolean isEmpty() {
+    return rules.isEmpty();
+  }
+
+  void add(TriggerRule rule) {
+    rules.put(rule.ruleId, rule);
+    device(rule.deviceId).add(rule);
+  }
+
+  /** Removes a rule, returning its device when that has no rules left. */
+  @Nullable
+  Device remove(String ruleId) {
+    TriggerRule rule = rules.remove(ruleId);
+    Device device = rule != null ? devices.get(rule.deviceId) : null;
+    if (device == null) {
+      return null;
+    }
+    return device.remove(rule) ? device : null;
+  }
+
+  /** True while a device has rules, so its HR stream is restarted when it reconnects. */
+  boolean hasRules(String deviceId) {
+    Device device = devices.get(deviceId);
+    return device != null && !device.isEmpty();
+  }
+
+  boolean isSuppressed(String deviceId) {
+    Device device = devices.get(deviceId);
+    return device != null && device.samplesSuppressed;
+  }
+
+  /** Lets HR_DATA events of a device through again once JS starts the stream itself. */
+  void releaseSamples(String deviceId) {
+    Device device = devices.get(deviceId);
+    if (device != null) {
+      device.samplesSuppressed = false;
+    }
+  }
+
+  /**
+   * Keeps the HR stream of a device running for its rules without HR_DATA events. Returns
+   * false when the device has no rules and the stream can be stopped.
+   */
+  boolean suppressSamples(String deviceId) {
+    Device device = devices.get(deviceId);
+    if (device == null || device.isEmpty()) {
+      return false;
+    }
+    device.samplesSuppressed = true;
+    return true;
+  }
+
+  /** Evaluates the rules of a device on an HR packet received at timeNanos. */
+  void onHr(String deviceId, long timeNanos, PolarHrData polarHrData) {
+    Device device = devices.get(deviceId);
+    if (device == null) {
+      return;
+    }
+    TriggerRule[] current = device.rules;
+    if (current.length == 0) {
+      return;
+    }
+    long timeMs = timeNanos / 1000000;
+    List<PolarHrData.PolarHrSample> samples = polarHrData.getSamples();
+    for (int s = 0, sampleCount = samples.size(); s < sampleCount; s++) {
+      PolarHrData.PolarHrSample sample = samples.get(s);
+      for (TriggerRule rule : current) {
+        rule.onSample(timeMs, sample, this);
+      }
+    }
+  }
+
+  /** Evaluates the rules that fire on missing data. */
+  void tick(long timeNanos) {
+    long timeMs = timeNanos / 1000000;
+    for (Device device : devices.values()) {
+      for (TriggerRule rule : device.rules) {
+        rule.onTick(timeMs, this);
+      }
+    }
+  }
+
+  @Override
+  public void onTransition(TriggerRule rule, boolean fired, double value) {
+    WritableMap params = factory.createMap();
+    params.putString("rule", rule.ruleId);
+    params.putString("id", rule.deviceId);
+    params.putString("type", rule.type.key);
+    params.putString("state", fired ? "fired" : "cleared");
+    params.putDouble("value", value);
+    params.putDouble("timeStamp", System.currentTimeMillis());
+    listener.onTrigger(params);
+  }
+}
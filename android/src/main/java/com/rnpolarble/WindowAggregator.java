@@ -0,0 +1,135 @@
+package com.rnpolarble;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * One aggregation query over a channel of a stream. Samples are folded into running sums as
+ * they arrive and a result is produced whenever a sample falls past the current window, so
+ * memory and time per sample stay constant whatever the window length. Windows are aligned to
+ * multiples of their length on the sample clock; windows without samples produce nothing.
+ *
+ * <p>Not thread safe, samples are expected on the conversion thread.
+ */
+final class WindowAggregator {
+  enum Operator {
+    MEAN("mean"),
+    RMS("rms"),
+    MIN("min"),
+    MAX("max"),
+    COUNT_ABOVE("countAbove");
+
+    final String key;
+
+    Operator(String key) {
+      this.key = key;
+    }
+
+    @Nullable
+    static Operator fromKey(String key) {
+      for (Operator operator : values()) {
+        if (operator.key.equals(key)) {
+          return operator;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Channel index of the magnitude of the three channels of ACC. */
+  static final int MAGNITUDE = -1;
+
+  final String queryId;
+  final String deviceId;
+  final String dataType;
+  final String channelName;
+  private final int channel;
+  private final long windowNanos;
+  private final Set<Operator> operators;
+  private final double threshold;
+
+  private long windowStart = 0;
+  private int count = 0;
+  private double sum = 0;
+  private double sumSquares = 0;
+  private double min = 0;
+  private double max = 0;
+  private int above = 0;
+
+  WindowAggregator(String queryId, String deviceId, String dataType, String channelName, int channel,
+                   long windowMs, Set<Operator> operators, double threshold) {
+    this.queryId = queryId;
+    this.deviceId = deviceId;
+    this.dataType = dataType;
+    this.channelName = channelName;
+    this.channel = channel;
+    this.windowNanos = windowMs * 1000000;
+    this.operators = EnumSet.copyOf(operators);
+    this.threshold = threshold;
+  }
+
+  /** Adds a sample, returning the result of the window it closed or null. */
+  @Nullable
+  WritableMap add(long timeNanos, int[] values, PayloadFactory factory) {
+    WritableMap result = null;
+    if (count > 0 && (timeNanos - windowStart >= windowNanos || timeNanos < windowStart)) {
+      result = result(factory);
+      count = 0;
+    }
+    double value = channel == MAGNITUDE
+            ? Math.sqrt((double) values[0] * values[0] + (double) values[1] * values[1] + (double) values[2] * values[2])
+            : values[channel];
+    if (count == 0) {
+      windowStart = timeNanos - Math.floorMod(timeNanos, windowNanos);
+      sum = 0;
+      sumSquares = 0;
+      min = value;
+      max = value;
+      above = 0;
+    }
+    count++;
+    sum += value;
+    sumSquares += value * value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    if (value > threshold) {
+      above++;
+    }
+    return result;
+  }
+
+  private WritableMap result(PayloadFactory factory) {
+    WritableMap params = factory.createMap();
+    params.putString("query", queryId);
+    params.putString("id", deviceId);
+    params.putString("dataType", dataType);
+    params.putString("channel", channelName);
+    params.putDouble("timeStamp", windowStart);
+    params.putDouble("windowMs", windowNanos / 1000000.0);
+    params.putInt("count", count);
+    for (Operator operator : operators) {
+      switch (operator) {
+        case MEAN:
+          params.putDouble(operator.key, sum / count);
+          break;
+        case RMS:
+          params.putDouble(operator.key, Math.sqrt(sumSquares / count));
+          break;
+        case MIN:
+          params.putDouble(operator.key, min);
+          break;
+        case MAX:
+          params.putDouble(operator.key, max);
+          break;
+        case COUNT_ABOVE:
+          params.putInt(operator.key, above);
+          break;
+      }
+    }
+    return params;
+  }
+}
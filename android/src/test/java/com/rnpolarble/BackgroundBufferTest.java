@@ -0,0 +1,144 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BackgroundBufferTest {
+  private static final String[] CHANNELS = {"voltage"};
+
+  private final List<String> names = new ArrayList<>();
+  private final List<Object> params = new ArrayList<>();
+  private final EventSink target = (eventName, eventParams) -> {
+    names.add(eventName);
+    params.add(eventParams);
+  };
+
+  @Test
+  public void passesEventsOnWhileNotPaused() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1024, 10);
+    assertFalse(buffer.holdSamples("A", PolarEvent.ECG_DATA, CHANNELS, StreamOptions.PayloadFormat.SAMPLES, block(0, 10)));
+    buffer.onEvent(PolarEvent.DEVICE_CONNECTED.name(), "A");
+    assertEquals(1, names.size());
+  }
+
+  @Test
+  public void dropsTheOldestSamplesOfAnyStreamFirst() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 4096, 10);
+    buffer.pause();
+    // One block of a slow stream, then a fast stream filling the buffer many times over.
+    assertTrue(buffer.holdSamples("slow", PolarEvent.PPI_DATA, CHANNELS, StreamOptions.PayloadFormat.SAMPLES, block(0, 10)));
+    for (int i = 0; i < 200; i++) {
+      buffer.holdSamples("fast", PolarEvent.ECG_DATA, CHANNELS, StreamOptions.PayloadFormat.SAMPLES, block(i * 73, 73));
+    }
+    buffer.resume();
+
+    Map<String, ReadableMap> summaries = summaries();
+    assertEquals(10, (long) summaries.get("slow").getDouble("droppedSamples"));
+    assertEquals(0, (long) summaries.get("slow").getDouble("samples"));
+    ReadableMap fast = summaries.get("fast");
+    assertTrue(fast.getDouble("bytes") <= 4096);
+    assertEquals(200 * 73, (long) (fast.getDouble("samples") + fast.getDouble("droppedSamples")));
+    // The kept samples are the newest ones and go out before the summary.
+    assertEquals(PolarEvent.BACKGROUND_CATCH_UP.name(), names.get(names.size() - 2));
+  }
+
+  @Test
+  public void keepsTheNewestBlockWhenItAloneIsOverTheBound() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1, 10);
+    buffer.pause();
+    buffer.holdSamples("A", PolarEvent.ECG_DATA, CHANNELS, StreamOptions.PayloadFormat.SAMPLES, block(0, 10));
+    buffer.holdSamples("A", PolarEvent.ECG_DATA, CHANNELS, StreamOptions.PayloadFormat.SAMPLES, block(10, 10));
+    buffer.resume();
+    ReadableMap summary = summaries().get("A");
+    assertEquals(10, (long) summary.getDouble("samples"));
+    assertEquals(10, (long) summary.getDouble("droppedSamples"));
+  }
+
+  @Test
+  public void keepsOnlyTheNewestSnapshotEvents() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1024, 2);
+    buffer.pause();
+    buffer.onEvent(PolarEvent.STREAM_STATS.name(), "first");
+    buffer.onEvent(PolarEvent.DEVICE_CONNECTED.name(), "A");
+    buffer.onEvent(PolarEvent.STREAM_STATS.name(), "second");
+    buffer.onEvent(PolarEvent.ECG_DATA.name(), "handed over as samples");
+    assertTrue(names.isEmpty());
+    buffer.resume();
+    assertEquals(PolarEvent.DEVICE_CONNECTED.name(), names.get(0));
+    assertEquals("second", params.get(1));
+    assertEquals(PolarEvent.BACKGROUND_SUMMARY.name(), names.get(2));
+  }
+
+  @Test
+  public void keepsEveryHeldDeltaDeviceList() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1024, 10);
+    buffer.pause();
+    buffer.onEvent(PolarEvent.DEVICE_LIST.name(), deviceList(true, "added"));
+    buffer.onEvent(PolarEvent.DEVICE_LIST.name(), deviceList(true, "changed"));
+    buffer.resume();
+    assertEquals(PolarEvent.DEVICE_LIST.name(), names.get(0));
+    assertEquals("added", ((ReadableMap) params.get(0)).getString("device"));
+    assertEquals(PolarEvent.DEVICE_LIST.name(), names.get(1));
+    assertEquals("changed", ((ReadableMap) params.get(1)).getString("device"));
+  }
+
+  @Test
+  public void replacesHeldDeviceListsWithAFullOne() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1024, 10);
+    buffer.pause();
+    buffer.onEvent(PolarEvent.DEVICE_LIST.name(), deviceList(true, "added"));
+    buffer.onEvent(PolarEvent.DEVICE_LIST.name(), deviceList(false, "all"));
+    buffer.resume();
+    assertEquals(1, names.indexOf(PolarEvent.BACKGROUND_SUMMARY.name()));
+    assertEquals("all", ((ReadableMap) params.get(0)).getString("device"));
+  }
+
+  @Test
+  public void sendsRuleTriggersRightAway() {
+    BackgroundBuffer buffer = new BackgroundBuffer(target, JavaOnlyPayloadFactory.INSTANCE, 1024, 10);
+    buffer.pause();
+    buffer.onEvent(PolarEvent.DEVICE_CONNECTED.name(), "A");
+    buffer.onEvent(PolarEvent.RULE_TRIGGER.name(), "fired");
+    assertEquals(1, names.size());
+    assertEquals(PolarEvent.RULE_TRIGGER.name(), names.get(0));
+  }
+
+  private Map<String, ReadableMap> summaries() {
+    ReadableMap summary = (ReadableMap) params.get(names.lastIndexOf(PolarEvent.BACKGROUND_SUMMARY.name()));
+    ReadableArray streams = summary.getArray("streams");
+    Map<String, ReadableMap> byId = new HashMap<>();
+    for (int i = 0; i < streams.size(); i++) {
+      byId.put(streams.getMap(i).getString("id"), streams.getMap(i));
+    }
+    return byId;
+  }
+
+  private static JavaOnlyMap deviceList(boolean delta, String device) {
+    JavaOnlyMap list = new JavaOnlyMap();
+    list.putBoolean("delta", delta);
+    list.putString("device", device);
+    return list;
+  }
+
+  private static SampleBatch block(int first, int size) {
+    long[] timeStamps = new long[size];
+    int[] values = new int[size];
+    for (int i = 0; i < size; i++) {
+      timeStamps[i] = (first + i) * 7692307L;
+      values[i] = (int) (800 * Math.sin((first + i) / 20.0));
+    }
+    return new SampleBatch(timeStamps, new int[][]{values}, size);
+  }
+}
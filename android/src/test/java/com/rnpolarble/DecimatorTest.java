@@ -0,0 +1,109 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DecimatorTest {
+  private static final long INTERVAL = SyntheticPackets.intervalNanos(130);
+
+  @Test
+  public void passesSamplesThroughWithoutOutputRate() {
+    SampleBatcher output = new SampleBatcher(1, 0);
+    Decimator decimator = decimator(1, 0, 130, output);
+    for (int i = 0; i < 10; i++) {
+      decimator.add(i * INTERVAL, i);
+    }
+    SampleBatch batch = output.drain();
+    assertEquals(10, batch.size);
+    assertEquals(7, batch.channels[0][7]);
+    assertEquals(130.0, decimator.effectiveRate(), 0);
+  }
+
+  @Test
+  public void passesSamplesThroughWhenDeviceIsSlower() {
+    SampleBatcher output = new SampleBatcher(1, 0);
+    Decimator decimator = decimator(1, 200, 130, output);
+    for (int i = 0; i < 10; i++) {
+      decimator.add(i * INTERVAL, i);
+    }
+    assertEquals(10, output.size());
+    assertEquals(130.0, decimator.effectiveRate(), 0);
+  }
+
+  @Test
+  public void reportsTheRateOfTheWholeFactor() {
+    Decimator decimator = decimator(1, 50, 130, new SampleBatcher(1, 0));
+    assertEquals(130.0 / 3, decimator.effectiveRate(), 1e-9);
+  }
+
+  @Test
+  public void keepsEveryFactorthSampleOnceTheFilterIsFull() {
+    SampleBatcher output = new SampleBatcher(1, 0);
+    Decimator decimator = decimator(1, 50, 130, output);
+    for (int i = 0; i < 1300; i++) {
+      decimator.add(i * INTERVAL, 1000);
+    }
+    SampleBatch batch = output.drain();
+    // One sample out for every third sample in, from the 25th (a full window of taps) on.
+    assertEquals(1300 / 3 - 24 / 3, batch.size);
+    for (int i = 0; i < batch.size; i++) {
+      assertEquals("unity gain at DC", 1000, batch.channels[0][i]);
+    }
+    for (int i = 1; i < batch.size; i++) {
+      assertEquals(3 * INTERVAL, batch.timeStamps[i] - batch.timeStamps[i - 1]);
+    }
+    assertEquals(1299 * INTERVAL, decimator.lastInputTimeStamp());
+  }
+
+  @Test
+  public void timeStampsTheMiddleOfTheFilterWindow() {
+    SampleBatcher output = new SampleBatcher(1, 0);
+    Decimator decimator = decimator(1, 50, 130, output);
+    for (int i = 0; i < 27; i++) {
+      decimator.add(i * INTERVAL, 0);
+    }
+    SampleBatch batch = output.drain();
+    assertEquals(1, batch.size);
+    // The 25 taps cover samples 2 to 26.
+    assertEquals(14 * INTERVAL, batch.timeStamps[0]);
+  }
+
+  @Test
+  public void filtersOutContentAboveTheNewNyquistRate() {
+    SampleBatcher output = new SampleBatcher(1, 0);
+    Decimator decimator = decimator(1, 50, 130, output);
+    // Alternating samples are at the input Nyquist rate, far above 21.7 Hz.
+    for (int i = 0; i < 1300; i++) {
+      decimator.add(i * INTERVAL, i % 2 == 0 ? 1000 : -1000);
+    }
+    SampleBatch batch = output.drain();
+    for (int i = 0; i < batch.size; i++) {
+      assertTrue("aliased " + batch.channels[0][i], Math.abs(batch.channels[0][i]) <= 20);
+    }
+  }
+
+  @Test
+  public void decimatesEveryChannel() {
+    SampleBatcher output = new SampleBatcher(3, 0);
+    Decimator decimator = decimator(3, 50, 200, output);
+    long interval = SyntheticPackets.intervalNanos(200);
+    for (int i = 0; i < 400; i++) {
+      decimator.add(i * interval, 10, -20, 1000);
+    }
+    SampleBatch batch = output.drain();
+    assertEquals(400 / 4 - 32 / 4, batch.size);
+    assertEquals(10, batch.channels[0][batch.size - 1]);
+    assertEquals(-20, batch.channels[1][batch.size - 1]);
+    assertEquals(1000, batch.channels[2][batch.size - 1]);
+    assertEquals(50.0, decimator.effectiveRate(), 0);
+  }
+
+  private static Decimator decimator(int channels, int outputRate, int inputRate, SampleWriter output) {
+    Decimator decimator = new Decimator(channels, outputRate);
+    decimator.setOutput(output);
+    decimator.setInputRate(inputRate);
+    return decimator;
+  }
+}
@@ -0,0 +1,70 @@
+package com.rnpolarble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of encoding and decoding one session recording frame of ECG or ACC samples with
+ * {@link DeltaCodec}. The blocks hold 1024 samples like the frames of {@link SessionRecorder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeltaCodecBenchmark {
+  private static final int FRAME_SAMPLES = 1024;
+
+  /** "ecg" for one channel of microvolts, "acc" for three channels of mG. */
+  @Param({"ecg", "acc"})
+  public String stream;
+
+  private SampleBatch block;
+  private ByteBuffer out;
+  private ByteBuffer encoded;
+
+  @Setup
+  public void setUp() {
+    SampleBatcher batcher = new SampleBatcher("ecg".equals(stream) ? 1 : 3, 0);
+    for (int i = 0; batcher.size() < FRAME_SAMPLES; i++) {
+      if ("ecg".equals(stream)) {
+        PacketUnpackers.ecg(SyntheticPackets.ecg(i), batcher);
+      } else {
+        PacketUnpackers.acc(SyntheticPackets.acc(i), batcher);
+      }
+    }
+    block = batcher.view();
+    out = ByteBuffer.allocate(DeltaCodec.maxEncodedSize(block.size, block.channelCount()))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    DeltaCodec.encode(block, out);
+    out.flip();
+    encoded = out.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  @Benchmark
+  public int encode() {
+    out.clear();
+    DeltaCodec.encode(block, out);
+    return out.position();
+  }
+
+  @Benchmark
+  public SampleBatch decode() {
+    encoded.rewind();
+    return DeltaCodec.decode(encoded);
+  }
+}
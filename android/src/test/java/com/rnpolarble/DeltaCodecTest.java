@@ -0,0 +1,127 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class DeltaCodecTest {
+  @Test
+  public void roundTripsRandomBlocks() {
+    Random random = new Random(7);
+    for (int block = 0; block < 200; block++) {
+      int size = random.nextInt(300);
+      long[] timeStamps = new long[size];
+      long time = random.nextLong() >>> 2;
+      for (int i = 0; i < size; i++) {
+        time += 7692307 + random.nextInt(2001) - 1000;
+        timeStamps[i] = time;
+      }
+      int[][] channels = new int[1 + random.nextInt(3)][size];
+      for (int[] values : channels) {
+        for (int i = 0; i < size; i++) {
+          values[i] = random.nextInt();
+        }
+      }
+      assertRoundTrips(new SampleBatch(timeStamps, channels, size));
+    }
+  }
+
+  @Test
+  public void roundTripsDeltasPastTheIntRange() {
+    int[] values = {0, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, Integer.MIN_VALUE, 0,
+            Integer.MIN_VALUE, Integer.MIN_VALUE, 1, Integer.MAX_VALUE, Integer.MAX_VALUE};
+    long[] timeStamps = new long[values.length];
+    assertRoundTrips(new SampleBatch(timeStamps, new int[][]{values}, values.length));
+  }
+
+  @Test
+  public void roundTripsTimeStampsAtTheLongExtremes() {
+    long[] timeStamps = {Long.MIN_VALUE, -1, Long.MAX_VALUE, 0, Long.MIN_VALUE + 1, Long.MAX_VALUE};
+    assertRoundTrips(new SampleBatch(timeStamps, new int[][]{new int[timeStamps.length]}, timeStamps.length));
+  }
+
+  @Test
+  public void storesAConstantIntervalOnce() {
+    int size = 100;
+    long[] timeStamps = new long[size];
+    for (int i = 0; i < size; i++) {
+      timeStamps[i] = 1000000000L + i * 7692307L;
+    }
+    SampleBatch batch = new SampleBatch(timeStamps, new int[][]{new int[size]}, size);
+    ByteBuffer encoded = encode(batch);
+    // First time stamp, count, channel count, mode, interval, then a byte per unchanged value.
+    assertEquals(8 + 1 + 1 + 1 + 4 + size, encoded.remaining());
+    assertRoundTrips(batch);
+  }
+
+  @Test
+  public void roundTripsBlocksWithoutTimeStamps() {
+    int[] values = {812, 790, 1200};
+    SampleBatch batch = new SampleBatch(new long[3], new int[][]{values}, 3);
+    assertRoundTrips(batch);
+  }
+
+  @Test
+  public void roundTripsEmptyAndSingleSampleBlocks() {
+    assertRoundTrips(new SampleBatch(new long[0], new int[3][0], 0));
+    assertRoundTrips(new SampleBatch(new long[]{42}, new int[][]{{-5}}, 1));
+  }
+
+  @Test
+  public void encodesOnlyTheFirstSizeSamples() {
+    long[] timeStamps = {10, 20, 30, 99};
+    int[] values = {1, 2, 3, 99};
+    SampleBatch decoded = DeltaCodec.decode(encode(new SampleBatch(timeStamps, new int[][]{values}, 3)));
+    assertEquals(3, decoded.size);
+    assertArrayEquals(new long[]{10, 20, 30}, decoded.timeStamps);
+    assertArrayEquals(new int[]{1, 2, 3}, decoded.channels[0]);
+  }
+
+  @Test
+  public void varintsRoundTripAtTheirLengthBoundaries() {
+    int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Integer.MIN_VALUE, -1};
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 5);
+    for (int value : values) {
+      DeltaCodec.putVarint(buffer, value);
+    }
+    buffer.flip();
+    for (int value : values) {
+      assertEquals(value, DeltaCodec.getVarint(buffer));
+    }
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOverlongVarints() {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1});
+    DeltaCodec.getVarint(buffer);
+  }
+
+  private static ByteBuffer encode(SampleBatch batch) {
+    ByteBuffer out = ByteBuffer.allocate(DeltaCodec.maxEncodedSize(batch.size, batch.channelCount()))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    DeltaCodec.encode(batch, out);
+    out.flip();
+    return out;
+  }
+
+  private static void assertRoundTrips(SampleBatch batch) {
+    ByteBuffer encoded = encode(batch);
+    SampleBatch decoded = DeltaCodec.decode(encoded);
+    assertFalse(encoded.hasRemaining());
+    assertEquals(batch.size, decoded.size);
+    assertEquals(batch.channelCount(), decoded.channelCount());
+    for (int i = 0; i < batch.size; i++) {
+      assertEquals("time stamp " + i, batch.timeStamps[i], decoded.timeStamps[i]);
+      for (int c = 0; c < batch.channelCount(); c++) {
+        assertEquals("channel " + c + " sample " + i, batch.channels[c][i], decoded.channels[c][i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarSensorSetting;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class DeviceSettingsCacheTest {
+  private static final String ID = "A1B2C3D4";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+
+  @Before
+  public void setUp() {
+    directory = new File(folder.getRoot(), "devices");
+  }
+
+  @Test
+  public void keepsDataTypesAndSettingsAcrossInstances() {
+    DeviceSettingsCache cache = new DeviceSettingsCache(directory);
+    cache.setFirmware(ID, "3.1.1");
+    assertTrue(cache.putDataTypes(ID, EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG, PolarBleApi.PolarDeviceDataType.ACC)));
+    assertTrue(cache.putSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG, sampleRate(130)));
+    assertFalse(cache.putSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG, sampleRate(130)));
+
+    DeviceSettingsCache reloaded = new DeviceSettingsCache(directory);
+    assertEquals(EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG, PolarBleApi.PolarDeviceDataType.ACC),
+            reloaded.getDataTypes(ID));
+    assertEquals(Collections.singleton(130), reloaded.getSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG)
+            .getSettings().get(PolarSensorSetting.SettingType.SAMPLE_RATE));
+    assertFalse(reloaded.putDataTypes(ID, EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG, PolarBleApi.PolarDeviceDataType.ACC)));
+  }
+
+  @Test
+  public void dropsSettingsOfDataTypesNoLongerReported() {
+    DeviceSettingsCache cache = new DeviceSettingsCache(directory);
+    cache.putDataTypes(ID, EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG, PolarBleApi.PolarDeviceDataType.ACC));
+    cache.putSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG, sampleRate(130));
+    cache.putSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ACC, sampleRate(200));
+
+    assertTrue(cache.putDataTypes(ID, EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG)));
+    assertEquals(EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG), cache.getDataTypes(ID));
+    assertNotNull(cache.getSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG));
+    assertNull(cache.getSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ACC));
+    assertNull(new DeviceSettingsCache(directory).getSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ACC));
+  }
+
+  @Test
+  public void dropsEverythingOnAFirmwareChange() {
+    DeviceSettingsCache cache = new DeviceSettingsCache(directory);
+    cache.setFirmware(ID, "3.1.1");
+    cache.putDataTypes(ID, EnumSet.of(PolarBleApi.PolarDeviceDataType.ECG));
+    cache.putSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG, sampleRate(130));
+
+    cache.setFirmware(ID, "4.0.0");
+    assertNull(cache.getDataTypes(ID));
+    assertNull(cache.getSensorSetting(ID, PolarBleApi.PolarDeviceDataType.ECG));
+  }
+
+  private static PolarSensorSetting sampleRate(int rate) {
+    Map<PolarSensorSetting.SettingType, Set<Integer>> settings = new EnumMap<>(PolarSensorSetting.SettingType.class);
+    settings.put(PolarSensorSetting.SettingType.SAMPLE_RATE, Collections.singleton(rate));
+    return new PolarSensorSetting(settings);
+  }
+}
@@ -0,0 +1,200 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EventDispatcherTest {
+  /** Records the order sinks are called in, optionally consuming params like the JS bridge. */
+  private static final class OrderSink implements EventSink {
+    final String name;
+    final boolean consumes;
+    final List<String> calls;
+    boolean closed = false;
+
+    OrderSink(String name, boolean consumes, List<String> calls) {
+      this.name = name;
+      this.consumes = consumes;
+      this.calls = calls;
+    }
+
+    @Override
+    public void onEvent(String eventName, @Nullable Object params) {
+      calls.add(name);
+    }
+
+    @Override
+    public boolean consumesParams() {
+      return consumes;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /** Collects written lines, started by the test so events can be queued before the writer runs. */
+  private static final class CollectingSink extends QueuedEventSink {
+    final List<String> lines = new ArrayList<>();
+    final List<String> flushed = new ArrayList<>();
+    final CountDownLatch released = new CountDownLatch(1);
+
+    CollectingSink(int capacity) {
+      super("collecting-sink", capacity);
+    }
+
+    @Override
+    void write(byte[] line) {
+      lines.add(new String(line, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    void flush() {
+      flushed.clear();
+      flushed.addAll(lines);
+    }
+
+    @Override
+    void release() {
+      released.countDown();
+    }
+  }
+
+  @Test
+  public void dispatchesEventsAsJsonLines() {
+    EventDispatcher dispatcher = new EventDispatcher();
+    MemoryEventSink sink = new MemoryEventSink(10);
+    dispatcher.add(sink);
+    JavaOnlyMap params = new JavaOnlyMap();
+    JavaOnlyArray rrs = new JavaOnlyArray();
+    rrs.pushInt(1000);
+    rrs.pushInt(990);
+    params.putArray("rrsMs", rrs);
+    dispatcher.dispatch("HR_DATA", params);
+    dispatcher.dispatch("DEVICE_CONNECTED", "A1B2C3D4");
+    dispatcher.dispatch("BLE_POWER_OFF", null);
+
+    assertEquals(3, sink.count());
+    assertEquals(Arrays.asList(
+            "{\"event\":\"HR_DATA\",\"params\":{\"rrsMs\":[1000,990]}}\n",
+            "{\"event\":\"DEVICE_CONNECTED\",\"params\":\"A1B2C3D4\"}\n",
+            "{\"event\":\"BLE_POWER_OFF\",\"params\":null}\n"), sink.events());
+  }
+
+  @Test
+  public void writesNumbersAndEscapesStrings() {
+    MemoryEventSink sink = new MemoryEventSink(10);
+    JavaOnlyMap params = new JavaOnlyMap();
+    params.putDouble("value", 72.5);
+    sink.onEvent("A", params);
+    params = new JavaOnlyMap();
+    params.putDouble("value", 1.7e12);
+    sink.onEvent("B", params);
+    params = new JavaOnlyMap();
+    params.putDouble("value", Double.NaN);
+    sink.onEvent("C", params);
+    sink.onEvent("D", "say \"hi\"\n\\");
+
+    assertEquals(Arrays.asList(
+            "{\"event\":\"A\",\"params\":{\"value\":72.5}}\n",
+            "{\"event\":\"B\",\"params\":{\"value\":1700000000000}}\n",
+            "{\"event\":\"C\",\"params\":{\"value\":null}}\n",
+            "{\"event\":\"D\",\"params\":\"say \\\"hi\\\"\\n\\\\\"}\n"), sink.events());
+  }
+
+  @Test
+  public void queuedSinkWritesWhatIsQueuedWhenClosed() throws InterruptedException {
+    CollectingSink sink = new CollectingSink(100);
+    for (int i = 0; i < 50; i++) {
+      sink.onEvent("E" + i, null);
+    }
+    sink.close();
+    sink.onEvent("after close", null);
+    sink.start();
+    assertTrue(sink.released.await(5, TimeUnit.SECONDS));
+    assertEquals(50, sink.lines.size());
+    assertEquals("{\"event\":\"E49\",\"params\":null}\n", sink.lines.get(49));
+    assertEquals(sink.lines, sink.flushed);
+  }
+
+  @Test
+  public void memorySinkKeepsTheNewestEvents() {
+    MemoryEventSink sink = new MemoryEventSink(2);
+    sink.onEvent("A", null);
+    sink.onEvent("B", null);
+    sink.onEvent("C", null);
+    assertEquals(3, sink.count());
+    assertEquals(Arrays.asList(
+            "{\"event\":\"B\",\"params\":null}\n",
+            "{\"event\":\"C\",\"params\":null}\n"), sink.events());
+    sink.clear();
+    assertEquals(Collections.emptyList(), sink.events());
+  }
+
+  @Test
+  public void callsSinksThatConsumeParamsLast() {
+    List<String> calls = new ArrayList<>();
+    EventDispatcher dispatcher = new EventDispatcher();
+    dispatcher.add(new OrderSink("bridge", true, calls));
+    dispatcher.add(new OrderSink("file", false, calls));
+    dispatcher.add(new OrderSink("socket", false, calls));
+    dispatcher.dispatch("HR_DATA", null);
+    assertEquals(Arrays.asList("file", "socket", "bridge"), calls);
+  }
+
+  @Test
+  public void keepsDispatchingWhenASinkFails() {
+    EventDispatcher dispatcher = new EventDispatcher();
+    dispatcher.add((eventName, params) -> {
+      throw new IllegalStateException("broken");
+    });
+    MemoryEventSink sink = new MemoryEventSink(10);
+    dispatcher.add(sink);
+    dispatcher.dispatch("HR_DATA", null);
+    assertEquals(1, sink.count());
+  }
+
+  @Test
+  public void removeClosesTheSinkOnce() {
+    List<String> calls = new ArrayList<>();
+    EventDispatcher dispatcher = new EventDispatcher();
+    OrderSink sink = new OrderSink("file", false, calls);
+    dispatcher.add(sink);
+    assertTrue(dispatcher.remove(sink));
+    assertTrue(sink.closed);
+    assertFalse(dispatcher.remove(sink));
+    dispatcher.dispatch("HR_DATA", null);
+    assertEquals(Collections.emptyList(), calls);
+  }
+
+  @Test
+  public void closeAllClosesAndRemovesEverySink() {
+    List<String> calls = new ArrayList<>();
+    EventDispatcher dispatcher = new EventDispatcher();
+    OrderSink first = new OrderSink("file", false, calls);
+    OrderSink second = new OrderSink("bridge", true, calls);
+    dispatcher.add(first);
+    dispatcher.add(second);
+    dispatcher.closeAll();
+    assertTrue(first.closed);
+    assertTrue(second.closed);
+    dispatcher.dispatch("HR_DATA", null);
+    assertEquals(Collections.emptyList(), calls);
+  }
+}
@@ -0,0 +1,53 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarDeviceInfo;
+import com.polar.sdk.api.model.PolarHrData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the payloads that are sent one event per packet whatever the stream options:
+ * HR samples and the device info of search results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HrPayloadBenchmark {
+  private static final String ID = "BENCH";
+
+  private SamplePayloads payloads;
+  private PolarHrData hrPacket;
+  private PolarDeviceInfo deviceInfo;
+
+  @Setup
+  public void setUp() {
+    payloads = new SamplePayloads(JavaOnlyPayloadFactory.INSTANCE);
+    hrPacket = SyntheticPackets.hr(60, 1000, 990);
+    deviceInfo = new PolarDeviceInfo(ID, "00:11:22:33:44:55", -60, "Polar H10 " + ID, true);
+  }
+
+  @Benchmark
+  public WritableMap hr() {
+    return payloads.hr(ID, hrPacket);
+  }
+
+  @Benchmark
+  public WritableMap deviceInfo() {
+    return payloads.deviceInfo(deviceInfo);
+  }
+}
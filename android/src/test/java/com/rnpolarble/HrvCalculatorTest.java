@@ -0,0 +1,104 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class HrvCalculatorTest {
+  private static final double EPSILON = 1e-9;
+
+  @Test
+  public void isZeroWithoutEnoughIntervals() {
+    HrvCalculator hrv = new HrvCalculator(60000);
+    assertEquals(0, hrv.meanRr(), 0);
+    assertEquals(0, hrv.sdnn(), 0);
+    hrv.add(800);
+    assertEquals(800, hrv.meanRr(), 0);
+    assertEquals(0, hrv.sdnn(), 0);
+    assertEquals(0, hrv.rmssd(), 0);
+    assertEquals(0, hrv.pnn50(), 0);
+  }
+
+  @Test
+  public void computesTheTimeDomainMeasures() {
+    HrvCalculator hrv = new HrvCalculator(60000);
+    for (int rr : new int[]{800, 860, 820, 900}) {
+      hrv.add(rr);
+    }
+    assertEquals(4, hrv.size());
+    assertEquals(845, hrv.meanRr(), EPSILON);
+    // Deviations -45, 15, -25, 55.
+    assertEquals(Math.sqrt((45 * 45 + 15 * 15 + 25 * 25 + 55 * 55) / 3.0), hrv.sdnn(), EPSILON);
+    // Successive differences 60, -40, 80.
+    assertEquals(Math.sqrt((60 * 60 + 40 * 40 + 80 * 80) / 3.0), hrv.rmssd(), EPSILON);
+    assertEquals(200.0 / 3, hrv.pnn50(), EPSILON);
+  }
+
+  @Test
+  public void dropsIntervalsThatLeaveTheWindow() {
+    HrvCalculator hrv = new HrvCalculator(2000);
+    hrv.add(1000);
+    hrv.add(1000);
+    hrv.add(700);
+    // 1000 + 1000 + 700 is past the window, the oldest interval leaves it.
+    assertEquals(2, hrv.size());
+    assertEquals(850, hrv.meanRr(), EPSILON);
+    assertEquals(300, hrv.rmssd(), EPSILON);
+    assertEquals(100, hrv.pnn50(), EPSILON);
+  }
+
+  @Test
+  public void keepsTheNewestIntervalLongerThanTheWindow() {
+    HrvCalculator hrv = new HrvCalculator(500);
+    hrv.add(800);
+    hrv.add(900);
+    assertEquals(1, hrv.size());
+    assertEquals(900, hrv.meanRr(), 0);
+  }
+
+  @Test
+  public void runningSumsMatchARecomputedWindow() {
+    Random random = new Random(7);
+    long windowMs = 30000;
+    HrvCalculator hrv = new HrvCalculator(windowMs);
+    List<Integer> window = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      int rr = 500 + random.nextInt(700);
+      hrv.add(rr);
+      window.add(rr);
+      while (sum(window) > windowMs && window.size() > 1) {
+        window.remove(0);
+      }
+      assertEquals(window.size(), hrv.size());
+    }
+    int n = window.size();
+    double mean = sum(window) / (double) n;
+    double squares = 0;
+    double diffSquares = 0;
+    int nn50 = 0;
+    for (int i = 0; i < n; i++) {
+      squares += (window.get(i) - mean) * (window.get(i) - mean);
+      if (i > 0) {
+        int diff = window.get(i) - window.get(i - 1);
+        diffSquares += diff * diff;
+        nn50 += Math.abs(diff) > 50 ? 1 : 0;
+      }
+    }
+    assertEquals(mean, hrv.meanRr(), 1e-6);
+    assertEquals(Math.sqrt(squares / (n - 1)), hrv.sdnn(), 1e-6);
+    assertEquals(Math.sqrt(diffSquares / (n - 1)), hrv.rmssd(), 1e-6);
+    assertEquals(100.0 * nn50 / (n - 1), hrv.pnn50(), 1e-6);
+  }
+
+  private static long sum(List<Integer> values) {
+    long sum = 0;
+    for (int value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,87 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class IntRingBufferTest {
+  @Test
+  public void isFirstInFirstOut() {
+    IntRingBuffer buffer = new IntRingBuffer(4);
+    buffer.add(1);
+    buffer.add(2);
+    buffer.add(3);
+    assertEquals(3, buffer.size());
+    assertEquals(1, buffer.first());
+    assertEquals(3, buffer.last());
+    assertEquals(1, buffer.removeFirst());
+    assertEquals(2, buffer.removeFirst());
+    assertEquals(3, buffer.removeFirst());
+    assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  public void growsKeepingTheOrderAcrossTheWrap() {
+    IntRingBuffer buffer = new IntRingBuffer(3);
+    buffer.add(1);
+    buffer.add(2);
+    buffer.add(3);
+    buffer.removeFirst();
+    buffer.add(4);
+    // Full with head in the middle of the array, the next add grows it.
+    buffer.add(5);
+    buffer.add(6);
+    assertEquals(5, buffer.size());
+    for (int expected = 2; expected <= 6; expected++) {
+      assertEquals(expected, buffer.removeFirst());
+    }
+  }
+
+  @Test
+  public void matchesADequeOnRandomOperations() {
+    Random random = new Random(42);
+    IntRingBuffer buffer = new IntRingBuffer(1);
+    ArrayDeque<Integer> expected = new ArrayDeque<>();
+    for (int i = 0; i < 10000; i++) {
+      if (expected.isEmpty() || random.nextInt(3) > 0) {
+        int value = random.nextInt();
+        buffer.add(value);
+        expected.addLast(value);
+      } else {
+        assertEquals((int) expected.removeFirst(), buffer.removeFirst());
+      }
+      assertEquals(expected.size(), buffer.size());
+      if (!expected.isEmpty()) {
+        assertEquals((int) expected.peekFirst(), buffer.first());
+        assertEquals((int) expected.peekLast(), buffer.last());
+      }
+    }
+  }
+
+  @Test
+  public void clearEmptiesTheBuffer() {
+    IntRingBuffer buffer = new IntRingBuffer(2);
+    buffer.add(1);
+    buffer.add(2);
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    buffer.add(3);
+    assertEquals(3, buffer.first());
+    assertEquals(3, buffer.last());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void removeFirstThrowsWhenEmpty() {
+    new IntRingBuffer(1).removeFirst();
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void lastThrowsWhenEmpty() {
+    new IntRingBuffer(1).last();
+  }
+}
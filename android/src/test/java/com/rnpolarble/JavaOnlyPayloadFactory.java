@@ -0,0 +1,35 @@
+package com.rnpolarble;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Payload containers backed by plain Java collections, so conversion code can be tested and
+ * benchmarked on the JVM without the React Native bridge.
+ */
+final class JavaOnlyPayloadFactory implements PayloadFactory {
+  static final JavaOnlyPayloadFactory INSTANCE = new JavaOnlyPayloadFactory();
+
+  private JavaOnlyPayloadFactory() {
+  }
+
+  @Override
+  public WritableMap createMap() {
+    return new JavaOnlyMap();
+  }
+
+  @Override
+  public WritableArray createArray() {
+    return new JavaOnlyArray();
+  }
+
+  @Override
+  public String encodeBase64(byte[] bytes, int length) {
+    return Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, length));
+  }
+}
@@ -0,0 +1,98 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+  @Test
+  public void isEmptyAtFirst() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentile(50));
+    assertEquals(0, histogram.percentile(99));
+  }
+
+  @Test
+  public void keepsSmallValuesExactly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int micros = 1; micros <= 10; micros++) {
+      histogram.recordNanos(micros * 1000L);
+    }
+    assertEquals(10, histogram.count());
+    assertEquals(5, histogram.percentile(50));
+    assertEquals(9, histogram.percentile(90));
+    assertEquals(10, histogram.percentile(100));
+  }
+
+  @Test
+  public void neverReportsMoreThanTheMaximum() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(1000));
+    // 1000 us falls in the 992 to 1023 us bucket.
+    assertEquals(1000, histogram.percentile(50));
+    assertEquals(1000, histogram.percentile(99));
+  }
+
+  @Test
+  public void clampsNegativeDurationsToZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(-5000);
+    assertEquals(1, histogram.count());
+    assertEquals(0, histogram.percentile(50));
+  }
+
+  @Test
+  public void keepsValuesPastTheLastRangeInTheLastBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(TimeUnit.DAYS.toNanos(2));
+    histogram.recordNanos(TimeUnit.DAYS.toNanos(3));
+    assertEquals(2, histogram.count());
+    assertEquals(TimeUnit.DAYS.toMicros(3), histogram.percentile(50));
+  }
+
+  @Test
+  public void percentilesAreWithinTheBucketPrecision() {
+    Random random = new Random(3);
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] micros = new long[10000];
+    for (int i = 0; i < micros.length; i++) {
+      // Log uniform from 1 us to about 8 minutes.
+      micros[i] = (long) Math.exp(random.nextDouble() * 20);
+      histogram.recordNanos(micros[i] * 1000);
+    }
+    Arrays.sort(micros);
+    for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9, 100}) {
+      long exact = micros[(int) Math.ceil(micros.length * percentile / 100) - 1];
+      long reported = histogram.percentile(percentile);
+      assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+      assertTrue(percentile + ": " + reported + " >> " + exact, reported <= exact + exact / 16 + 1);
+    }
+  }
+
+  @Test
+  public void countsRecordsFromManyThreads() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      long micros = 100 * (t + 1);
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          histogram.recordNanos(micros * 1000);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, histogram.count());
+    assertEquals(400, histogram.percentile(100));
+    assertTrue(histogram.percentile(25) >= 100 && histogram.percentile(25) < 107);
+  }
+}
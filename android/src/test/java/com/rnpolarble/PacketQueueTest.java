@@ -0,0 +1,75 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PacketQueueTest {
+  private final StreamStats stats = new StreamStats();
+
+  /** Packets are int arrays, their length is the sample count. */
+  private PacketQueue<int[]> queue(StreamOptions.BackpressurePolicy policy, int capacitySamples) {
+    return new PacketQueue<>(policy, capacitySamples, packet -> packet.length, stats);
+  }
+
+  @Test
+  public void keepsPacketsWithTheirReceiveTimesAcrossGrowth() {
+    PacketQueue<int[]> queue = queue(StreamOptions.BackpressurePolicy.BUFFER, 0);
+    for (int i = 0; i < 20; i++) {
+      queue.offer(new int[]{i}, 1000L + i);
+    }
+    assertEquals(20, queue.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, queue.packet(i)[0]);
+      assertEquals(1000L + i, queue.receivedNanos(i));
+    }
+    assertEquals(0, stats.samplesDropped());
+  }
+
+  @Test
+  public void bufferDropsNewPacketsOverTheCapacity() {
+    PacketQueue<int[]> queue = queue(StreamOptions.BackpressurePolicy.BUFFER, 5);
+    queue.offer(new int[3], 1);
+    queue.offer(new int[2], 2);
+    queue.offer(new int[4], 3);
+    assertEquals(2, queue.size());
+    assertEquals(2, queue.receivedNanos(1));
+    assertEquals(4, stats.samplesDropped());
+  }
+
+  @Test
+  public void dropOldestKeepsTheNewestPacketsAcrossTheWrap() {
+    PacketQueue<int[]> queue = queue(StreamOptions.BackpressurePolicy.DROP_OLDEST, 4);
+    for (int i = 0; i < 12; i++) {
+      queue.offer(new int[]{i, i}, i);
+    }
+    assertEquals(2, queue.size());
+    assertEquals(10, queue.packet(0)[0]);
+    assertEquals(11, queue.receivedNanos(1));
+    assertEquals(20, stats.samplesDropped());
+  }
+
+  @Test
+  public void latestKeepsOnlyTheNewestPacket() {
+    PacketQueue<int[]> queue = queue(StreamOptions.BackpressurePolicy.LATEST, 0);
+    queue.offer(new int[3], 1);
+    queue.offer(new int[3], 2);
+    queue.offer(new int[1], 3);
+    assertEquals(1, queue.size());
+    assertEquals(3, queue.receivedNanos(0));
+    assertEquals(6, stats.samplesDropped());
+  }
+
+  @Test
+  public void clearedQueueIsReusedWithAnEmptyCapacity() {
+    PacketQueue<int[]> queue = queue(StreamOptions.BackpressurePolicy.BUFFER, 4);
+    queue.offer(new int[3], 1);
+    queue.offer(new int[3], 2);
+    queue.clear();
+    assertEquals(0, queue.size());
+    queue.offer(new int[4], 3);
+    assertEquals(1, queue.size());
+    assertEquals(4, queue.packet(0).length);
+    assertEquals(3, stats.samplesDropped());
+  }
+}
@@ -0,0 +1,129 @@
+package com.rnpolarble;
+
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarPpgData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of turning ECG, ACC and PPG packets into event payloads, per payload format and
+ * batching mode. One operation converts about a second of packets the way the stream pipeline
+ * does, run with {@code -prof gc} (the default of the jmh task) for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+  private static final String ID = "BENCH";
+  private static final String[] ECG_CHANNELS = {"voltage"};
+  private static final String[] ACC_CHANNELS = {"x", "y", "z"};
+  private static final String[] PPG_CHANNELS = {"ppg0", "ppg1", "ppg2", "ambient"};
+  private static final int ECG_PACKETS = 2;
+  private static final int ACC_PACKETS = 6;
+  /** 140 samples of an OH1 at 135 Hz with three light channels and the ambient channel. */
+  private static final int PPG_PACKETS = 4;
+
+  /** A {@link StreamOptions.PayloadFormat} name. */
+  @Param({"SAMPLES", "COLUMNAR", "PACKED"})
+  public String format;
+
+  /**
+   * "packet" emits every SDK packet, "maxSamples" flushes every 64 samples and "window"
+   * flushes once per second like a batchWindowMs of 1000.
+   */
+  @Param({"packet", "maxSamples", "window"})
+  public String batching;
+
+  private StreamOptions.PayloadFormat payloadFormat;
+  private int batchMaxSamples;
+  private boolean batched;
+  private SamplePayloads payloads;
+  private SampleBatcher ecgBatcher;
+  private SampleBatcher accBatcher;
+  private SampleBatcher ppgBatcher;
+  private final int[] ppgValues = new int[PPG_CHANNELS.length];
+  private PolarEcgData[] ecgPackets;
+  private PolarAccelerometerData[] accPackets;
+  private PolarPpgData[] ppgPackets;
+
+  @Setup
+  public void setUp() {
+    payloadFormat = StreamOptions.PayloadFormat.valueOf(format);
+    batchMaxSamples = "maxSamples".equals(batching) ? 64 : 0;
+    batched = !"packet".equals(batching);
+    payloads = new SamplePayloads(JavaOnlyPayloadFactory.INSTANCE);
+    ecgBatcher = new SampleBatcher(ECG_CHANNELS.length, batchMaxSamples);
+    accBatcher = new SampleBatcher(ACC_CHANNELS.length, batchMaxSamples);
+    ppgBatcher = new SampleBatcher(PPG_CHANNELS.length, batchMaxSamples);
+    ecgPackets = new PolarEcgData[ECG_PACKETS];
+    for (int i = 0; i < ECG_PACKETS; i++) {
+      ecgPackets[i] = SyntheticPackets.ecg(i);
+    }
+    accPackets = new PolarAccelerometerData[ACC_PACKETS];
+    for (int i = 0; i < ACC_PACKETS; i++) {
+      accPackets[i] = SyntheticPackets.acc(i);
+    }
+    ppgPackets = new PolarPpgData[PPG_PACKETS];
+    for (int i = 0; i < PPG_PACKETS; i++) {
+      ppgPackets[i] = SyntheticPackets.ppg(i);
+    }
+  }
+
+  @Benchmark
+  public void ecg(Blackhole blackhole) {
+    for (PolarEcgData packet : ecgPackets) {
+      PacketUnpackers.ecg(packet, ecgBatcher);
+      flushIfDue(ECG_CHANNELS, ecgBatcher, blackhole);
+    }
+    flush(ECG_CHANNELS, ecgBatcher, blackhole);
+  }
+
+  @Benchmark
+  public void acc(Blackhole blackhole) {
+    for (PolarAccelerometerData packet : accPackets) {
+      PacketUnpackers.acc(packet, accBatcher);
+      flushIfDue(ACC_CHANNELS, accBatcher, blackhole);
+    }
+    flush(ACC_CHANNELS, accBatcher, blackhole);
+  }
+
+  @Benchmark
+  public void ppg(Blackhole blackhole) {
+    for (PolarPpgData packet : ppgPackets) {
+      PacketUnpackers.ppg(packet, ppgValues, ppgBatcher);
+      flushIfDue(PPG_CHANNELS, ppgBatcher, blackhole);
+    }
+    flush(PPG_CHANNELS, ppgBatcher, blackhole);
+  }
+
+  private void flushIfDue(String[] channelNames, SampleBatcher batcher, Blackhole blackhole) {
+    if (!batched || (batchMaxSamples > 0 && batcher.size() >= batchMaxSamples)) {
+      flush(channelNames, batcher, blackhole);
+    }
+  }
+
+  private void flush(String[] channelNames, SampleBatcher batcher, Blackhole blackhole) {
+    if (batcher.isEmpty()) {
+      return;
+    }
+    blackhole.consume(payloads.toPayload(ID, channelNames, batcher.view(), payloadFormat));
+    batcher.clear();
+  }
+}
@@ -0,0 +1,177 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.model.PolarPpgData;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/** PPG and PPI packets through the unpacker, decimator, batcher and payload conversion. */
+public class PpgPipelineTest {
+  private static final String ID = "A1B2C3D4";
+  private static final String[] PPG_CHANNELS = {"ppg0", "ppg1", "ppg2", "ambient"};
+  private static final String[] PPI_CHANNELS =
+          {"ppi", "errorEstimate", "hr", "blockerBit", "skinContactStatus", "skinContactSupported"};
+  private static final int PACKETS = 4;
+  private static final int SAMPLES = PACKETS * SyntheticPackets.PPG_PACKET_SAMPLES;
+  private static final long INTERVAL = SyntheticPackets.intervalNanos(SyntheticPackets.PPG_RATE);
+
+  private final SamplePayloads payloads = new SamplePayloads(JavaOnlyPayloadFactory.INSTANCE);
+
+  @Test
+  public void samplesPayloadHasEveryPpgSample() {
+    ReadableMap payload = payloads.toPayload(ID, PPG_CHANNELS, ppgBatch(), StreamOptions.PayloadFormat.SAMPLES);
+    assertEquals(ID, payload.getString("id"));
+    ReadableArray samples = payload.getArray("samples");
+    assertEquals(SAMPLES, samples.size());
+    for (int n = 0; n < SAMPLES; n++) {
+      ReadableMap sample = samples.getMap(n);
+      assertEquals(n * INTERVAL, sample.getDouble("timeStamp"), 0);
+      assertEquals(100000 + n, sample.getInt("ppg0"));
+      assertEquals(200000 + n, sample.getInt("ppg1"));
+      assertEquals(300000 + n, sample.getInt("ppg2"));
+      assertEquals(-n, sample.getInt("ambient"));
+    }
+  }
+
+  @Test
+  public void columnarPayloadHasOneArrayPerChannel() {
+    ReadableMap payload = payloads.toPayload(ID, PPG_CHANNELS, ppgBatch(), StreamOptions.PayloadFormat.COLUMNAR);
+    assertEquals("columnar", payload.getString("format"));
+    assertEquals(SAMPLES, payload.getInt("count"));
+    assertEquals(0, payload.getDouble("timeStamp"), 0);
+    assertEquals(INTERVAL, payload.getDouble("sampleInterval"), 1);
+    for (int c = 0; c < PPG_CHANNELS.length; c++) {
+      ReadableArray values = payload.getArray(PPG_CHANNELS[c]);
+      assertEquals(SAMPLES, values.size());
+      for (int n = 0; n < SAMPLES; n++) {
+        assertEquals(expectedPpg(c, n), values.getInt(n));
+      }
+    }
+  }
+
+  @Test
+  public void packedPayloadFallsBackToInt32ForPpgValues() {
+    ReadableMap payload = payloads.toPayload(ID, PPG_CHANNELS, ppgBatch(), StreamOptions.PayloadFormat.PACKED);
+    assertEquals("packed", payload.getString("format"));
+    assertEquals(SAMPLES, payload.getInt("count"));
+    assertEquals(4, payload.getInt("bytesPerValue"));
+    for (int c = 0; c < PPG_CHANNELS.length; c++) {
+      ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(payload.getString(PPG_CHANNELS[c])))
+              .order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals(SAMPLES * 4, bytes.remaining());
+      for (int n = 0; n < SAMPLES; n++) {
+        assertEquals(expectedPpg(c, n), bytes.getInt());
+      }
+    }
+  }
+
+  @Test
+  public void maxSamplesBatchingKeepsEverySampleInOrder() {
+    SampleBatcher batcher = new SampleBatcher(PPG_CHANNELS.length, 64);
+    int[] values = new int[PPG_CHANNELS.length];
+    List<WritableMap> events = new ArrayList<>();
+    for (int p = 0; p < PACKETS; p++) {
+      PacketUnpackers.ppg(SyntheticPackets.ppg(p), values, batcher);
+      if (batcher.size() >= 64) {
+        events.add(payloads.toPayload(ID, PPG_CHANNELS, batcher.drain(), StreamOptions.PayloadFormat.COLUMNAR));
+      }
+    }
+    assertEquals(2, events.size());
+    int n = 0;
+    for (WritableMap event : events) {
+      ReadableArray ppg0 = event.getArray("ppg0");
+      assertEquals(2 * SyntheticPackets.PPG_PACKET_SAMPLES, event.getInt("count"));
+      for (int i = 0; i < ppg0.size(); i++, n++) {
+        assertEquals(100000 + n, ppg0.getInt(i));
+      }
+    }
+    assertEquals(SAMPLES, n);
+  }
+
+  @Test
+  public void decimatesPpgToTheOutputRate() {
+    SampleBatcher batcher = new SampleBatcher(PPG_CHANNELS.length, 0);
+    Decimator decimator = new Decimator(PPG_CHANNELS.length, 45);
+    decimator.setOutput(batcher);
+    decimator.setInputRate(SyntheticPackets.PPG_RATE);
+    int[] values = new int[PPG_CHANNELS.length];
+    for (int p = 0; p < PACKETS; p++) {
+      PacketUnpackers.ppg(SyntheticPackets.ppg(p), values, decimator);
+    }
+    SampleBatch batch = batcher.drain();
+    assertEquals(45.0, decimator.effectiveRate(), 0);
+    // One sample out of three once the 25 tap filter is full.
+    assertEquals(SAMPLES / 3 - 24 / 3, batch.size);
+    assertEquals(3 * INTERVAL, batch.timeStamps[1] - batch.timeStamps[0]);
+    // The values rise linearly, so the symmetric filter gives the middle sample back.
+    int middle = (int) (batch.timeStamps[0] / INTERVAL);
+    assertEquals(100000 + middle, batch.channels[0][0], 1);
+    assertEquals(-middle, batch.channels[3][0], 1);
+  }
+
+  @Test
+  public void missingPpgChannelsAreZero() {
+    List<PolarPpgData.PolarPpgSample> samples = new ArrayList<>();
+    samples.add(new PolarPpgData.PolarPpgSample(5, Arrays.asList(1, 2, 3)));
+    SampleBatcher batcher = new SampleBatcher(PPG_CHANNELS.length, 0);
+    PacketUnpackers.ppg(new PolarPpgData(samples, PolarPpgData.PpgDataType.UNKNOWN),
+            new int[PPG_CHANNELS.length], batcher);
+    SampleBatch batch = batcher.drain();
+    assertEquals(1, batch.size);
+    assertEquals(5, batch.timeStamps[0]);
+    assertEquals(3, batch.channels[2][0]);
+    assertEquals(0, batch.channels[3][0]);
+  }
+
+  @Test
+  public void ppiFlagsAreWrittenAsZeroOrOne() {
+    SampleBatcher batcher = new SampleBatcher(PPI_CHANNELS.length, 0);
+    int[] values = new int[PPI_CHANNELS.length];
+    PacketUnpackers.ppi(SyntheticPackets.ppi(1000, false), values, batcher);
+    PacketUnpackers.ppi(SyntheticPackets.ppi(800, true), values, batcher);
+    ReadableMap payload = payloads.toPayload(ID, PPI_CHANNELS, batcher.drain(), StreamOptions.PayloadFormat.SAMPLES);
+    ReadableArray samples = payload.getArray("samples");
+    assertEquals(2, samples.size());
+    ReadableMap first = samples.getMap(0);
+    assertEquals(1000, first.getInt("ppi"));
+    assertEquals(10, first.getInt("errorEstimate"));
+    assertEquals(60, first.getInt("hr"));
+    assertEquals(0, first.getInt("blockerBit"));
+    assertEquals(1, first.getInt("skinContactStatus"));
+    assertEquals(0, first.getDouble("timeStamp"), 0);
+    ReadableMap second = samples.getMap(1);
+    assertEquals(800, second.getInt("ppi"));
+    assertEquals(75, second.getInt("hr"));
+    assertEquals(1, second.getInt("blockerBit"));
+    assertFalse(second.hasKey("ppg0"));
+  }
+
+  /** PACKETS packets unpacked without batching limits. */
+  private static SampleBatch ppgBatch() {
+    SampleBatcher batcher = new SampleBatcher(PPG_CHANNELS.length, 0);
+    Decimator decimator = new Decimator(PPG_CHANNELS.length, 0);
+    decimator.setOutput(batcher);
+    decimator.setInputRate(SyntheticPackets.PPG_RATE);
+    int[] values = new int[PPG_CHANNELS.length];
+    for (int p = 0; p < PACKETS; p++) {
+      PacketUnpackers.ppg(SyntheticPackets.ppg(p), values, decimator);
+    }
+    return batcher.drain();
+  }
+
+  private static int expectedPpg(int channel, int n) {
+    return channel == 3 ? -n : (channel + 1) * 100000 + n;
+  }
+}
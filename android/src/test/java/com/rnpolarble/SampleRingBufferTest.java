@@ -0,0 +1,112 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SampleRingBufferTest {
+  @Test
+  public void drainsInOrderAcrossTheWrap() {
+    SampleRingBuffer ring = new SampleRingBuffer(3, 8);
+    SampleBatcher batcher = new SampleBatcher(3, 0);
+    int next = 0;
+    int drained = 0;
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 5; i++, next++) {
+        ring.add(next, next, -next, next * 2);
+      }
+      assertEquals(5, ring.drainTo(batcher, 100));
+      SampleBatch batch = batcher.view();
+      for (int i = 0; i < batch.size; i++, drained++) {
+        assertEquals(drained, batch.timeStamps[i]);
+        assertEquals(drained, batch.channels[0][i]);
+        assertEquals(-drained, batch.channels[1][i]);
+        assertEquals(drained * 2, batch.channels[2][i]);
+      }
+      batcher.clear();
+    }
+    assertTrue(ring.isEmpty());
+    assertEquals(0, ring.dropped());
+  }
+
+  @Test
+  public void drainsAtMostMax() {
+    SampleRingBuffer ring = new SampleRingBuffer(1, 16);
+    for (int i = 0; i < 10; i++) {
+      ring.add(i, i);
+    }
+    SampleBatcher batcher = new SampleBatcher(1, 0);
+    assertEquals(4, ring.drainTo(batcher, 4));
+    assertEquals(6, ring.drainTo(batcher, 100));
+    assertEquals(0, ring.drainTo(batcher, 100));
+    assertEquals(10, batcher.size());
+    assertEquals(9, batcher.view().channels[0][9]);
+  }
+
+  @Test
+  public void dropsNewSamplesWhenFull() {
+    SampleRingBuffer ring = new SampleRingBuffer(2, 4);
+    int[] values = new int[2];
+    for (int i = 0; i < 6; i++) {
+      values[0] = i;
+      values[1] = -i;
+      ring.add(i, values);
+    }
+    assertEquals(2, ring.dropped());
+    SampleBatcher batcher = new SampleBatcher(2, 0);
+    assertEquals(4, ring.drainTo(batcher, 100));
+    assertEquals(3, batcher.view().channels[0][3]);
+    // Room again once drained.
+    ring.add(6, values);
+    assertEquals(1, ring.drainTo(batcher, 100));
+  }
+
+  @Test
+  public void roundsTheCapacityUpToAPowerOfTwo() {
+    SampleRingBuffer ring = new SampleRingBuffer(1, 5);
+    for (int i = 0; i < 9; i++) {
+      ring.add(i, i);
+    }
+    assertEquals(1, ring.dropped());
+  }
+
+  @Test
+  public void handsEverySampleOverBetweenThreads() throws InterruptedException {
+    SampleRingBuffer ring = new SampleRingBuffer(1, 64);
+    int count = 200000;
+    AtomicBoolean done = new AtomicBoolean();
+    Thread producer = new Thread(() -> {
+      for (int i = 0; i < count; i++) {
+        long dropped = ring.dropped();
+        ring.add(i, i);
+        while (ring.dropped() != dropped) {
+          // Full, retry until the consumer made room.
+          dropped = ring.dropped();
+          Thread.yield();
+          ring.add(i, i);
+        }
+      }
+      done.set(true);
+    });
+    producer.start();
+    SampleBatcher batcher = new SampleBatcher(1, 0);
+    int expected = 0;
+    while (!done.get() || !ring.isEmpty()) {
+      if (ring.drainTo(batcher, 16) == 0) {
+        Thread.yield();
+        continue;
+      }
+      SampleBatch batch = batcher.view();
+      for (int i = 0; i < batch.size; i++, expected++) {
+        assertEquals(expected, batch.channels[0][i]);
+        assertEquals(expected, batch.timeStamps[i]);
+      }
+      batcher.clear();
+    }
+    producer.join();
+    assertEquals(count, expected);
+  }
+}
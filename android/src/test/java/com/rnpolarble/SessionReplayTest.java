@@ -0,0 +1,182 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.polar.sdk.api.PolarBleApi;
+import com.polar.sdk.api.model.PolarHrData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+public class SessionReplayTest {
+  private static final long START_NANOS = 1000000000L;
+  private static final long SAMPLE_NANOS = 7692307L;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsBackRecordedPackets() throws IOException {
+    for (byte encoding : new byte[]{SessionRecorder.ENCODING_RAW, SessionRecorder.ENCODING_DELTA}) {
+      File file = record(encoding, 3000);
+      try (SessionReplay replay = SessionReplay.read(file)) {
+        assertEcg(replay.track(PolarBleApi.PolarDeviceDataType.ECG), 3000);
+        assertHr(replay.track(PolarBleApi.PolarDeviceDataType.HR));
+        assertNull(replay.track(PolarBleApi.PolarDeviceDataType.ACC));
+      }
+    }
+  }
+
+  @Test
+  public void skipsAFrameCorruptedInTheMiddle() throws IOException {
+    File file = record(SessionRecorder.ENCODING_DELTA, 3000);
+    int packets;
+    try (SessionReplay replay = SessionReplay.read(file)) {
+      packets = replay.track(PolarBleApi.PolarDeviceDataType.ECG).size();
+    }
+    List<SessionReplay.IndexEntry> ecgFrames = new ArrayList<>();
+    for (SessionReplay.IndexEntry entry : SessionReplay.readIndex(file)) {
+      if (entry.dataType == PolarBleApi.PolarDeviceDataType.ECG) {
+        ecgFrames.add(entry);
+      }
+    }
+    assertEquals(packets, ecgFrames.size());
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      // A byte of the payload, past the frame magic, type, encoding and length.
+      long offset = ecgFrames.get(packets / 2).offset + 12;
+      out.seek(offset);
+      byte value = out.readByte();
+      out.seek(offset);
+      out.write(~value);
+    }
+    try (SessionReplay replay = SessionReplay.read(file)) {
+      SessionReplay.Track ecg = replay.track(PolarBleApi.PolarDeviceDataType.ECG);
+      assertEquals(packets - 1, ecg.size());
+      for (int i = 0; i < ecg.size(); i++) {
+        assertNotNull(ecg.batch(i));
+      }
+      assertHr(replay.track(PolarBleApi.PolarDeviceDataType.HR));
+    }
+  }
+
+  @Test
+  public void readsTheFramesBeforeACutTail() throws IOException {
+    File file = record(SessionRecorder.ENCODING_RAW, 3000);
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(out.length() - 3);
+    }
+    try (SessionReplay replay = SessionReplay.read(file)) {
+      assertHr(replay.track(PolarBleApi.PolarDeviceDataType.HR));
+      assertNotNull(replay.track(PolarBleApi.PolarDeviceDataType.ECG));
+    }
+  }
+
+  @Test
+  public void keepsHrSamplesWholeAcrossFrames() throws IOException {
+    File file = new File(folder.getRoot(), "hr.rnpb");
+    TestScheduler scheduler = new TestScheduler();
+    SessionRecorder recorder = new SessionRecorder(file, "A1B2C3D4", SessionRecorder.ENCODING_RAW);
+    recorder.start(scheduler, 1000);
+    // 1800 rows in one drain, more than a frame holds, with the frame limit inside a sample.
+    for (int i = 0; i < 600; i++) {
+      recorder.addHr(1700000000000L + i * 1000L,
+              new PolarHrData.PolarHrSample(60, Arrays.asList(1000 + i, 1001 + i, 1002 + i), true, true, true));
+    }
+    recorder.close();
+    scheduler.triggerActions();
+
+    try (SessionReplay replay = SessionReplay.read(file)) {
+      SessionReplay.Track hr = replay.track(PolarBleApi.PolarDeviceDataType.HR);
+      assertEquals(600, hr.size());
+      for (int i = 0; i < hr.size(); i++) {
+        assertEquals(Arrays.asList(1000 + i, 1001 + i, 1002 + i), hr.hr(i).getSamples().get(0).getRrsMs());
+      }
+    }
+    List<SessionReplay.IndexEntry> index = SessionReplay.readIndex(file);
+    assertEquals(600, index.size());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(1700000000000L), index.get(0).timeStamp);
+    assertTrue(index.get(0).wallClock);
+  }
+
+  @Test
+  public void marksTheClockOfIndexEntries() throws IOException {
+    for (SessionReplay.IndexEntry entry : SessionReplay.readIndex(record(SessionRecorder.ENCODING_DELTA, 3000))) {
+      assertEquals(entry.dataType == PolarBleApi.PolarDeviceDataType.HR, entry.wallClock);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsFilesThatAreNoRecording() throws IOException {
+    File file = folder.newFile();
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.writeLong(0);
+    }
+    SessionReplay.read(file);
+  }
+
+  /** Records count ECG samples and an HR sample with two RR intervals every 130 of them. */
+  private File record(byte encoding, int count) throws IOException {
+    File file = new File(folder.getRoot(), "session-" + encoding + ".rnpb");
+    TestScheduler scheduler = new TestScheduler();
+    SessionRecorder recorder = new SessionRecorder(file, "A1B2C3D4", encoding);
+    recorder.start(scheduler, 1000);
+    SampleWriter ecg = recorder.samples(PolarBleApi.PolarDeviceDataType.ECG, 1);
+    for (int i = 0; i < count; i++) {
+      ecg.add(START_NANOS + i * SAMPLE_NANOS, ecgValue(i));
+      if (i % 130 == 0) {
+        recorder.addHr(1700000000000L + i, hrSample(60 + i / 130));
+      }
+      if (i % 500 == 0) {
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+      }
+    }
+    recorder.close();
+    scheduler.triggerActions();
+    return file;
+  }
+
+  private static void assertEcg(SessionReplay.Track track, int count) throws IOException {
+    assertNotNull(track);
+    assertEquals(START_NANOS, track.firstTime);
+    int sample = 0;
+    for (int packet = 0; packet < track.size(); packet++) {
+      SampleBatch batch = track.batch(packet);
+      for (int i = 0; i < batch.size; i++, sample++) {
+        assertEquals(START_NANOS + sample * SAMPLE_NANOS, batch.timeStamps[i]);
+        assertEquals(ecgValue(sample), batch.channels[0][i]);
+      }
+    }
+    assertEquals(count, sample);
+  }
+
+  private static void assertHr(SessionReplay.Track track) throws IOException {
+    assertNotNull(track);
+    for (int i = 0; i < track.size(); i++) {
+      PolarHrData.PolarHrSample sample = track.hr(i).getSamples().get(0);
+      assertEquals(60 + i, sample.getHr());
+      assertEquals(Arrays.asList(1000, 990), sample.getRrsMs());
+    }
+  }
+
+  private static int ecgValue(int i) {
+    return (int) (800 * Math.sin(i / 20.0));
+  }
+
+  private static PolarHrData.PolarHrSample hrSample(int hr) {
+    return new PolarHrData.PolarHrSample(hr, Arrays.asList(1000, 990), true, true, true);
+  }
+}
@@ -0,0 +1,140 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs simulated devices through the module, from startSimulation over the stream pipeline to the
+ * JS event emitter, and checks throughput and emit latency as getStreamStats reports them. It only
+ * runs with -PloadTest=true; devices, speed and duration default to a quick run and can be raised
+ * with -PloadTest.devices=50 -PloadTest.speed=2 -PloadTest.seconds=30.
+ */
+public class SimulationLoadTest {
+  private static final int DEVICES = Integer.getInteger("loadTest.devices", 10);
+  private static final double SPEED = Double.parseDouble(System.getProperty("loadTest.speed", "4"));
+  private static final int SECONDS = Integer.getInteger("loadTest.seconds", 2);
+  private static final double MAX_P99_EMIT_LATENCY_MS = Integer.getInteger("loadTest.maxP99Ms", 250);
+  private static final String[] DATA_TYPES = {"hr", "ecg", "acc"};
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, AtomicLong> emitted = new ConcurrentHashMap<>();
+  private MockedStatic<Arguments> arguments;
+  private RnPolarBleModule module;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("load test runs with -PloadTest=true", Boolean.getBoolean("loadTest"));
+    // Promises resolve on the test thread, events are built with the module's payload factory.
+    arguments = mockStatic(Arguments.class);
+    arguments.when(Arguments::createMap).thenAnswer(invocation -> new JavaOnlyMap());
+    arguments.when(Arguments::createArray).thenAnswer(invocation -> new JavaOnlyArray());
+    DeviceEventManagerModule.RCTDeviceEventEmitter emitter = new DeviceEventManagerModule.RCTDeviceEventEmitter() {
+      @Override
+      public void emit(String eventName, Object data) {
+        emitted.computeIfAbsent(eventName, name -> new AtomicLong()).incrementAndGet();
+      }
+    };
+    ReactApplicationContext context = mock(ReactApplicationContext.class);
+    when(context.getFilesDir()).thenReturn(folder.getRoot());
+    when(context.hasActiveReactInstance()).thenReturn(true);
+    when(context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)).thenReturn(emitter);
+    module = new RnPolarBleModule(context, JavaOnlyPayloadFactory.INSTANCE);
+  }
+
+  @After
+  public void tearDown() {
+    if (module != null) {
+      module.invalidate();
+    }
+    if (arguments != null) {
+      arguments.close();
+    }
+  }
+
+  @Test
+  public void keepsUpWithSimulatedDevices() throws Exception {
+    JavaOnlyMap spec = new JavaOnlyMap();
+    spec.putInt("devices", DEVICES);
+    spec.putDouble("speed", SPEED);
+    spec.putInt("disconnectEveryMs", 0);
+    spec.putBoolean("autoStart", true);
+    spec.putArray("dataTypes", JavaOnlyArray.of((Object[]) DATA_TYPES));
+    ReadableArray ids = (ReadableArray) resolve(promise -> module.startSimulation(spec, promise));
+    assertEquals(DEVICES, ids.size());
+    Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+
+    ReadableArray streamStats = (ReadableArray) resolve(module::getStreamStats);
+    assertEquals("streams", DEVICES * DATA_TYPES.length, streamStats.size());
+    double samplesIn = 0;
+    double samplesOut = 0;
+    double worstP99EmitLatencyMs = 0;
+    for (int i = 0; i < streamStats.size(); i++) {
+      ReadableMap stats = streamStats.getMap(i);
+      String stream = stats.getString("id") + "/" + stats.getString("dataType");
+      assertEquals(stream + " dropped samples", 0, stats.getDouble("droppedSamples"), 0);
+      ReadableMap emitLatency = stats.getMap("emitLatency");
+      assertTrue(stream + " emitted nothing", emitLatency.getDouble("count") > 0);
+      samplesIn += stats.getDouble("samplesIn");
+      samplesOut += stats.getDouble("samplesOut");
+      worstP99EmitLatencyMs = Math.max(worstP99EmitLatencyMs, emitLatency.getDouble("p99Ms"));
+    }
+    // Packets still queued when the stats were read are the only ones not converted.
+    assertTrue("converted " + samplesOut + " of " + samplesIn + " samples", samplesOut >= samplesIn * 0.95);
+    // HR at 1 Hz, ECG at 130 Hz and ACC at its highest rate, 200 Hz.
+    double expectedPerSecond = DEVICES * SPEED * (1 + 130 + 200);
+    double perSecond = samplesOut / SECONDS;
+    assertTrue(String.format(Locale.ROOT, "%d devices at %.1fx converted %.0f samples/s, expected %.0f",
+            DEVICES, SPEED, perSecond, expectedPerSecond), perSecond >= expectedPerSecond * 0.8);
+    assertTrue(String.format(Locale.ROOT, "worst stream p99 emit latency %.1f ms, limit %.0f ms",
+            worstP99EmitLatencyMs, MAX_P99_EMIT_LATENCY_MS), worstP99EmitLatencyMs <= MAX_P99_EMIT_LATENCY_MS);
+    for (String dataType : DATA_TYPES) {
+      String event = dataType.toUpperCase(Locale.ROOT) + "_DATA";
+      AtomicLong count = emitted.get(event);
+      assertTrue("no " + event + " events reached JS", count != null && count.get() > 0);
+    }
+  }
+
+  private interface PromiseCall {
+    void call(Promise promise);
+  }
+
+  private static Object resolve(PromiseCall call) {
+    Promise promise = mock(Promise.class);
+    call.call(promise);
+    ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+    verify(promise).resolve(value.capture());
+    assertNotNull(value.getValue());
+    return value.getValue();
+  }
+}
@@ -0,0 +1,98 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+
+public class SingleFlightTest {
+  private final TestScheduler scheduler = new TestScheduler();
+  private final SingleFlight flights = new SingleFlight(scheduler);
+  private final AtomicInteger started = new AtomicInteger();
+  private final AtomicInteger cancelled = new AtomicInteger();
+  private SingleSubject<String> response = SingleSubject.create();
+
+  @Test
+  public void sharesARequestInFlightBetweenCallers() {
+    TestObserver<String> first = request("status/A").test();
+    TestObserver<String> second = request("status/A").test();
+    assertEquals(1, started.get());
+    response.onSuccess("idle");
+    first.assertValue("idle");
+    second.assertValue("idle");
+  }
+
+  @Test
+  public void keepsDifferentKeysApart() {
+    request("status/A").test();
+    request("status/B").test();
+    assertEquals(2, started.get());
+  }
+
+  @Test
+  public void startsANewRequestOnceTheLastOneEnded() {
+    request("status/A").test();
+    response.onSuccess("idle");
+    response = SingleSubject.create();
+    TestObserver<String> next = request("status/A").test();
+    assertEquals(2, started.get());
+    response.onSuccess("recording");
+    next.assertValue("recording");
+  }
+
+  @Test
+  public void startsANewRequestAfterAFailure() {
+    TestObserver<String> failed = request("status/A").test();
+    response.onError(new IllegalStateException("disconnected"));
+    failed.assertError(IllegalStateException.class);
+    response = SingleSubject.create();
+    request("status/A").test();
+    assertEquals(2, started.get());
+  }
+
+  @Test
+  public void failsEveryCallerOnTimeout() {
+    TestObserver<String> first = request("status/A").test();
+    scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+    TestObserver<String> second = request("status/A").test();
+    scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+    first.assertError(TimeoutException.class);
+    second.assertError(TimeoutException.class);
+    assertEquals(1, cancelled.get());
+    request("status/A").test();
+    assertEquals(2, started.get());
+  }
+
+  @Test
+  public void cancelsTheRequestOnceEveryCallerDisposed() {
+    TestObserver<String> first = request("status/A").test();
+    TestObserver<String> second = request("status/A").test();
+    first.dispose();
+    assertEquals(0, cancelled.get());
+    second.dispose();
+    assertEquals(1, cancelled.get());
+    assertFalse(response.hasObservers());
+    // Nothing is left in flight for the key.
+    response = SingleSubject.create();
+    TestObserver<String> next = request("status/A").test();
+    assertEquals(2, started.get());
+    response.onSuccess("idle");
+    next.assertValue("idle");
+  }
+
+  private Single<String> request(String key) {
+    return flights.run(key, 1000, () -> {
+      started.incrementAndGet();
+      return response.doOnDispose(cancelled::incrementAndGet);
+    });
+  }
+}
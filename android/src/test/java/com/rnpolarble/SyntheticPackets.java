@@ -0,0 +1,79 @@
+package com.rnpolarble;
+
+import com.polar.sdk.api.model.PolarAccelerometerData;
+import com.polar.sdk.api.model.PolarEcgData;
+import com.polar.sdk.api.model.PolarHrData;
+import com.polar.sdk.api.model.PolarPpgData;
+import com.polar.sdk.api.model.PolarPpiData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** SDK packets shaped like the ones an H10 or OH1 sends, with deterministic values. */
+final class SyntheticPackets {
+  static final int ECG_RATE = 130;
+  static final int ECG_PACKET_SAMPLES = 73;
+  static final int ACC_RATE = 200;
+  static final int ACC_PACKET_SAMPLES = 36;
+  static final int PPG_RATE = 135;
+  static final int PPG_PACKET_SAMPLES = 35;
+
+  private SyntheticPackets() {
+  }
+
+  static long intervalNanos(int rate) {
+    return TimeUnit.SECONDS.toNanos(1) / rate;
+  }
+
+  /** Packet number index of an ECG stream starting at sensor time 0. */
+  static PolarEcgData ecg(int index) {
+    long interval = intervalNanos(ECG_RATE);
+    List<PolarEcgData.PolarEcgDataSample> samples = new ArrayList<>(ECG_PACKET_SAMPLES);
+    for (int i = 0; i < ECG_PACKET_SAMPLES; i++) {
+      int n = index * ECG_PACKET_SAMPLES + i;
+      samples.add(new PolarEcgData.PolarEcgDataSample(n * interval, (int) (900 * Math.sin(n * 0.3))));
+    }
+    return new PolarEcgData(samples, samples.get(ECG_PACKET_SAMPLES - 1).getTimeStamp());
+  }
+
+  static PolarAccelerometerData acc(int index) {
+    long interval = intervalNanos(ACC_RATE);
+    List<PolarAccelerometerData.PolarAccelerometerDataSample> samples = new ArrayList<>(ACC_PACKET_SAMPLES);
+    for (int i = 0; i < ACC_PACKET_SAMPLES; i++) {
+      int n = index * ACC_PACKET_SAMPLES + i;
+      samples.add(new PolarAccelerometerData.PolarAccelerometerDataSample(n * interval,
+              (int) (50 * Math.sin(n * 0.1)), (int) (50 * Math.cos(n * 0.1)), 1000 + n % 7));
+    }
+    return new PolarAccelerometerData(samples, samples.get(ACC_PACKET_SAMPLES - 1).getTimeStamp());
+  }
+
+  /**
+   * PPG packet of an OH1: three light channels and the ambient channel. Sample n has
+   * 100000 + n, 200000 + n, 300000 + n and -n.
+   */
+  static PolarPpgData ppg(int index) {
+    long interval = intervalNanos(PPG_RATE);
+    List<PolarPpgData.PolarPpgSample> samples = new ArrayList<>(PPG_PACKET_SAMPLES);
+    for (int i = 0; i < PPG_PACKET_SAMPLES; i++) {
+      int n = index * PPG_PACKET_SAMPLES + i;
+      samples.add(new PolarPpgData.PolarPpgSample(n * interval,
+              Arrays.asList(100000 + n, 200000 + n, 300000 + n, -n)));
+    }
+    return new PolarPpgData(samples, PolarPpgData.PpgDataType.PPG3_AMBIENT1);
+  }
+
+  /** PPI packet with one interval per beat, blocked when blocker is set. */
+  static PolarPpiData ppi(int ppiMs, boolean blocker) {
+    List<PolarPpiData.PolarPpiSample> samples = new ArrayList<>(1);
+    samples.add(new PolarPpiData.PolarPpiSample(ppiMs, 10, 60000 / ppiMs, blocker, true, true));
+    return new PolarPpiData(samples);
+  }
+
+  static PolarHrData hr(int hr, Integer... rrsMs) {
+    List<PolarHrData.PolarHrSample> samples = new ArrayList<>(1);
+    samples.add(new PolarHrData.PolarHrSample(hr, Arrays.asList(rrsMs), rrsMs.length > 0, true, true));
+    return new PolarHrData(samples);
+  }
+}
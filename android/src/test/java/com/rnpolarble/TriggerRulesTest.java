@@ -0,0 +1,153 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.polar.sdk.api.model.PolarHrData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TriggerRulesTest {
+  private static final long MS = 1000000;
+
+  private final List<ReadableMap> triggers = new ArrayList<>();
+  private final TriggerRules rules = new TriggerRules(JavaOnlyPayloadFactory.INSTANCE,
+          trigger -> triggers.add((ReadableMap) trigger));
+
+  @Test
+  public void thresholdFiresAfterItsDurationAndClearsPastTheHysteresis() {
+    rules.add(rule(TriggerRule.Type.THRESHOLD, "hr", false, 180, 5, 2000));
+    hr(0, 185);
+    hr(1000, 190);
+    assertTrue(triggers.isEmpty());
+    hr(2000, 186);
+    assertEquals(1, triggers.size());
+    assertTrigger(triggers.get(0), "fired", 186);
+    // Back under the limit but inside the hysteresis band.
+    hr(3000, 178);
+    hr(4000, 181);
+    assertEquals(1, triggers.size());
+    hr(5000, 175);
+    assertEquals(2, triggers.size());
+    assertTrigger(triggers.get(1), "cleared", 175);
+  }
+
+  @Test
+  public void thresholdRestartsItsDurationWhenTheConditionBreaks() {
+    rules.add(rule(TriggerRule.Type.THRESHOLD, "hr", false, 180, 0, 2000));
+    hr(0, 185);
+    hr(1500, 170);
+    hr(2000, 185);
+    hr(3500, 185);
+    assertTrue(triggers.isEmpty());
+    hr(4000, 185);
+    assertEquals(1, triggers.size());
+  }
+
+  @Test
+  public void belowThresholdOnRrIntervals() {
+    rules.add(rule(TriggerRule.Type.THRESHOLD, "rr", true, 400, 50, 0));
+    sample(0, new PolarHrData.PolarHrSample(150, Arrays.asList(420, 390), true, true, true));
+    assertEquals(1, triggers.size());
+    assertTrigger(triggers.get(0), "fired", 390);
+    sample(1000, new PolarHrData.PolarHrSample(130, Collections.singletonList(460), true, true, true));
+    assertEquals(2, triggers.size());
+    assertTrigger(triggers.get(1), "cleared", 460);
+  }
+
+  @Test
+  public void contactLostOnlyOnStrapsThatReportContact() {
+    rules.add(rule(TriggerRule.Type.CONTACT_LOST, "hr", false, 0, 0, 0));
+    sample(0, new PolarHrData.PolarHrSample(60, Collections.emptyList(), false, false, false));
+    assertTrue(triggers.isEmpty());
+    sample(1000, new PolarHrData.PolarHrSample(60, Collections.emptyList(), false, false, true));
+    assertEquals(1, triggers.size());
+    sample(2000, new PolarHrData.PolarHrSample(61, Collections.singletonList(980), true, true, true));
+    assertEquals(2, triggers.size());
+    assertTrigger(triggers.get(1), "cleared", 61);
+  }
+
+  @Test
+  public void rrGapFiresOnceRrIntervalsAreMissingForItsDuration() {
+    rules.add(rule(TriggerRule.Type.RR_GAP, "hr", false, 0, 0, 3000));
+    sample(0, new PolarHrData.PolarHrSample(60, Collections.singletonList(1000), true, true, true));
+    sample(2000, new PolarHrData.PolarHrSample(60, Collections.emptyList(), false, true, true));
+    assertTrue(triggers.isEmpty());
+    sample(3000, new PolarHrData.PolarHrSample(60, Collections.emptyList(), false, true, true));
+    assertEquals(1, triggers.size());
+    assertTrigger(triggers.get(0), "fired", 3000);
+    sample(4000, new PolarHrData.PolarHrSample(60, Collections.singletonList(1000), true, true, true));
+    // Cleared with the length of the whole gap.
+    assertTrigger(triggers.get(1), "cleared", 4000);
+  }
+
+  @Test
+  public void signalLostFiresOnTicksAndClearsWithTheNextSample() {
+    rules.add(rule(TriggerRule.Type.SIGNAL_LOST, "hr", false, 0, 0, 5000));
+    hr(1000, 60);
+    rules.tick(5000 * MS);
+    assertTrue(triggers.isEmpty());
+    rules.tick(6000 * MS);
+    assertEquals(1, triggers.size());
+    assertTrigger(triggers.get(0), "fired", 5000);
+    rules.tick(7000 * MS);
+    assertEquals(1, triggers.size());
+    hr(8000, 60);
+    assertEquals(2, triggers.size());
+    assertTrigger(triggers.get(1), "cleared", 7000);
+  }
+
+  @Test
+  public void keepsRulesPerDevice() {
+    TriggerRule rule = rule(TriggerRule.Type.THRESHOLD, "hr", false, 100, 0, 0);
+    rules.add(rule);
+    assertTrue(rules.hasRules("A"));
+    assertFalse(rules.hasRules("B"));
+    rules.onHr("B", 0, hrData(150));
+    assertTrue(triggers.isEmpty());
+
+    assertTrue(rules.suppressSamples("A"));
+    assertTrue(rules.isSuppressed("A"));
+    rules.releaseSamples("A");
+    assertFalse(rules.isSuppressed("A"));
+
+    assertSame(rules.device("A"), rules.remove(rule.ruleId));
+    assertNull(rules.remove(rule.ruleId));
+    assertFalse(rules.hasRules("A"));
+    assertFalse(rules.suppressSamples("A"));
+    assertTrue(rules.isEmpty());
+  }
+
+  private TriggerRule rule(TriggerRule.Type type, String metric, boolean below, double limit, double hysteresis,
+                           long durationMs) {
+    return new TriggerRule(rules.nextRuleId(), "A", type, metric, below, limit, hysteresis, durationMs, 0);
+  }
+
+  private void hr(long timeMs, int hr) {
+    rules.onHr("A", timeMs * MS, hrData(hr));
+  }
+
+  private void sample(long timeMs, PolarHrData.PolarHrSample sample) {
+    rules.onHr("A", timeMs * MS, new PolarHrData(Collections.singletonList(sample)));
+  }
+
+  private static PolarHrData hrData(int hr) {
+    return new PolarHrData(Collections.singletonList(
+            new PolarHrData.PolarHrSample(hr, Collections.singletonList(60000 / hr), true, true, true)));
+  }
+
+  private static void assertTrigger(ReadableMap trigger, String state, double value) {
+    assertEquals("A", trigger.getString("id"));
+    assertEquals(state, trigger.getString("state"));
+    assertEquals(value, trigger.getDouble("value"), 0);
+  }
+}
@@ -0,0 +1,114 @@
+package com.rnpolarble;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.polar.sdk.api.PolarBleApi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class WindowAggregatorTest {
+  private static final long MS = 1000000;
+
+  @Test
+  public void computesEveryOperatorOverAWindow() {
+    WindowAggregator aggregator = aggregator(0, 1000, EnumSet.allOf(WindowAggregator.Operator.class), 2.5);
+    int[] values = {1, 2, 3, 4};
+    for (int i = 0; i < values.length; i++) {
+      assertNull(add(aggregator, 1000 * MS + i * 100 * MS, values[i]));
+    }
+    ReadableMap result = add(aggregator, 2000 * MS, 100);
+    assertNotNull(result);
+    assertEquals("q", result.getString("query"));
+    assertEquals(1000 * MS, (long) result.getDouble("timeStamp"));
+    assertEquals(4, result.getInt("count"));
+    assertEquals(2.5, result.getDouble("mean"), 1e-9);
+    assertEquals(Math.sqrt(30 / 4.0), result.getDouble("rms"), 1e-9);
+    assertEquals(1, result.getDouble("min"), 0);
+    assertEquals(4, result.getDouble("max"), 0);
+    assertEquals(2, result.getInt("countAbove"));
+  }
+
+  @Test
+  public void alignsWindowsToTheirLength() {
+    WindowAggregator aggregator = aggregator(0, 500, EnumSet.of(WindowAggregator.Operator.MEAN), 0);
+    add(aggregator, 1234 * MS, 1);
+    assertNull(add(aggregator, 1499 * MS, 3));
+    ReadableMap result = add(aggregator, 1500 * MS, 5);
+    assertEquals(1000 * MS, (long) result.getDouble("timeStamp"));
+    assertEquals(2, result.getInt("count"));
+    assertEquals(2, result.getDouble("mean"), 0);
+  }
+
+  @Test
+  public void skipsWindowsWithoutSamples() {
+    WindowAggregator aggregator = aggregator(0, 100, EnumSet.of(WindowAggregator.Operator.MAX), 0);
+    add(aggregator, 0, 7);
+    // A gap like a reconnect: the window before it is closed, the empty ones produce nothing.
+    ReadableMap result = add(aggregator, 10000 * MS, 1);
+    assertEquals(0, (long) result.getDouble("timeStamp"));
+    assertEquals(7, result.getDouble("max"), 0);
+    result = add(aggregator, 10100 * MS, 1);
+    assertEquals(10000 * MS, (long) result.getDouble("timeStamp"));
+    assertEquals(1, result.getInt("count"));
+  }
+
+  @Test
+  public void closesTheWindowWhenTheClockGoesBack() {
+    WindowAggregator aggregator = aggregator(0, 1000, EnumSet.of(WindowAggregator.Operator.MEAN), 0);
+    add(aggregator, 5000 * MS, 4);
+    ReadableMap result = add(aggregator, 100 * MS, 8);
+    assertNotNull(result);
+    assertEquals(5000 * MS, (long) result.getDouble("timeStamp"));
+    assertEquals(4, result.getDouble("mean"), 0);
+  }
+
+  @Test
+  public void aggregatesTheMagnitudeOfThreeChannels() {
+    WindowAggregator aggregator = aggregator(WindowAggregator.MAGNITUDE, 1000,
+            EnumSet.of(WindowAggregator.Operator.MEAN), 0);
+    aggregator.add(0, new int[]{3, 4, 0}, JavaOnlyPayloadFactory.INSTANCE);
+    aggregator.add(1, new int[]{0, -6, 8}, JavaOnlyPayloadFactory.INSTANCE);
+    WritableMap result = aggregator.add(1000 * MS, new int[]{0, 0, 0}, JavaOnlyPayloadFactory.INSTANCE);
+    assertEquals(7.5, ((ReadableMap) result).getDouble("mean"), 1e-9);
+  }
+
+  @Test
+  public void tapsFeedTheirQueriesAndKnowWhenTheyHaveSome() {
+    List<WritableMap> results = new ArrayList<>();
+    Aggregations aggregations = new Aggregations(JavaOnlyPayloadFactory.INSTANCE, results::add);
+    assertFalse(aggregations.hasQueries("A", PolarBleApi.PolarDeviceDataType.ECG));
+    WindowAggregator query = new WindowAggregator(aggregations.nextQueryId(), "A", "ecg", "voltage", 0, 1000,
+            EnumSet.of(WindowAggregator.Operator.MAX), 0);
+    aggregations.add(PolarBleApi.PolarDeviceDataType.ECG, 1, query);
+    assertTrue(aggregations.hasQueries("A", PolarBleApi.PolarDeviceDataType.ECG));
+    assertFalse(aggregations.hasQueries("B", PolarBleApi.PolarDeviceDataType.ECG));
+
+    Aggregations.Tap tap = aggregations.tap("A", PolarBleApi.PolarDeviceDataType.ECG, 1);
+    tap.add(0, 12);
+    tap.add(1000 * MS, 3);
+    assertEquals(1, results.size());
+    assertEquals(12, ((ReadableMap) results.get(0)).getDouble("max"), 0);
+
+    assertEquals(tap, aggregations.remove(query.queryId));
+    assertFalse(aggregations.hasQueries("A", PolarBleApi.PolarDeviceDataType.ECG));
+  }
+
+  private static WindowAggregator aggregator(int channel, long windowMs, EnumSet<WindowAggregator.Operator> operators,
+                                             double threshold) {
+    return new WindowAggregator("q", "A", "ecg", "voltage", channel, windowMs, operators, threshold);
+  }
+
+  private static ReadableMap add(WindowAggregator aggregator, long timeNanos, int value) {
+    return (ReadableMap) aggregator.add(timeNanos, new int[]{value}, JavaOnlyPayloadFactory.INSTANCE);
+  }
+}